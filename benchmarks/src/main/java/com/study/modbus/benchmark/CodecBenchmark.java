@@ -0,0 +1,92 @@
+package com.study.modbus.benchmark;
+
+import com.serotonin.modbus4j.code.DataType;
+import com.study.modbus.util.ModbusUtils;
+import com.study.modbus.util.RegisterCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 寄存器数据转换：ModbusUtils 的分配版本与写入调用方数组的版本对比
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    /**
+     * 寄存器数,125 为单次读取上限
+     */
+    @Param({"8", "125"})
+    public int registers;
+
+    private byte[] data;
+
+    private ByteBuffer buffer;
+
+    private float[] floats;
+
+    private boolean[] booleans;
+
+    private float value;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        data = new byte[registers * 2];
+        random.nextBytes(data);
+        buffer = ByteBuffer.wrap(data);
+        floats = new float[registers / 2];
+        booleans = new boolean[registers * 16];
+        value = random.nextFloat();
+    }
+
+    @Benchmark
+    public float[] bytesToFloat() {
+        return ModbusUtils.bytesToFloat(data);
+    }
+
+    @Benchmark
+    public float[] bytesToFloatInto() {
+        ModbusUtils.bytesToFloat(data, floats);
+        return floats;
+    }
+
+    @Benchmark
+    public boolean[] bytesToBoolean() {
+        return ModbusUtils.bytesToBoolean(data, booleans.length);
+    }
+
+    @Benchmark
+    public boolean[] bytesToBooleanInto() {
+        ModbusUtils.bytesToBoolean(data, booleans.length, booleans);
+        return booleans;
+    }
+
+    @Benchmark
+    public short[] valueToShorts() {
+        return ModbusUtils.valueToShorts(value);
+    }
+
+    @Benchmark
+    public float[] decodeSwappedFloats() {
+        RegisterCodec.decodeFloats(buffer, DataType.FOUR_BYTE_FLOAT_SWAPPED, floats, 0, floats.length);
+        return floats;
+    }
+}
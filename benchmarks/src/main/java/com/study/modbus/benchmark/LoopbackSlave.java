@@ -0,0 +1,72 @@
+package com.study.modbus.benchmark;
+
+import com.serotonin.modbus4j.BasicProcessImage;
+import com.serotonin.modbus4j.exception.ModbusInitException;
+import com.serotonin.modbus4j.ip.tcp.TcpSlave;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * 基准测试使用的进程内 modbus4j slave,监听本机随机端口
+ */
+public class LoopbackSlave {
+
+    private final int port;
+
+    private final TcpSlave slave;
+
+    private final Thread thread;
+
+    /**
+     * slave 线程启动失败的原因,由 awaitListening 抛出
+     */
+    private volatile ModbusInitException startFailure;
+
+    public LoopbackSlave(BasicProcessImage processImage) throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        slave = new TcpSlave(port, false);
+        slave.addProcessImage(processImage);
+        //start 会阻塞在 accept 上
+        thread = new Thread(() -> {
+            try {
+                slave.start();
+            } catch (ModbusInitException e) {
+                startFailure = e;
+            }
+        }, "loopback-slave-" + port);
+        thread.setDaemon(true);
+        thread.start();
+        awaitListening();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void stop() {
+        slave.stop();
+    }
+
+    private void awaitListening() throws IOException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 100);
+                return;
+            } catch (IOException e) {
+                ModbusInitException failure = startFailure;
+                if (failure != null) {
+                    throw new IOException("slave 启动失败,端口:" + port, failure);
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
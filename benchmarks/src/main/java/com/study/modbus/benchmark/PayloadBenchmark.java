@@ -0,0 +1,89 @@
+package com.study.modbus.benchmark;
+
+import com.google.gson.Gson;
+import com.serotonin.modbus4j.BatchResults;
+import com.study.modbus.publish.DeltaTracker;
+import com.study.modbus.publish.PayloadSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 轮询结果的 JSON 构建：原来的 gson 反射序列化与 PayloadSerializer 对比
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int points;
+
+    private final Gson gson = new Gson();
+
+    private final PayloadSerializer payloadSerializer = new PayloadSerializer();
+
+    private final DeltaTracker deltaTracker = new DeltaTracker(0L);
+
+    private List<String> keys;
+
+    /**
+     * gson 序列化的对象,与轮询的默认组相同
+     */
+    private BatchResults<String> results;
+
+    /**
+     * 与 keys 一一对应的值,与轮询的扫描组相同
+     */
+    private Object[] values;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        keys = new ArrayList<>(points);
+        results = new BatchResults<>();
+        values = new Object[points];
+        for (int i = 0; i < points; i++) {
+            //与现场点位相同的地址格式,一半线圈一半浮点寄存器
+            String key = i % 2 == 0 ? String.format("%05d", i + 1) : String.valueOf(40001 + i * 2);
+            keys.add(key);
+            values[i] = i % 2 == 0 ? (Object) random.nextBoolean() : (Object) random.nextFloat();
+            results.addResult(key, values[i]);
+        }
+    }
+
+    @Benchmark
+    public String gson() {
+        return gson.toJson(results);
+    }
+
+    @Benchmark
+    public CharSequence payloadSerializer() {
+        payloadSerializer.write(keys, values, null);
+        return payloadSerializer.buffer();
+    }
+
+    /**
+     * 数据不变时的变化推送,只做比较不序列化
+     */
+    @Benchmark
+    public int deltaUnchanged() {
+        return deltaTracker.delta(keys, values, 1L);
+    }
+}
@@ -0,0 +1,111 @@
+package com.study.modbus.benchmark;
+
+import cn.tzauto.isecs.api.MsgListener;
+import com.serotonin.modbus4j.BasicProcessImage;
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.ModbusConnection;
+import com.study.modbus.ModbusEventDealer;
+import com.study.modbus.PollEngine;
+import com.study.modbus.transport.RequestPlanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整的轮询周期：读取、解析、变化判断、序列化并推送给 listener
+ * slave 是同一进程内监听本机端口的 modbus4j TcpSlave,结果包含本机 TCP 往返
+ * 连接注册在手动驱动的 PollEngine 上,由基准测试方法调用 poll()
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class PollCycleBenchmark {
+
+    private static final int SLAVE_ID = 1;
+
+    @Param({"100", "1000", "10000"})
+    public int points;
+
+    /**
+     * 是否使用 RequestPlanner 合并请求
+     */
+    @Param({"false", "true"})
+    public boolean planner;
+
+    private LoopbackSlave slave;
+
+    private PollEngine pollEngine;
+
+    private ModbusConnection connection;
+
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) throws Exception {
+        this.blackhole = blackhole;
+        BasicProcessImage processImage = new BasicProcessImage(SLAVE_ID);
+        for (int i = 0; i < points; i++) {
+            processImage.setNumeric(RegisterRange.HOLDING_REGISTER, i * 2, DataType.FOUR_BYTE_FLOAT, i * 0.5f);
+        }
+        slave = new LoopbackSlave(processImage);
+
+        pollEngine = PollEngine.manual();
+        connection = new ModbusConnection(SLAVE_ID, "bench", "127.0.0.1", slave.getPort(), eventDealer(), 1000L, -1,
+                listener(), null, pollEngine);
+        for (int i = 0; i < points; i++) {
+            connection.addLocator(String.valueOf(40001 + i * 2),
+                    BaseLocator.holdingRegister(SLAVE_ID, i * 2, DataType.FOUR_BYTE_FLOAT), 0L);
+        }
+        if (planner) {
+            connection.setRequestPlanner(new RequestPlanner(32, 100));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connection.close();
+        slave.stop();
+    }
+
+    @Benchmark
+    public long pollCycle() {
+        return pollEngine.poll(connection);
+    }
+
+    /**
+     * MsgListener 来自外部库,用代理实现,避免依赖其具体方法
+     */
+    private MsgListener listener() {
+        return (MsgListener) Proxy.newProxyInstance(MsgListener.class.getClassLoader(), new Class<?>[]{MsgListener.class},
+                (proxy, method, args) -> {
+                    if (args != null) {
+                        blackhole.consume(args[0]);
+                    }
+                    return null;
+                });
+    }
+
+    private ModbusEventDealer eventDealer() {
+        return (ModbusEventDealer) Proxy.newProxyInstance(ModbusEventDealer.class.getClassLoader(), new Class<?>[]{ModbusEventDealer.class},
+                (proxy, method, args) -> null);
+    }
+}
@@ -0,0 +1,86 @@
+package com.study.modbus.simulator;
+
+/**
+ * 模拟 slave 的故障注入参数
+ */
+public class FaultProfile {
+
+    /**
+     * 每个应答的固定延迟(毫秒)
+     */
+    private long latency;
+
+    /**
+     * 在固定延迟上随机增加 0~jitter 毫秒
+     */
+    private long jitter;
+
+    /**
+     * 丢弃应答的概率,0~1
+     */
+    private double dropRate;
+
+    /**
+     * 返回异常应答(非法数据地址)的概率,0~1
+     */
+    private double exceptionRate;
+
+    public FaultProfile() {
+    }
+
+    public FaultProfile(long latency, long jitter, double dropRate, double exceptionRate) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.dropRate = dropRate;
+        this.exceptionRate = exceptionRate;
+    }
+
+    /**
+     * 是否需要注入故障
+     */
+    boolean isFaulty() {
+        return latency > 0 || jitter > 0 || dropRate > 0 || exceptionRate > 0;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public long getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(long jitter) {
+        this.jitter = jitter;
+    }
+
+    public double getDropRate() {
+        return dropRate;
+    }
+
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+
+    public double getExceptionRate() {
+        return exceptionRate;
+    }
+
+    public void setExceptionRate(double exceptionRate) {
+        this.exceptionRate = exceptionRate;
+    }
+
+    @Override
+    public String toString() {
+        return "FaultProfile{" +
+                "latency=" + latency +
+                ", jitter=" + jitter +
+                ", dropRate=" + dropRate +
+                ", exceptionRate=" + exceptionRate +
+                '}';
+    }
+}
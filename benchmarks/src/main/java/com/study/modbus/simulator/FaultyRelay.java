@@ -0,0 +1,208 @@
+package com.study.modbus.simulator;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 本机 Modbus TCP 中继：按 MBAP 帧转发 master 与 slave 之间的数据,并按 FaultProfile 注入故障
+ * 应答增加延迟和抖动、按概率丢弃应答、按概率不转发请求而直接返回异常应答(非法数据地址)
+ */
+public class FaultyRelay implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(FaultyRelay.class);
+
+    /**
+     * 异常码：非法数据地址
+     */
+    private static final int ILLEGAL_DATA_ADDRESS = 2;
+
+    private final int targetPort;
+
+    private final FaultProfile profile;
+
+    private final ServerSocket serverSocket;
+
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param targetPort slave 监听的本机端口
+     */
+    public FaultyRelay(int targetPort, FaultProfile profile) throws IOException {
+        this.targetPort = targetPort;
+        this.profile = profile;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(this::accept, "modbus-relay-" + getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * master 连接的端口
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("中继接受连接失败", e);
+                }
+                return;
+            }
+            Socket target = new Socket();
+            try {
+                client.setTcpNoDelay(true);
+                target.setTcpNoDelay(true);
+                target.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), targetPort));
+            } catch (IOException e) {
+                logger.error("中继连接 slave 失败:" + targetPort, e);
+                closeQuietly(client);
+                closeQuietly(target);
+                continue;
+            }
+            sockets.add(client);
+            sockets.add(target);
+            start(() -> forwardRequests(client, target), "modbus-relay-request-" + getPort());
+            start(() -> forwardResponses(target, client), "modbus-relay-response-" + getPort());
+        }
+    }
+
+    /**
+     * 转发请求,按 exceptionRate 直接返回异常应答
+     */
+    private void forwardRequests(Socket client, Socket target) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            OutputStream out = target.getOutputStream();
+            byte[] frame = new byte[260];
+            while (true) {
+                int length = readFrame(in, frame);
+                if (ThreadLocalRandom.current().nextDouble() < profile.getExceptionRate()) {
+                    //事务号、协议号和单元号沿用请求
+                    byte[] reply = new byte[9];
+                    System.arraycopy(frame, 0, reply, 0, 4);
+                    reply[5] = 3;
+                    reply[6] = frame[6];
+                    reply[7] = (byte) (frame[7] | 0x80);
+                    reply[8] = ILLEGAL_DATA_ADDRESS;
+                    delay();
+                    write(client, reply, reply.length);
+                    continue;
+                }
+                out.write(frame, 0, length);
+                out.flush();
+            }
+        } catch (IOException e) {
+            closePair(client, target);
+        }
+    }
+
+    /**
+     * 转发应答,按 dropRate 丢弃,转发前增加延迟
+     */
+    private void forwardResponses(Socket target, Socket client) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(target.getInputStream()));
+            byte[] frame = new byte[260];
+            while (true) {
+                int length = readFrame(in, frame);
+                if (ThreadLocalRandom.current().nextDouble() < profile.getDropRate()) {
+                    continue;
+                }
+                delay();
+                write(client, frame, length);
+            }
+        } catch (IOException e) {
+            closePair(client, target);
+        }
+    }
+
+    /**
+     * 读取一个完整的 MBAP 帧
+     *
+     * @return 帧长度
+     */
+    private static int readFrame(DataInputStream in, byte[] frame) throws IOException {
+        in.readFully(frame, 0, 6);
+        int length = ((frame[4] & 0xFF) << 8) | (frame[5] & 0xFF);
+        if (length <= 0 || length > frame.length - 6) {
+            throw new IOException("帧长度错误:" + length);
+        }
+        in.readFully(frame, 6, length);
+        return 6 + length;
+    }
+
+    /**
+     * 请求线程和应答线程都会向 master 写入
+     */
+    private static void write(Socket client, byte[] frame, int length) throws IOException {
+        synchronized (client) {
+            OutputStream out = client.getOutputStream();
+            out.write(frame, 0, length);
+            out.flush();
+        }
+    }
+
+    private void delay() {
+        long delay = profile.getLatency();
+        if (profile.getJitter() > 0) {
+            delay += ThreadLocalRandom.current().nextLong(profile.getJitter() + 1);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void closePair(Socket client, Socket target) {
+        sockets.remove(client);
+        sockets.remove(target);
+        closeQuietly(client);
+        closeQuietly(target);
+    }
+
+    private static void start(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(serverSocket);
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        sockets.clear();
+    }
+}
@@ -0,0 +1,45 @@
+package com.study.modbus.simulator;
+
+import com.serotonin.modbus4j.BasicProcessImage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Modbus TCP 模拟器：在本机端口上启动任意数量的模拟 slave,用于没有现场设备时的压力和延迟测试
+ */
+public class ModbusSimulator implements Closeable {
+
+    private final List<VirtualSlave> slaves = new CopyOnWriteArrayList<>();
+
+    /**
+     * 启动一个模拟 slave
+     *
+     * @param registerMap 配置寄存器表,如 image.setNumeric(RegisterRange.HOLDING_REGISTER, 0, DataType.FOUR_BYTE_FLOAT, 1.5f)
+     * @param profile     故障注入参数,为空时不注入故障
+     */
+    public VirtualSlave addSlave(int slaveId, Consumer<BasicProcessImage> registerMap, FaultProfile profile) throws IOException {
+        BasicProcessImage processImage = new BasicProcessImage(slaveId);
+        if (registerMap != null) {
+            registerMap.accept(processImage);
+        }
+        VirtualSlave slave = new VirtualSlave(processImage, profile);
+        slaves.add(slave);
+        return slave;
+    }
+
+    public List<VirtualSlave> getSlaves() {
+        return slaves;
+    }
+
+    @Override
+    public void close() {
+        for (VirtualSlave slave : slaves) {
+            slave.close();
+        }
+        slaves.clear();
+    }
+}
@@ -0,0 +1,100 @@
+package com.study.modbus.simulator;
+
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.ModbusConnection;
+import com.study.modbus.PollEngine;
+import com.study.modbus.metrics.LatencyHistogram;
+import com.study.modbus.metrics.MetricsSnapshot;
+import com.study.modbus.transport.RequestPlanner;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压力测试：启动 N 个模拟 slave,每个由一个 ModbusConnection 通过共享的 PollEngine 轮询,
+ * 每秒汇总各连接的 ConnectionMetrics,输出轮询次数、失败次数和平均耗时
+ * 参数依次为：连接数 点位数 运行秒数 扫描周期(毫秒) 延迟(毫秒) 抖动(毫秒) 丢包率 异常应答率 轮询线程数
+ * 例如：100 200 30 500 5 10 0.01 0.01 8
+ */
+public class SimulatorHarness {
+
+    private static final Logger logger = Logger.getLogger(SimulatorHarness.class);
+
+    private static final int SLAVE_ID = 1;
+
+    public static void main(String[] args) throws Exception {
+        int connections = intArg(args, 0, 100);
+        int points = intArg(args, 1, 100);
+        int seconds = intArg(args, 2, 30);
+        long scanRate = intArg(args, 3, 500);
+        FaultProfile profile = new FaultProfile(intArg(args, 4, 0), intArg(args, 5, 0),
+                doubleArg(args, 6, 0), doubleArg(args, 7, 0));
+        int threads = intArg(args, 8, Runtime.getRuntime().availableProcessors());
+        logger.info("连接数:" + connections + " 点位数:" + points + " 扫描周期:" + scanRate + " 轮询线程:" + threads + " " + profile);
+
+        ModbusSimulator simulator = new ModbusSimulator();
+        PollEngine pollEngine = new PollEngine(threads);
+        List<ModbusConnection> list = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                VirtualSlave slave = simulator.addSlave(SLAVE_ID, image -> {
+                    for (int p = 0; p < points; p++) {
+                        image.setNumeric(RegisterRange.HOLDING_REGISTER, p * 2, DataType.FOUR_BYTE_FLOAT, p * 0.5f);
+                    }
+                }, profile);
+                ModbusConnection connection = new ModbusConnection(SLAVE_ID, "sim-" + i, "127.0.0.1", slave.getPort(),
+                        null, 1000L, -1, null, null, pollEngine);
+                connection.setRequestPlanner(new RequestPlanner(32, 100));
+                for (int p = 0; p < points; p++) {
+                    connection.addLocator(String.valueOf(40001 + p * 2),
+                            BaseLocator.holdingRegister(SLAVE_ID, p * 2, DataType.FOUR_BYTE_FLOAT), scanRate);
+                }
+                list.add(connection);
+            }
+
+            //周期直方图包括失败的周期
+            long lastCycles = 0;
+            double lastMicros = 0;
+            long lastFailed = 0;
+            for (int s = 1; s <= seconds; s++) {
+                Thread.sleep(1000L);
+                long cycles = 0;
+                double micros = 0;
+                long failed = 0;
+                for (ModbusConnection connection : list) {
+                    MetricsSnapshot snapshot = connection.getMetricsSnapshot();
+                    LatencyHistogram.Snapshot cycleTime = snapshot.getCycleTime();
+                    cycles += cycleTime.getCount();
+                    micros += cycleTime.getMean() * cycleTime.getCount();
+                    failed += snapshot.getFailedCycles();
+                }
+                long deltaCycles = cycles - lastCycles;
+                double average = deltaCycles == 0 ? 0 : (micros - lastMicros) / 1e3 / deltaCycles;
+                logger.info(String.format("%3ds 轮询:%d/s 失败:%d/s 平均耗时:%.3fms",
+                        s, deltaCycles, failed - lastFailed, average));
+                lastCycles = cycles;
+                lastMicros = micros;
+                lastFailed = failed;
+            }
+            logger.info(String.format("合计 轮询:%d 失败:%d 平均耗时:%.3fms",
+                    lastCycles, lastFailed, lastCycles == 0 ? 0 : lastMicros / 1e3 / lastCycles));
+        } finally {
+            for (ModbusConnection connection : list) {
+                connection.close();
+            }
+            pollEngine.shutdown();
+            simulator.close();
+        }
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    private static double doubleArg(String[] args, int index, double defaultValue) {
+        return args.length > index ? Double.parseDouble(args[index]) : defaultValue;
+    }
+}
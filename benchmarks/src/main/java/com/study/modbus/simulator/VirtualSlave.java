@@ -0,0 +1,87 @@
+package com.study.modbus.simulator;
+
+import com.serotonin.modbus4j.BasicProcessImage;
+import com.serotonin.modbus4j.exception.ModbusInitException;
+import com.serotonin.modbus4j.ip.tcp.TcpSlave;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * 一个监听本机端口的模拟 slave,基于 modbus4j 的 TcpSlave
+ * 有故障注入时 master 连接中继端口,否则直接连接 slave 端口
+ */
+public class VirtualSlave implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(VirtualSlave.class);
+
+    private final BasicProcessImage processImage;
+
+    private final int slavePort;
+
+    private final TcpSlave slave;
+
+    private final FaultyRelay relay;
+
+    VirtualSlave(BasicProcessImage processImage, FaultProfile profile) throws IOException {
+        this.processImage = processImage;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            slavePort = socket.getLocalPort();
+        }
+        slave = new TcpSlave(slavePort, false);
+        slave.addProcessImage(processImage);
+        //start 会阻塞在 accept 上
+        Thread thread = new Thread(() -> {
+            try {
+                slave.start();
+            } catch (ModbusInitException e) {
+                logger.error("模拟 slave 启动失败:" + slavePort, e);
+            }
+        }, "modbus-slave-" + slavePort);
+        thread.setDaemon(true);
+        thread.start();
+        awaitListening(slavePort);
+        relay = profile != null && profile.isFaulty() ? new FaultyRelay(slavePort, profile) : null;
+    }
+
+    /**
+     * master 连接的端口
+     */
+    public int getPort() {
+        return relay != null ? relay.getPort() : slavePort;
+    }
+
+    /**
+     * 寄存器表,运行中可以修改
+     */
+    public BasicProcessImage getProcessImage() {
+        return processImage;
+    }
+
+    @Override
+    public void close() {
+        if (relay != null) {
+            relay.close();
+        }
+        slave.stop();
+    }
+
+    private static void awaitListening(int port) throws IOException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 100);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.study.modbus;
+
+/**
+ * 设备熔断器
+ * CLOSED: 正常轮询,连续失败达到 failureThreshold 次后打开
+ * OPEN: 不再发送完整的批量读取,读写命令直接失败,经过 openTimeout 后进入 HALF_OPEN
+ * HALF_OPEN: 只允许一次轻量探测,成功后关闭,失败后重新打开
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 连续失败次数阈值
+     */
+    private final int failureThreshold;
+
+    /**
+     * 打开后等待探测的时间(毫秒)
+     */
+    private final long openTimeout;
+
+    private volatile State state = State.CLOSED;
+
+    private int failures;
+
+    private long openedAt;
+
+    /**
+     * @param failureThreshold 连续失败次数阈值
+     * @param openTimeout      打开后等待探测的时间(毫秒)
+     */
+    public CircuitBreaker(int failureThreshold, long openTimeout) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openTimeout = openTimeout;
+    }
+
+    /**
+     * 是否允许发送请求,OPEN 状态超过 openTimeout 时转为 HALF_OPEN 并允许一次探测
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= openTimeout) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                //探测进行中
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 距离下一次探测的毫秒数,不是 OPEN 状态时返回0
+     */
+    public synchronized long remaining() {
+        if (state != State.OPEN) {
+            return 0L;
+        }
+        return Math.max(0L, openedAt + openTimeout - System.currentTimeMillis());
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 只有 CLOSED 状态时读写命令可以访问设备
+     */
+    public boolean isClosed() {
+        return state == State.CLOSED;
+    }
+}
@@ -0,0 +1,164 @@
+package com.study.modbus;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * 设备注册表,按 deviceCode 管理所有 ModbusConnection,线程安全
+ * 移除和替换时关闭旧连接(停止轮询和重连,关闭 socket),产线重新配置时不需要重启 JVM
+ */
+public class DeviceRegistry {
+
+    private static final Logger logger = Logger.getLogger(DeviceRegistry.class);
+
+    private final Map<String, ModbusConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * 批量启动和关闭时的并行线程数
+     */
+    private final int parallelism;
+
+    public DeviceRegistry() {
+        this(16);
+    }
+
+    /**
+     * @param parallelism 批量启动和关闭时的并行线程数
+     */
+    public DeviceRegistry(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 添加连接
+     *
+     * @throws IllegalStateException deviceCode 已存在
+     */
+    public void add(ModbusConnection connection) {
+        if (connections.putIfAbsent(connection.getDeviceCode(), connection) != null) {
+            throw new IllegalStateException("设备已存在:" + connection.getDeviceCode());
+        }
+    }
+
+    /**
+     * 替换连接,关闭旧连接
+     *
+     * @return 被替换的连接,不存在时为 null
+     */
+    public ModbusConnection replace(ModbusConnection connection) {
+        ModbusConnection old = connections.put(connection.getDeviceCode(), connection);
+        if (old != null && old != connection) {
+            old.close();
+        }
+        return old;
+    }
+
+    /**
+     * 移除并关闭连接
+     *
+     * @return 被移除的连接,不存在时为 null
+     */
+    public ModbusConnection remove(String deviceCode) {
+        ModbusConnection old = connections.remove(deviceCode);
+        if (old != null) {
+            old.close();
+        }
+        return old;
+    }
+
+    public ModbusConnection get(String deviceCode) {
+        return connections.get(deviceCode);
+    }
+
+    public boolean contains(String deviceCode) {
+        return connections.containsKey(deviceCode);
+    }
+
+    public Set<String> getDeviceCodes() {
+        return connections.keySet();
+    }
+
+    public Collection<ModbusConnection> getConnections() {
+        return connections.values();
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * 并行创建并添加连接,单个连接创建失败或 deviceCode 已存在时记录日志后继续
+     *
+     * @param factories 创建连接,如 () -> new ModbusConnection(...)
+     * @return 添加成功的连接
+     */
+    public List<ModbusConnection> startAll(Collection<Supplier<ModbusConnection>> factories) throws InterruptedException {
+        List<ModbusConnection> started = new ArrayList<>(factories.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, factories.size())));
+        try {
+            List<Future<ModbusConnection>> futures = new ArrayList<>(factories.size());
+            for (Supplier<ModbusConnection> factory : factories) {
+                futures.add(executor.submit(() -> {
+                    ModbusConnection connection = factory.get();
+                    try {
+                        add(connection);
+                    } catch (IllegalStateException e) {
+                        connection.close();
+                        throw e;
+                    }
+                    return connection;
+                }));
+            }
+            for (Future<ModbusConnection> future : futures) {
+                try {
+                    started.add(future.get());
+                } catch (ExecutionException e) {
+                    logger.error("连接启动失败", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return started;
+    }
+
+    /**
+     * 并行关闭并移除所有连接
+     */
+    public void shutdownAll() throws InterruptedException {
+        List<ModbusConnection> all = new ArrayList<>(connections.values());
+        if (all.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, all.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(all.size());
+            for (ModbusConnection connection : all) {
+                futures.add(executor.submit(() -> {
+                    connections.remove(connection.getDeviceCode(), connection);
+                    connection.close();
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    logger.error("连接关闭失败", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
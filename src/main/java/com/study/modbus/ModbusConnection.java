@@ -1,29 +1,64 @@
 package com.study.modbus;
 
 import cn.tzauto.isecs.api.MsgListener;
-import com.google.gson.Gson;
 import com.serotonin.modbus4j.BatchRead;
 import com.serotonin.modbus4j.BatchResults;
+import com.serotonin.modbus4j.base.KeyedModbusLocator;
+import com.serotonin.modbus4j.base.ReadFunctionGroup;
 import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
 import com.serotonin.modbus4j.exception.ErrorResponseException;
 import com.serotonin.modbus4j.exception.ModbusInitException;
 import com.serotonin.modbus4j.exception.ModbusTransportException;
 import com.serotonin.modbus4j.ip.tcp.TcpMaster;
 import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.command.CommandPriority;
+import com.study.modbus.command.CommandQueue;
 import com.study.modbus.constant.Constants;
 import com.study.modbus.entity.DataInfo;
 import com.study.modbus.entity.Response;
 import com.study.modbus.entity.WriteBean;
 import com.study.modbus.exception.OfflineException;
+import com.study.modbus.exception.WriteFailedException;
+import com.study.modbus.image.RegisterImage;
+import com.study.modbus.journal.JournalPublisher;
+import com.study.modbus.journal.SampleJournal;
+import com.study.modbus.metrics.ConnectionMetrics;
+import com.study.modbus.metrics.MetricsSnapshot;
+import com.study.modbus.publish.AsyncDispatcher;
+import com.study.modbus.publish.BinaryMsgListener;
+import com.study.modbus.publish.BinaryPayloadEncoder;
+import com.study.modbus.publish.Deadband;
+import com.study.modbus.publish.DeltaTracker;
+import com.study.modbus.publish.PayloadSerializer;
+import com.study.modbus.tag.TagTable;
+import com.study.modbus.transport.MeteredTcpMaster;
+import com.study.modbus.transport.PipelinedTcpTransport;
+import com.study.modbus.transport.ReadBlock;
+import com.study.modbus.transport.RequestPlanner;
+import com.study.modbus.transport.WriteBlock;
+import com.study.modbus.transport.WritePlanner;
 import com.study.modbus.util.ModbusUtils;
+import com.study.modbus.util.RegisterCodec;
+import com.study.modbus.util.ThreadBackend;
 import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Condition;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
 
 
@@ -35,6 +70,12 @@ public class ModbusConnection {
 
     private static final Logger logger = Logger.getLogger(ModbusConnection.class);
 
+    /**
+     * readFromImage 的缓冲区，最长8字节数据类型
+     */
+    private static final ThreadLocal<ByteBuffer> IMAGE_REGISTERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(8));
+    private static final ThreadLocal<boolean[]> IMAGE_BITS = ThreadLocal.withInitial(() -> new boolean[1]);
+
     /**
      * 基本信息
      */
@@ -42,7 +83,46 @@ public class ModbusConnection {
 
     volatile boolean offline = false;
 
-    Gson gson = new Gson();
+    /**
+     * 调用 close() 后为 false
+     */
+    private volatile boolean running = true;
+
+    /**
+     * 本地日志，为空时直接推送给 listener
+     */
+    private volatile SampleJournal journal;
+
+    /**
+     * journal 在共享推送线程池中的推送任务
+     */
+    private JournalPublisher.Drain journalDrain;
+
+    /**
+     * 二进制格式的推送，可以与 listener 同时使用
+     */
+    private volatile BinaryMsgListener binaryListener;
+
+    /**
+     * 异步推送队列，为空时在轮询线程中推送
+     */
+    private volatile AsyncDispatcher.Lane dispatchLane;
+
+    /**
+     * 切换推送方式后由轮询线程在下一次轮询时全量推送
+     */
+    private volatile boolean resyncPending = false;
+
+    /**
+     * 未使用轮询引擎时的轮询线程
+     */
+    private Thread pollThread;
+
+    /**
+     * 熔断器，打开时不再轮询完整的批量读取，读写命令直接失败
+     */
+    private volatile CircuitBreaker circuitBreaker = new CircuitBreaker(3, 5000L);
+
     /**
      * 事件触发回调接口
      */
@@ -52,25 +132,88 @@ public class ModbusConnection {
      */
     private int slaveId;
 
-    private TcpMaster master;
+    private volatile TcpMaster master;
 
     MsgListener listener;
 
-    public BatchResults<String> batchResults;
+    public volatile BatchResults<String> batchResults;
+
+    /**
+     * 实时寄存器镜像，由轮询更新
+     */
+    private final RegisterImage registerImage = new RegisterImage();
 
+    /**
+     * 点位注册表
+     */
+    private final TagTable tagTable = new TagTable();
+
+    /**
+     * addTag 注册的地址到句柄，地址同时是 BatchRead 的 key，同一地址只能有一种数据类型
+     */
+    private final Map<String, Integer> tagHandles = new HashMap<>();
+
+    /**
+     * 保护 master 通信的锁,轮询和命令执行都需要持有
+     */
     final ReentrantLock lock = new ReentrantLock();
 
-    AtomicBoolean needWrite = new AtomicBoolean(false);
+    /**
+     * 读写命令队列,命令在下一次后台轮询之前执行
+     */
+    private final CommandQueue commandQueue = new CommandQueue(lock);
 
     /**
-     * Condition for waiting puts
+     * 命令执行超时时间(毫秒)
      */
-    private final Condition writing = lock.newCondition();
-    private final Condition read = lock.newCondition();
+    private volatile long commandTimeout = 10000L;
 
 
     public BatchRead<String> batchRead = new BatchRead();
 
+    /**
+     * 流水线传输,为空时使用 master 逐个请求应答
+     */
+    private volatile PipelinedTcpTransport pipeline;
+
+    /**
+     * 读请求规划，为空时使用 modbus4j 的分组方式
+     */
+    private volatile RequestPlanner requestPlanner;
+
+    /**
+     * 默认扫描组，对应 batchRead，尽可能快地轮询
+     */
+    private final ScanGroup defaultGroup = new ScanGroup(0L, batchRead);
+
+    /**
+     * 按扫描周期划分的扫描组
+     */
+    private final List<ScanGroup> scanGroups = new CopyOnWriteArrayList<>();
+
+    /**
+     * 变化推送的全量推送间隔，DELTA_DISABLED 表示每次推送全量数据
+     * 变化推送的设置(deltaInterval、deadbands 和各扫描组的 DeltaTracker)在 this 上同步修改
+     */
+    private volatile long deltaInterval = DELTA_DISABLED;
+
+    /**
+     * 点位死区，整体替换
+     */
+    private volatile Map<String, Deadband> deadbands = Collections.emptyMap();
+
+    private static final long DELTA_DISABLED = Long.MIN_VALUE;
+
+    /**
+     * 通信指标
+     */
+    private final ConnectionMetrics metrics;
+
+    /**
+     * 连接池大小，大于0时与同一 ip:port 的其他连接共用连接池
+     */
+    private volatile int poolSize = 0;
+
     public TcpMaster getMaster() {
         return master;
     }
@@ -79,6 +222,28 @@ public class ModbusConnection {
         this.master = master;
     }
 
+    /**
+     * 实时寄存器镜像，读取不需要访问设备
+     */
+    public RegisterImage getRegisterImage() {
+        return registerImage;
+    }
+
+    /**
+     * 链路检测点位
+     */
+    private String linkTestPoint;
+
+    /**
+     * 轮询引擎，为空时使用独立线程轮询
+     */
+    private PollEngine pollEngine;
+
+    /**
+     * 重连调度
+     */
+    private volatile ReconnectManager reconnectManager = ReconnectManager.shared();
+
     /**
      * @param deviceCode
      * @param ip
@@ -88,221 +253,1061 @@ public class ModbusConnection {
      * @param initLinkCount     初始化才有效
      */
     public ModbusConnection(int slaveId, String deviceCode, String ip, int port, ModbusEventDealer modbusEventDealer, long initSleep, int initLinkCount, MsgListener listener, String linkTestPoint) {
+        this(slaveId, deviceCode, ip, port, modbusEventDealer, initSleep, initLinkCount, listener, linkTestPoint, null);
+    }
+
+    /**
+     * @param deviceCode
+     * @param ip
+     * @param port
+     * @param modbusEventDealer 可以为空
+     * @param initSleep         初始化才有效
+     * @param initLinkCount     初始化才有效
+     * @param listener          为空时不序列化和推送轮询结果
+     * @param pollEngine        共享的轮询引擎，为空时为该连接单独启动轮询线程(开启 ThreadBackend 虚拟线程时为虚拟线程)
+     */
+    public ModbusConnection(int slaveId, String deviceCode, String ip, int port, ModbusEventDealer modbusEventDealer, long initSleep, int initLinkCount, MsgListener listener, String linkTestPoint, PollEngine pollEngine) {
         logger.info("连接信息为：" + slaveId + ":" + deviceCode + ":" + ip + ":" + port);
         this.listener = listener;
         this.slaveId = slaveId;
+        this.linkTestPoint = linkTestPoint;
+        this.pollEngine = pollEngine;
         dataInfo = new DataInfo(ip, port, initSleep, initLinkCount, deviceCode);
         this.modbusEventDealer = modbusEventDealer;
+        this.metrics = new ConnectionMetrics(deviceCode, modbusEventDealer);
         if (!doConnect()) {
             linkTask();
         }
 
-        new Thread(() -> {
+        if (pollEngine != null) {
+            pollEngine.register(this, 1000L);
+            return;
+        }
+
+        pollThread = ThreadBackend.newThread("modbus-poll-" + deviceCode, () -> {
             MDC.put(Constants.LOG_EQPCODE, deviceCode);
-            final ReentrantLock lock = this.lock;
             try {
                 Thread.sleep(1000L);
+                while (running) {
+                    long delay = pollOnce();
+                    if (delay > 0) {
+                        Thread.sleep(delay);
+                    }
+                }
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                //close() 中断等待
             }
-            while (true) {
-                //实时获取数据
-                try {
-                    if (needWrite.get()) {
-                        lock.lock();
-                        try {
-                            //有写的操作，等待写的操作完成后，再进行读(插队)
-                            writing.signal();
-                            read.await();
-                            if (needWrite.get()) {
-                                //还有别的写操作需要执行
-                                continue;
-                            }
-                        } finally {
-                            lock.unlock();
-                        }
-
-                    }
-                    BatchResults<String> stringBatchResults = batchRead();
+        });
+        pollThread.start();
 
-                    batchResults = stringBatchResults;
+    }
 
-                    String s = gson.toJson(stringBatchResults);
-                    if ("{\"data\":{}}".equals(s)) {
-                        throw new Exception("空的内容");
-                    }
+    /**
+     * 执行一次轮询：选出截止时间最早的扫描组，到期则读取并推送给 listener
+     * 由独立轮询线程或 {@link PollEngine} 调用，同一连接同一时刻只会有一个调用方
+     *
+     * @return 距离下一次轮询需要等待的毫秒数
+     */
+    long pollOnce() {
+        if (!running || master == null) {
+            //已关闭或等待重连
+            return 1000L;
+        }
+        if (!circuitBreaker.isClosed()) {
+            return probe();
+        }
+        //实时获取数据
+        long start = 0L;
+        try {
+            long now = System.currentTimeMillis();
+            ScanGroup group = nextGroup();
+            if (group.getNextTime() > now) {
+                return group.getNextTime() - now;
+            }
+            group.scheduleNext(now);
+            start = System.nanoTime();
 
-                    Boolean flag = (Boolean) stringBatchResults.getValue(linkTestPoint);
-                    if (flag) {
-                        //断线
-                        modbusEventDealer.doNetBroken();
-                        offline = true;
-                        continue;
-                    } else {
-                        offline = false;
-                    }
+            //释放锁之前入队的命令，读取失败时也要执行
+            Object[] values = commandQueue.callWithIoLock(() -> {
+                //有排队的读写命令，先执行命令再进行读(插队)
+                commandQueue.runPending();
+                if (group == defaultGroup) {
+                    //batchRead 可能被调用方替换，getReadFunctionGroups 会重新分组，与 addLocator 互斥
+                    defaultGroup.setBatchRead(batchRead);
+                }
+                List<ReadBlock<String>> blocks = group.blocks(master, requestPlanner);
+                if (blocks.isEmpty() && group == defaultGroup) {
+                    return null;
+                }
+                //按点位下标保存结果，默认组另外保留 BatchResults 供 getBatchResults() 使用
+                Object[] slots = group.getValues();
+                Arrays.fill(slots, null);
+                BatchResults<String> results = group == defaultGroup ? new BatchResults<>() : null;
+                readBlocks(blocks, results, slots);
+                if (results != null) {
+                    batchResults = results;
+                }
+                return slots;
+            });
+            if (values == null) {
+                //默认组没有点位，1秒后再检查
+                defaultGroup.postpone(now, 1000L);
+                start = 0L;
+                return delayToNext();
+            }
+            List<String> keys = group.getKeys();
+            int[] dataTypes = group.getDataTypes();
 
-                    listener.dealMultMsg(s);
+            if (PayloadSerializer.count(values) == 0) {
+                throw new Exception("空的内容");
+            }
 
-                    //连接上了
-                    modbusEventDealer.gotoComplete();
-                } catch (Exception e) {
-                    offline = true;
-                    logger.info("实时获取消息失败");
-                    //断线了
+            //链路检测点位不在本组时不做判断
+            int linkSlot = group.slotOf(linkTestPoint);
+            if (linkSlot >= 0 && Boolean.TRUE.equals(values[linkSlot])) {
+                //断线
+                if (modbusEventDealer != null) {
                     modbusEventDealer.doNetBroken();
-                    try {
-                        Thread.sleep(500L);
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
+                }
+                offline = true;
+                resetDelta();
+                //离线期间不返回过期的轮询结果
+                registerImage.clear(slaveId);
+                return delayToNext();
+            } else {
+                offline = false;
+            }
+
+            AsyncDispatcher.Lane dropLane = this.dispatchLane;
+            SampleJournal lossJournal = this.journal;
+            boolean resync = resyncPending;
+            if (resync) {
+                resyncPending = false;
+            }
+            if (resync || (dropLane != null && dropLane.takeDropped()) || (lossJournal != null && lossJournal.takeLost())) {
+                //推送队列或本地日志丢弃过变化，或切换了推送队列，全量推送一次
+                resetDelta();
+            }
+
+            boolean[] mask = null;
+            DeltaTracker deltaTracker = group.getDeltaTracker();
+            if (deltaTracker != null) {
+                //只推送变化的点位
+                if (deltaTracker.delta(keys, values, now) > 0) {
+                    mask = deltaTracker.getMask();
+                } else {
+                    keys = null;
+                }
+            }
+
+            if (keys != null) {
+                publish(group, keys, dataTypes, values, mask, now);
+            }
+
+            //连接上了
+            if (modbusEventDealer != null) {
+                modbusEventDealer.gotoComplete();
+            }
+            circuitBreaker.onSuccess();
+            long elapsed = System.nanoTime() - start;
+            metrics.cycleCompleted(elapsed);
+            return delayToNext();
+        } catch (InterruptedException e) {
+            //BLOCK 策略等待推送队列时被 close() 中断，不是设备故障
+            Thread.currentThread().interrupt();
+            resyncPending = true;
+            return 1000L;
+        } catch (Exception e) {
+            offline = true;
+            //恢复后全量推送一次
+            resetDelta();
+            registerImage.clear(slaveId);
+            logger.info("实时获取消息失败");
+            if (start != 0L) {
+                metrics.cycleFailed(System.nanoTime() - start);
+            }
+            //断线了
+            if (modbusEventDealer != null) {
+                modbusEventDealer.doNetBroken();
+            }
+            circuitBreaker.onFailure();
+            if (circuitBreaker.isClosed()) {
+                return 500L;
+            }
+            //熔断器打开，重新连接
+            linkTask();
+            return circuitBreaker.remaining();
+        }
+    }
+
+    /**
+     * 推送一个周期的结果：JSON 和二进制格式走同一条路径
+     * 开启本地日志时写入日志，由 JournalPublisher 推送；使用推送队列时作为一条放入队列，按同一个 OverloadPolicy 处理；
+     * 否则在轮询线程中直接调用 listener
+     */
+    private void publish(ScanGroup group, List<String> keys, int[] dataTypes, Object[] values, boolean[] mask, long now) throws InterruptedException {
+        MsgListener listener = this.listener;
+        BinaryMsgListener binaryListener = this.binaryListener;
+        if (listener == null && binaryListener == null) {
+            return;
+        }
+        CharSequence payload = null;
+        if (listener != null) {
+            PayloadSerializer payloadSerializer = group.getPayloadSerializer();
+            payloadSerializer.write(keys, values, mask);
+            payload = payloadSerializer.buffer();
+        }
+        BinaryPayloadEncoder binaryEncoder = binaryListener == null ? null : group.getBinaryEncoder();
+        SampleJournal journal = this.journal;
+        AsyncDispatcher.Lane dispatchLane = this.dispatchLane;
+        if (journal != null) {
+            //先写入日志，由推送线程推送，超过容量时下一次全量推送
+            boolean appended = payload == null || journal.append(now, payload);
+            if (binaryEncoder != null) {
+                try {
+                    if (binaryEncoder.needsSchema(keys)) {
+                        appended &= journal.append(now, SampleJournal.KIND_BINARY, binaryEncoder.writeSchema(keys, dataTypes));
+                    }
+                    appended &= journal.append(now, SampleJournal.KIND_BINARY, binaryEncoder.writeFrame(keys, values, mask, now));
+                } catch (RuntimeException e) {
+                    binaryFailed(binaryEncoder, e);
+                }
+            }
+            if (!appended) {
+                if (journal.isClosed()) {
+                    //disableJournal() 已替换日志，下一次全量推送
+                    resyncPending = true;
+                } else {
+                    logger.warn("轮询结果超过日志容量，已丢弃:" + dataInfo.getDeviceCode());
+                }
+            }
+        } else if (dispatchLane != null) {
+            //放入推送队列，不等待 listener；队列已被替换或关闭时下一次全量推送
+            byte[] schema = null;
+            byte[] frame = null;
+            if (binaryEncoder != null) {
+                try {
+                    if (binaryEncoder.needsSchema(keys)) {
+                        schema = toBytes(binaryEncoder.writeSchema(keys, dataTypes));
                     }
+                    frame = toBytes(binaryEncoder.writeFrame(keys, values, mask, now));
+                } catch (RuntimeException e) {
+                    binaryFailed(binaryEncoder, e);
+                }
+            }
+            if (!dispatchLane.offer(payload == null ? null : payload.toString(), schema, frame)) {
+                resyncPending = true;
+            }
+        } else {
+            if (payload != null) {
+                listener.dealMultMsg(payload.toString());
+            }
+            if (binaryEncoder != null) {
+                try {
+                    if (binaryEncoder.needsSchema(keys)) {
+                        binaryListener.dealSchema(binaryEncoder.writeSchema(keys, dataTypes));
+                    }
+                    binaryListener.dealFrame(binaryEncoder.writeFrame(keys, values, mask, now));
+                } catch (RuntimeException e) {
+                    binaryFailed(binaryEncoder, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 二进制编码或推送失败只记录日志，不作为设备通信失败处理
+     */
+    private void binaryFailed(BinaryPayloadEncoder binaryEncoder, RuntimeException e) {
+        logger.error("二进制推送失败:" + dataInfo.getDeviceCode(), e);
+        //下游可能没有收到 schema，下一帧之前重新发送
+        binaryEncoder.reset();
+    }
 
+    /**
+     * 复制编码结果，编码器的缓冲区在下一次编码时被覆盖
+     */
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 熔断器打开时的探测：到期后只读取链路检测点位(没有时读取第一个点位)，成功后恢复完整轮询
+     *
+     * @return 距离下一次轮询需要等待的毫秒数
+     */
+    private long probe() {
+        if (!circuitBreaker.allowRequest()) {
+            return Math.max(100L, circuitBreaker.remaining());
+        }
+        boolean success = false;
+        try {
+            success = commandQueue.callWithIoLock(() -> {
+                //熔断期间排队的命令直接失败
+                commandQueue.runPending();
+                BaseLocator<?> locator = probeLocator();
+                if (locator == null) {
+                    return true;
                 }
+                Object value = master.getValue(locator);
+                //链路检测点位为 true 表示断线
+                return !(linkTestPoint != null && Boolean.TRUE.equals(value));
+            });
+        } catch (Exception e) {
+            logger.info("探测失败:" + e.getMessage());
+        }
+        if (success) {
+            logger.info("探测成功，恢复轮询");
+            circuitBreaker.onSuccess();
+            return 0L;
+        }
+        circuitBreaker.onFailure();
+        linkTask();
+        return circuitBreaker.remaining();
+    }
+
+    private BaseLocator<?> probeLocator() {
+        BaseLocator<?> locator = null;
+        if (linkTestPoint != null) {
+            locator = defaultGroup.locator(master, linkTestPoint);
+            for (int i = 0; locator == null && i < scanGroups.size(); i++) {
+                locator = scanGroups.get(i).locator(master, linkTestPoint);
             }
-        }).start();
+        }
+        if (locator == null) {
+            locator = defaultGroup.locator(master, null);
+            for (int i = 0; locator == null && i < scanGroups.size(); i++) {
+                locator = scanGroups.get(i).locator(master, null);
+            }
+        }
+        return locator;
+    }
 
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 设置熔断器，默认连续失败3次后打开，5秒后探测
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 截止时间最早的扫描组，只读取截止时间，不持有 I/O 锁
+     * 默认组是否有点位在持锁读取时检查，没有点位时推迟1秒；截止时间相同时优先其他扫描组
+     */
+    private ScanGroup nextGroup() {
+        ScanGroup next = null;
+        for (ScanGroup group : scanGroups) {
+            if (next == null || group.getNextTime() < next.getNextTime()) {
+                next = group;
+            }
+        }
+        if (next == null || defaultGroup.getNextTime() < next.getNextTime()) {
+            next = defaultGroup;
+        }
+        return next;
+    }
+
+    /**
+     * 距离下一个扫描组到期的毫秒数
+     */
+    private long delayToNext() {
+        return Math.max(0L, nextGroup().getNextTime() - System.currentTimeMillis());
+    }
+
+    /**
+     * 下一次推送全量数据，二进制格式重新发送 schema
+     */
+    private void resetDelta() {
+        DeltaTracker deltaTracker = defaultGroup.getDeltaTracker();
+        if (deltaTracker != null) {
+            deltaTracker.reset();
+        }
+        defaultGroup.getBinaryEncoder().reset();
+        for (ScanGroup group : scanGroups) {
+            deltaTracker = group.getDeltaTracker();
+            if (deltaTracker != null) {
+                deltaTracker.reset();
+            }
+            group.getBinaryEncoder().reset();
+        }
+    }
+
+    /**
+     * 按扫描周期添加点位，相同周期的点位放在同一个扫描组中
+     *
+     * @param key      点位名称
+     * @param locator  点位
+     * @param scanRate 扫描周期(毫秒)
+     */
+    public void addLocator(String key, BaseLocator<?> locator, long scanRate) {
+        //持锁期间入队的命令在释放锁后执行
+        commandQueue.withIoLock(() -> {
+            ScanGroup group = null;
+            for (ScanGroup scanGroup : scanGroups) {
+                if (scanGroup.getPeriod() == scanRate) {
+                    group = scanGroup;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = addScanGroup(scanRate, new BatchRead<>());
+            }
+            group.getBatchRead().addLocator(key, locator);
+        });
+    }
+
+    /**
+     * 注册点位并按扫描周期加入轮询，地址只在此处解析一次
+     *
+     * @param addr     地址，如 40001
+     * @param dataType 数据类型，来自com.serotonin.modbus4j.code.DataType
+     * @param scanRate 扫描周期(毫秒)
+     * @return 点位句柄，用于 getValue 和 WriteBean.setTag；地址已添加时返回已有的句柄，不重复轮询
+     * @throws IllegalArgumentException 地址格式错误，或地址已按其他数据类型添加
+     */
+    public int addTag(String addr, int dataType, long scanRate) {
+        synchronized (tagHandles) {
+            Integer existing = tagHandles.get(addr);
+            if (existing != null) {
+                int function = tagTable.getFunctionCode(existing);
+                boolean bits = function == RegisterRange.COIL_STATUS || function == RegisterRange.INPUT_STATUS;
+                if (!bits && tagTable.getDataType(existing) != dataType) {
+                    throw new IllegalArgumentException("地址已按数据类型" + tagTable.getDataType(existing) + "添加:" + addr);
+                }
+                return existing;
+            }
+            int handle = tagTable.register(addr, slaveId, dataType);
+            addLocator(addr, tagTable.locator(handle), scanRate);
+            tagHandles.put(addr, handle);
+            return handle;
+        }
+    }
+
+    /**
+     * 按句柄读取最近一次轮询的结果，不访问设备，不分配对象
+     *
+     * @return 没有轮询结果时返回 NaN
+     */
+    public double getValue(int handle) {
+        return tagTable.read(registerImage, handle);
+    }
+
+    /**
+     * 按句柄获取最近一次轮询的时间
+     *
+     * @return 没有轮询结果时返回0
+     */
+    public long getValueTime(int handle) {
+        return tagTable.getTimestamp(registerImage, handle);
+    }
+
+    public TagTable getTagTable() {
+        return tagTable;
+    }
+
+    public ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 通信指标快照：请求往返和轮询周期耗时分布，超时、异常应答、重连和收发字节数
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * 添加一个扫描组，batchRead 由调用方预先组装好
+     *
+     * @param scanRate 扫描周期(毫秒)
+     */
+    public ScanGroup addScanGroup(long scanRate, BatchRead<String> batchRead) {
+        ScanGroup group = new ScanGroup(scanRate, batchRead);
+        //与 enableDelta/disableDelta/setDeadband 互斥，新的扫描组不会错过变化推送的设置
+        synchronized (this) {
+            if (deltaInterval != DELTA_DISABLED) {
+                group.setDeltaTracker(newDeltaTracker(deltaInterval));
+            }
+            scanGroups.add(group);
+        }
+        return group;
+    }
+
+    public List<ScanGroup> getScanGroups() {
+        return scanGroups;
     }
 
     /**
      * 进行读操作
+     * 命令排在后台轮询之前执行，超过 commandTimeout 未完成抛出 ModbusTransportException
      */
-    public synchronized BatchResults<String> readData(BatchRead<String> batchRead) throws InterruptedException, OfflineException, ModbusTransportException, ErrorResponseException {
-        BatchResults<String> results = null;
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            needWrite.set(true);
-            writing.await();
+    public BatchResults<String> readData(BatchRead<String> batchRead) throws InterruptedException, OfflineException, ModbusTransportException, ErrorResponseException {
+        return await(readDataAsync(batchRead, commandTimeout));
+    }
 
-            if (offline) {
+    /**
+     * 异步读操作，不阻塞调用线程
+     *
+     * @param timeout 超时时间(毫秒)，超时后 future 以 TimeoutException 结束
+     * @return 读取结果，没有任何点位的值时为 null
+     */
+    public CompletableFuture<BatchResults<String>> readDataAsync(BatchRead<String> batchRead, long timeout) {
+        if (!running || master == null || !circuitBreaker.isClosed()) {
+            //已关闭、还没有连接上或熔断中
+            return offlineFuture();
+        }
+        return commandQueue.submit(CommandPriority.READ, () -> {
+            if (offline || master == null || !circuitBreaker.isClosed()) {
                 throw new OfflineException("连接已断开");
             }
 
-            results = batchRead(batchRead);
-            String s = gson.toJson(results);
+            BatchResults<String> results = batchRead(batchRead);
 
-            if ("{\"data\":{}}".equals(s)) {
+            if (isEmpty(batchRead, results)) {
                 return null;
             }
             return results;
-        } finally {
-            needWrite.set(false);
-            read.signal();
-            lock.unlock();
-        }
-
+        }, timeout);
     }
 
     /**
      * 进行写操作
+     * 写命令优先于读命令和后台轮询执行，超过 commandTimeout 未完成抛出 ModbusTransportException
+     * 地址连续的线圈和寄存器合并写入，部分写入失败时抛出 WriteFailedException
      */
-    public synchronized boolean writeData(List<WriteBean> list) throws OfflineException, InterruptedException, ModbusTransportException, ErrorResponseException {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            //进行写操作
-            needWrite.set(true);
-            writing.await();
+    public boolean writeData(List<WriteBean> list) throws OfflineException, InterruptedException, ModbusTransportException, ErrorResponseException {
+        return await(writeDataAsync(list, commandTimeout));
+    }
+
+    /**
+     * 异步写操作，不阻塞调用线程
+     *
+     * @param timeout 超时时间(毫秒)，超时后 future 以 TimeoutException 结束
+     * @return 有不支持的写类型时为 false，此时不会写入任何数据
+     */
+    public CompletableFuture<Boolean> writeDataAsync(List<WriteBean> list, long timeout) {
+        if (!running || master == null || !circuitBreaker.isClosed()) {
+            //已关闭、还没有连接上或熔断中
+            return offlineFuture();
+        }
+        return commandQueue.submit(CommandPriority.WRITE, () -> {
             //进行处理
 
-            if (offline) {
+            if (offline || master == null || !circuitBreaker.isClosed()) {
                 throw new OfflineException("连接已断开");
             }
 
-            for (WriteBean writeBean : list) {
-                String addr = writeBean.getAddr();
-                String type = addr.substring(0, 1);
-                int offset = Integer.parseInt(addr.substring(1)) - 1;
-                //写单值
-                switch (type) {
-                    case "0":
-                        ModbusUtils.writeCoils(master, slaveId, offset, (Boolean) writeBean.getData());
-                        break;
-                    case "4":
-                        if (writeBean.getDataType() == DataType.FOUR_BYTE_FLOAT) {//float
-                            short[] shorts = ModbusUtils.valueToShorts((Number) writeBean.getData());
-                            ModbusUtils.writeRegisters(master, slaveId, offset, shorts);
-                            break;
-                        } else if (writeBean.getDataType() == DataType.TWO_BYTE_INT_UNSIGNED || writeBean.getDataType() == DataType.FOUR_BYTE_INT_SIGNED) {//int
-                            ModbusUtils.writeRegister(master, slaveId, offset, (Integer) writeBean.getData());
-                            break;
-                        }
-                    default:
-                        logger.error("没有该写类型的functionId:" + type + ":" + writeBean.getDataType());
-                        return false;
+            List<WriteBlock> blocks;
+            try {
+                blocks = WritePlanner.plan(list, tagTable);
+            } catch (IllegalArgumentException | ClassCastException e) {
+                logger.error("写入项不支持:" + e.getMessage());
+                return false;
+            }
+
+            //连续地址合并为一次请求
+            List<WriteBean> written = new ArrayList<>(list.size());
+            for (WriteBlock block : blocks) {
+                try {
+                    ModbusUtils.writeBlock(master, slaveId, block);
+                } catch (ModbusTransportException | ErrorResponseException e) {
+                    throw new WriteFailedException(e, slaveId, block.getBeans(), written);
                 }
+                written.addAll(block.getBeans());
+            }
+            return true;
+        }, timeout);
+    }
+
+    /**
+     * 连接不可用时直接失败的结果
+     */
+    private static <T> CompletableFuture<T> offlineFuture() {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new OfflineException("连接已断开"));
+        return future;
+    }
 
+    /**
+     * 等待命令结果，还原命令抛出的异常类型
+     */
+    private <T> T await(CompletableFuture<T> future) throws InterruptedException, OfflineException, ModbusTransportException, ErrorResponseException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            //未开始执行的命令不再执行
+            future.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new ModbusTransportException(cause.getMessage(), slaveId);
             }
-        } finally {
-            needWrite.set(false);
-            read.signal();
-            lock.unlock();
+            if (cause instanceof OfflineException) {
+                throw (OfflineException) cause;
+            }
+            if (cause instanceof ModbusTransportException) {
+                throw (ModbusTransportException) cause;
+            }
+            if (cause instanceof ErrorResponseException) {
+                throw (ErrorResponseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ModbusTransportException(cause, slaveId);
         }
-        return true;
+    }
+
+    public long getCommandTimeout() {
+        return commandTimeout;
     }
 
     /**
-     * 重连任务 , 根据 dataInfo.getLinkNum() 进行n次重连，
-     * dataInfo.getSleepTime() 设置间隔时间
+     * 设置同步读写命令的超时时间(毫秒)，小于等于0不超时
+     */
+    public void setCommandTimeout(long commandTimeout) {
+        this.commandTimeout = commandTimeout;
+    }
+
+    /**
+     * 重连任务 , 根据 dataInfo.getLinkNum() 进行n次重连，小于0时不限次数
+     * 第一次间隔为 dataInfo.getSleepTime()，之后按指数退避并加入随机抖动，
+     * 在共享的 ReconnectManager 上执行，不再为每个设备单独创建线程
+     * 启动时连接失败和熔断器打开时调用，已在重连时忽略
      */
     public void linkTask() {
-        boolean flag = dataInfo.getLinkNum() < 0;
-        new Thread(() -> {
-            MDC.put(Constants.LOG_EQPCODE, dataInfo.getDeviceCode());
-            int tempNum = flag ? 1 : dataInfo.getLinkNum();
-            for (int i = 0; i < tempNum; i++) {
-                if (flag) i--;
-                if (doConnect()) {
-                    break;
-                }
-                try {
-                    Thread.sleep(dataInfo.getSleepTime());
-                } catch (InterruptedException ex) {
-                    logger.error("休眠线程被中断", ex);
+        if (!running) {
+            return;
+        }
+        String deviceCode = dataInfo.getDeviceCode();
+        reconnectManager.reconnect(this, deviceCode, () -> {
+            MDC.put(Constants.LOG_EQPCODE, deviceCode);
+            try {
+                if (!doConnect()) {
+                    return false;
                 }
+                //链路已恢复，不再等待熔断器的探测时间
+                circuitBreaker.onSuccess();
+                return true;
+            } finally {
+                MDC.remove(Constants.LOG_EQPCODE);
             }
+        }, dataInfo.getLinkNum(), dataInfo.getSleepTime());
+    }
+
+    /**
+     * 关闭连接：停止轮询和重连，关闭 pipeline 和 master 的 socket，排队中的命令以 OfflineException 结束
+     * 正在进行的那一次通信会执行完，关闭后不能再次使用
+     */
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (pollEngine != null) {
+            pollEngine.unregister(this);
+        }
+        Thread pollThread = this.pollThread;
+        if (pollThread != null) {
+            pollThread.interrupt();
+        }
+        reconnectManager.cancel(this);
+        lock.lock();
+        try {
+            commandQueue.failAll(new OfflineException("连接已关闭"));
+            disablePipeline();
+            disableJournal();
+            useDispatcher(null);
+            TcpMaster master = this.master;
+            this.master = null;
+            if (master != null) {
+                master.destroy();
+            }
+        } finally {
+            lock.unlock();
+            //持锁期间入队的命令
+            commandQueue.failAll(new OfflineException("连接已关闭"));
+        }
+        logger.info("连接已关闭:" + dataInfo.getDeviceCode());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public ReconnectManager getReconnectManager() {
+        return reconnectManager;
+    }
+
+    /**
+     * 设置重连使用的 ReconnectManager，默认为 ReconnectManager.shared()
+     */
+    public void setReconnectManager(ReconnectManager reconnectManager) {
+        this.reconnectManager = reconnectManager;
+    }
 
-        }).start();
+    public String getDeviceCode() {
+        return dataInfo.getDeviceCode();
     }
 
     /**
-     * 进行连接
+     * 进行连接：创建新的 master 替换旧的 master，master 的 init() 建立连接，连接失败即本次重连失败
      *
      * @return
      */
     private boolean doConnect() {
-        boolean result = false;
+        TcpMaster created = newMaster();
+        if (created == null) {
+            return false;
+        }
+        if (swapMaster(created)) {
+            metrics.reconnected();
+        }
+        return true;
+    }
+
+    /**
+     * 按 poolSize 创建 master，不使用连接池时保持连接(keepAlive)
+     *
+     * @return 失败时返回 null
+     */
+    private TcpMaster newMaster() {
+        TcpMaster created;
         try {
-            this.master = (TcpMaster) ModbusUtils.getMaster(dataInfo.getIp(), dataInfo.getPort());
-            result = true;
+            if (poolSize > 0) {
+                created = (TcpMaster) ModbusUtils.getPooledMaster(dataInfo.getIp(), dataInfo.getPort(), poolSize);
+            } else {
+                created = (TcpMaster) ModbusUtils.getMaster(dataInfo.getIp(), dataInfo.getPort(), true);
+            }
         } catch (ModbusInitException e) {
+            logger.warn("连接失败:" + dataInfo.getIp() + ":" + dataInfo.getPort() + " " + e.getMessage());
+            return null;
+        }
+        if (created instanceof MeteredTcpMaster) {
+            ((MeteredTcpMaster) created).setMetrics(metrics);
         }
-        return result;
+        return created;
+    }
+
+    /**
+     * 在 lock 中替换 master，关闭旧的 master
+     *
+     * @return 是否替换了旧的 master
+     */
+    private boolean swapMaster(TcpMaster created) {
+        TcpMaster old;
+        try {
+            //释放锁后执行等待重连期间入队的命令
+            old = commandQueue.callWithIoLock(() -> {
+                if (!running) {
+                    //重连过程中连接被关闭，旧 master 由 close() 关闭
+                    created.destroy();
+                    return null;
+                }
+                TcpMaster previous = this.master;
+                this.master = created;
+                return previous;
+            });
+        } catch (Exception e) {
+            //body 不抛出受检异常
+            throw new IllegalStateException(e);
+        }
+        if (old == null) {
+            return false;
+        }
+        //关闭旧 master 的 socket，连接池时释放对连接池的引用
+        old.destroy();
+        return true;
     }
 
     /**
-     * 使用前需要对 batchRead 进行初始化
      * 批量获取点位结果
-     * 方便用于定时获取点位的结果
      *
      * @return
      * @throws ErrorResponseException
      * @throws ModbusTransportException
      */
-    private BatchResults<String> batchRead() throws ErrorResponseException, ModbusTransportException {
-        return batchRead(batchRead);
+    private BatchResults<String> batchRead(BatchRead<String> batchRead) throws ErrorResponseException, ModbusTransportException {
+        PipelinedTcpTransport pipeline = this.pipeline;
+        RequestPlanner requestPlanner = this.requestPlanner;
+        List<ReadBlock<String>> blocks = requestPlanner != null ? requestPlanner.plan(batchRead, master) : ReadBlock.of(batchRead, master);
+        if (pipeline != null) {
+            return pipeline.read(blocks, registerImage);
+        }
+        return ModbusUtils.readBlocks(master, blocks, registerImage);
     }
 
-
     /**
-     * 批量获取点位结果
+     * 读取已规划的请求块，结果按 ReadBlock.getFirstSlot() 写入 values
      *
-     * @return
+     * @param results 为空时不写入
      * @throws ErrorResponseException
      * @throws ModbusTransportException
      */
-    private BatchResults<String> batchRead(BatchRead<String> batchRead) throws ErrorResponseException, ModbusTransportException {
-        return master.send(batchRead);
+    private void readBlocks(List<ReadBlock<String>> blocks, BatchResults<String> results, Object[] values) throws ErrorResponseException, ModbusTransportException {
+        PipelinedTcpTransport pipeline = this.pipeline;
+        if (pipeline != null) {
+            pipeline.read(blocks, registerImage, results, values);
+            return;
+        }
+        ModbusUtils.readBlocks(master, blocks, registerImage, results, values);
+    }
+
+    /**
+     * 设置读请求规划，为空时使用 modbus4j 的分组方式
+     * 例如 new RequestPlanner(32, 100)：跨越不超过32个地址的空隙，多读不超过100字节时合并请求
+     */
+    public void setRequestPlanner(RequestPlanner requestPlanner) {
+        this.requestPlanner = requestPlanner;
+    }
+
+    /**
+     * 开启流水线模式：批量读的所有请求连续发出,按事务号匹配响应
+     * 需要网关支持同一连接上多个未完成的事务
+     *
+     * @param maxInFlight 同时未应答的最大请求数
+     * @param timeout     响应超时时间(毫秒)
+     */
+    public void enablePipeline(int maxInFlight, int timeout) {
+        disablePipeline();
+        PipelinedTcpTransport pipeline = new PipelinedTcpTransport(dataInfo.getIp(), dataInfo.getPort(), timeout, maxInFlight);
+        pipeline.setMetrics(metrics);
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * 开启变化推送：只推送与上一次推送相比发生变化的点位
+     *
+     * @param fullInterval 全量推送间隔(毫秒),用于下游重新同步,小于等于0表示只在启动和重连后全量推送
+     */
+    public synchronized void enableDelta(long fullInterval) {
+        deltaInterval = fullInterval;
+        defaultGroup.setDeltaTracker(newDeltaTracker(fullInterval));
+        for (ScanGroup group : scanGroups) {
+            group.setDeltaTracker(newDeltaTracker(fullInterval));
+        }
+    }
+
+    /**
+     * 设置点位死区，变化超过死区才推送，用于过滤模拟量的抖动
+     * 变化推送未开启时只保存死区，开启变化推送后生效
+     *
+     * @param key      点位名称
+     * @param deadband 为空时取消该点位的死区
+     */
+    public synchronized void setDeadband(String key, Deadband deadband) {
+        Map<String, Deadband> deadbands = new HashMap<>(this.deadbands);
+        if (deadband == null) {
+            deadbands.remove(key);
+        } else {
+            deadbands.put(key, deadband);
+        }
+        this.deadbands = Collections.unmodifiableMap(deadbands);
+        DeltaTracker deltaTracker = defaultGroup.getDeltaTracker();
+        if (deltaTracker != null) {
+            deltaTracker.setDeadbands(this.deadbands);
+        }
+        for (ScanGroup group : scanGroups) {
+            deltaTracker = group.getDeltaTracker();
+            if (deltaTracker != null) {
+                deltaTracker.setDeadbands(this.deadbands);
+            }
+        }
+    }
+
+    public Map<String, Deadband> getDeadbands() {
+        return deadbands;
+    }
+
+    private DeltaTracker newDeltaTracker(long fullInterval) {
+        DeltaTracker deltaTracker = new DeltaTracker(fullInterval);
+        deltaTracker.setDeadbands(deadbands);
+        return deltaTracker;
+    }
+
+    /**
+     * 关闭变化推送,每次推送全量数据
+     */
+    public synchronized void disableDelta() {
+        deltaInterval = DELTA_DISABLED;
+        defaultGroup.setDeltaTracker(null);
+        for (ScanGroup group : scanGroups) {
+            group.setDeltaTracker(null);
+        }
+    }
+
+    /**
+     * 结果中没有任何点位的值
+     */
+    private boolean isEmpty(BatchRead<String> batchRead, BatchResults<String> results) {
+        for (ReadFunctionGroup<String> group : batchRead.getReadFunctionGroups(master)) {
+            for (KeyedModbusLocator<String> locator : group.getLocators()) {
+                if (results.getValue(locator.getKey()) != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 开启本地日志：轮询结果先写入内存映射的环形缓冲区，由共享的 JournalPublisher 推送给 listener，
+     * listener 异常时保留在缓冲区中重试，缓冲区满时淘汰最早的记录
+     * 文件已存在时从上次未确认的记录继续推送
+     *
+     * @param file     日志文件
+     * @param capacity 缓冲区大小(字节)
+     */
+    public void enableJournal(File file, int capacity) throws IOException {
+        enableJournal(file, capacity, JournalPublisher.shared());
+    }
+
+    /**
+     * 开启本地日志，使用指定的推送线程池
+     *
+     * @param publisher 推送线程池，可以由多个连接共用
+     */
+    public synchronized void enableJournal(File file, int capacity, JournalPublisher publisher) throws IOException {
+        if (listener == null && binaryListener == null) {
+            throw new IllegalStateException("没有 listener");
+        }
+        disableJournal();
+        SampleJournal journal = new SampleJournal(file, capacity);
+        this.journalDrain = publisher.start(journal, listener, binaryListener, dataInfo.getDeviceCode());
+        this.journal = journal;
+    }
+
+    /**
+     * 关闭本地日志，未推送的记录保留在文件中
+     * 先替换 journal 使之后的轮询不再写入，close() 等待正在进行的写入完成后再释放映射
+     */
+    public synchronized void disableJournal() {
+        SampleJournal journal = this.journal;
+        JournalPublisher.Drain journalDrain = this.journalDrain;
+        this.journal = null;
+        this.journalDrain = null;
+        if (journalDrain != null) {
+            journalDrain.stop();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warn("关闭日志失败", e);
+            }
+        }
+    }
+
+    public SampleJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 使用异步推送：轮询结果放入 dispatcher 中该设备的有界队列，由推送线程调用 listener 和 binaryListener，扫描周期不受 listener 影响
+     * 开启本地日志时以本地日志为准；切换后旧队列中未推送的结果被丢弃，下一次轮询全量推送
+     *
+     * @param dispatcher 可以多台设备共用，为空时恢复在轮询线程中直接推送
+     */
+    public synchronized void useDispatcher(AsyncDispatcher dispatcher) {
+        if (dispatcher != null && listener == null && binaryListener == null) {
+            throw new IllegalStateException("没有 listener");
+        }
+        AsyncDispatcher.Lane old = this.dispatchLane;
+        this.dispatchLane = dispatcher == null ? null : dispatcher.lane(listener, binaryListener, dataInfo.getDeviceCode());
+        if (old != null) {
+            //旧队列中未推送的结果被丢弃，下一次全量推送
+            old.close();
+            resyncPending = true;
+        }
+    }
+
+    /**
+     * 设置二进制格式的推送：点位表只发送一次，之后每个周期只发送点位编号和值，比 JSON 小且不需要装箱解析
+     * 与 JSON 格式走同一条路径：开启本地日志或推送队列时由推送线程调用，否则在轮询线程中调用
+     *
+     * @param binaryListener 为空时关闭
+     */
+    public synchronized void setBinaryListener(BinaryMsgListener binaryListener) {
+        this.binaryListener = binaryListener;
+        AsyncDispatcher.Lane dispatchLane = this.dispatchLane;
+        if (dispatchLane != null) {
+            dispatchLane.setBinaryListener(binaryListener);
+        }
+        JournalPublisher.Drain journalDrain = this.journalDrain;
+        if (journalDrain != null) {
+            journalDrain.setBinaryListener(binaryListener);
+        }
+        //新的 listener 没有收到过 schema，先设置 listener 再重置，保证 schema 发送给新的 listener
+        defaultGroup.getBinaryEncoder().reset();
+        for (ScanGroup group : scanGroups) {
+            group.getBinaryEncoder().reset();
+        }
+    }
+
+    public BinaryMsgListener getBinaryListener() {
+        return binaryListener;
+    }
+
+    /**
+     * 推送队列中排队的条数
+     */
+    public int getDispatchDepth() {
+        AsyncDispatcher.Lane dispatchLane = this.dispatchLane;
+        return dispatchLane == null ? 0 : dispatchLane.getDepth();
+    }
+
+    /**
+     * 推送队列丢弃的条数
+     */
+    public long getDispatchDropped() {
+        AsyncDispatcher.Lane dispatchLane = this.dispatchLane;
+        return dispatchLane == null ? 0L : dispatchLane.getDropped();
+    }
+
+    /**
+     * 关闭流水线模式,恢复逐个请求应答
+     */
+    public void disablePipeline() {
+        PipelinedTcpTransport pipeline = this.pipeline;
+        this.pipeline = null;
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * 开启连接池模式,同一 ip:port 的连接(如同一网关后的多个 slaveId)共用最多 size 个连接,
+     * 不同连接的轮询分摊到池中各个连接上并行执行，立即替换当前的 master，正在重连时在重连成功后生效
+     *
+     * @param size 连接池大小,小于等于0关闭连接池模式
+     */
+    public void usePool(int size) {
+        int poolSize = Math.max(0, size);
+        if (poolSize == this.poolSize) {
+            return;
+        }
+        this.poolSize = poolSize;
+        if (!running || master == null) {
+            return;
+        }
+        TcpMaster created = newMaster();
+        if (created != null) {
+            swapMaster(created);
+        }
+    }
+
+    public int getPoolSize() {
+        return poolSize;
     }
 
     /**
@@ -312,74 +1317,174 @@ public class ModbusConnection {
      * @return
      */
     public Response executeCommand(boolean type, int functionType, int offset, Object object, int dateType) {
+        return executeCommandAsync(type, functionType, offset, object, dateType, commandTimeout).join();
+    }
 
-        Response response = new Response();
-        try {
-            if (master == null) {
-                response.setStatus(Constants.ERROR_RESPONSE);
-                response.setErrorDesc("master还没有与slave连接上");
-                return response;
-            }
-
-            if (type) {
-                //读
-                Number result = null;
-                switch (functionType) {
-                    case 1:
-                        result = ModbusUtils.readCoilStatus(master, slaveId, offset) ? 1 : 0;
-                        break;
-                    case 2:
-                        result = ModbusUtils.readInputStatus(master, slaveId, offset) ? 1 : 0;
-                        break;
-                    case 3:
-                        result = ModbusUtils.readHoldingRegister(master, slaveId, offset, dateType);
-                        break;
-                    case 4:
-                        result = ModbusUtils.readInputRegisters(master, slaveId, offset, dateType);
-                        break;
-                    default:
-                        response.setStatus(Constants.ERROR_RESPONSE);
-                        String desc = "没有该读类型的functionId:" + functionType;
-                        response.setErrorDesc(desc);
-                        logger.error(desc);
-                }
-                response.setResult(result);
-                return response;
+    /**
+     * 执行命令，读命令的地址在轮询范围内且轮询结果不超过 maxAge 时直接返回轮询结果，否则访问设备
+     *
+     * @param maxAge 轮询结果的最大有效时间(毫秒)，小于等于0总是访问设备
+     */
+    public Response executeCommand(boolean type, int functionType, int offset, Object object, int dateType, long maxAge) {
+        return executeCommandAsync(type, functionType, offset, object, dateType, commandTimeout, maxAge).join();
+    }
+
+    /**
+     * 异步执行命令，不阻塞调用线程，命令经过命令队列执行，与轮询互斥
+     * 所有错误都转换为 Response 的错误状态，future 不会异常结束
+     *
+     * @param timeout 超时时间(毫秒)
+     */
+    public CompletableFuture<Response> executeCommandAsync(boolean type, int functionType, int offset, Object object, int dateType, long timeout) {
+        return executeCommandAsync(type, functionType, offset, object, dateType, timeout, 0L);
+    }
+
+    /**
+     * 异步执行命令，读命令优先使用不超过 maxAge 的轮询结果
+     *
+     * @param timeout 超时时间(毫秒)
+     * @param maxAge  轮询结果的最大有效时间(毫秒)，小于等于0总是访问设备
+     */
+    public CompletableFuture<Response> executeCommandAsync(boolean type, int functionType, int offset, Object object, int dateType, long timeout, long maxAge) {
+        if (type && maxAge > 0) {
+            Number cached = readFromImage(functionType, offset, dateType, maxAge);
+            if (cached != null) {
+                Response response = new Response();
+                response.setResult(cached);
+                return CompletableFuture.completedFuture(response);
             }
-            //写
+        }
+        if (master == null) {
+            Response response = new Response();
+            response.setStatus(Constants.ERROR_RESPONSE);
+            response.setErrorDesc("master还没有与slave连接上");
+            return CompletableFuture.completedFuture(response);
+        }
+        if (!running || !circuitBreaker.isClosed()) {
+            Response response = new Response();
+            response.setStatus(Constants.ERROR_RESPONSE);
+            response.setErrorDesc("连接已断开");
+            return CompletableFuture.completedFuture(response);
+        }
+        return commandQueue.submit(type ? CommandPriority.READ : CommandPriority.WRITE, () -> {
+            if (!circuitBreaker.isClosed()) {
+                throw new OfflineException("连接已断开");
+            }
+            return doExecuteCommand(type, functionType, offset, object, dateType);
+        }, timeout)
+                .handle((response, e) -> {
+                    if (e == null) {
+                        return response;
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    response = new Response();
+                    response.setStatus(Constants.ERROR_RESPONSE);
+                    if (cause instanceof ModbusTransportException || cause instanceof TimeoutException) {
+                        //通信错误
+                        response.setErrorDesc("通信错误");
+                        logger.error("通信错误", cause);
+                    } else if (cause instanceof ErrorResponseException) {
+                        //返回结果失败
+                        response.setErrorDesc("返回结果失败");
+                        logger.error("返回结果失败", cause);
+                    } else if (cause instanceof OfflineException) {
+                        response.setErrorDesc("连接已断开");
+                    } else {
+                        //没有预知的错误
+                        response.setErrorDesc("没有预知的错误");
+                        logger.error("没有预知的错误", cause);
+                    }
+                    return response;
+                });
+    }
+
+    /**
+     * 从寄存器镜像读取轮询结果
+     *
+     * @return 地址不在轮询范围内、结果超过 maxAge 或数据类型错误时返回 null
+     */
+    private Number readFromImage(int functionType, int offset, int dateType, long maxAge) {
+        long time;
+        Number result;
+        switch (functionType) {
+            case 1:
+            case 2:
+                boolean[] bits = IMAGE_BITS.get();
+                time = registerImage.readBits(slaveId, functionType, offset, bits, 0, 1);
+                if (time == 0L) {
+                    return null;
+                }
+                result = bits[0] ? 1 : 0;
+                break;
+            case 3:
+            case 4:
+                int length;
+                try {
+                    length = RegisterCodec.byteLength(dateType);
+                } catch (IllegalArgumentException e) {
+                    //字符串、寄存器位或错误的数据类型，交给命令队列处理
+                    return null;
+                }
+                ByteBuffer buffer = IMAGE_REGISTERS.get();
+                time = registerImage.readRegisters(slaveId, functionType, offset, buffer, 0, length / 2);
+                if (time == 0L || System.currentTimeMillis() - time > maxAge) {
+                    return null;
+                }
+                //装箱类型与 modbus4j 的解码结果一致
+                return RegisterCodec.decodeNumber(buffer, 0, dateType);
+            default:
+                return null;
+        }
+        return System.currentTimeMillis() - time <= maxAge ? result : null;
+    }
+
+    /**
+     * 在命令队列中执行的读写操作
+     */
+    private Response doExecuteCommand(boolean type, int functionType, int offset, Object object, int dateType) throws ModbusTransportException, ErrorResponseException {
+        Response response = new Response();
+        if (type) {
+            //读
+            Number result = null;
             switch (functionType) {
                 case 1:
-                    ModbusUtils.writeCoils(master, slaveId, offset, (Boolean) object);
+                    result = ModbusUtils.readCoilStatus(master, slaveId, offset) ? 1 : 0;
+                    break;
+                case 2:
+                    result = ModbusUtils.readInputStatus(master, slaveId, offset) ? 1 : 0;
                     break;
                 case 3:
-                    if (dateType == DataType.FOUR_BYTE_FLOAT) {
-                        short[] shorts = ModbusUtils.valueToShorts((Number) object);
-                        ModbusUtils.writeRegisters(master, slaveId, offset, shorts);
-                        break;
-                    } else if (dateType == DataType.FOUR_BYTE_INT_SIGNED) {
-                        ModbusUtils.writeRegister(master, slaveId, offset, (Integer) object);
-                        break;
-                    }
+                    result = ModbusUtils.readHoldingRegister(master, slaveId, offset, dateType);
+                    break;
+                case 4:
+                    result = ModbusUtils.readInputRegisters(master, slaveId, offset, dateType);
+                    break;
                 default:
-                    logger.error("没有该写类型的functionId:" + functionType + ":" + dateType);
+                    response.setStatus(Constants.ERROR_RESPONSE);
+                    String desc = "没有该读类型的functionId:" + functionType;
+                    response.setErrorDesc(desc);
+                    logger.error(desc);
             }
-        } catch (ModbusTransportException e) {
-            //通信错误
-            response.setStatus(Constants.ERROR_RESPONSE);
-            response.setErrorDesc("通信错误");
-            logger.error("通信错误", e);
-        } catch (ErrorResponseException e) {
-            //返回结果失败
-            response.setStatus(Constants.ERROR_RESPONSE);
-            response.setErrorDesc("返回结果失败");
-            logger.error("返回结果失败", e);
-        } catch (Exception e) {
-            //没有预知的错误
-            response.setStatus(Constants.ERROR_RESPONSE);
-            response.setErrorDesc("没有预知的错误");
-            logger.error("没有预知的错误", e);
+            response.setResult(result);
+            return response;
+        }
+        //写
+        switch (functionType) {
+            case 1:
+                ModbusUtils.writeCoils(master, slaveId, offset, (Boolean) object);
+                break;
+            case 3:
+                if (dateType == DataType.FOUR_BYTE_FLOAT) {
+                    short[] shorts = ModbusUtils.valueToShorts((Number) object);
+                    ModbusUtils.writeRegisters(master, slaveId, offset, shorts);
+                    break;
+                } else if (dateType == DataType.FOUR_BYTE_INT_SIGNED) {
+                    ModbusUtils.writeRegister(master, slaveId, offset, (Integer) object);
+                    break;
+                }
+            default:
+                logger.error("没有该写类型的functionId:" + functionType + ":" + dateType);
         }
-
         return response;
     }
 
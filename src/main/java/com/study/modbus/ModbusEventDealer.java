@@ -21,16 +21,31 @@ public interface ModbusEventDealer {
 
     void getSeparate(int var1);
 
+    /**
+     * 等待应答超时,参数依次为功能码、耗时(毫秒)、设备编号
+     */
     void T3tIMEOUT(int var1, long var2, String var4);
 
+    /**
+     * 请求已发送,参数依次为功能码、发送时间(毫秒时间戳)、设备编号
+     */
     void hasSend(int var1, long var2, String var4);
 
+    /**
+     * 收到正常应答,参数依次为功能码、往返耗时(毫秒)、设备编号
+     */
     void hasResponed(int var1, long var2, String var4);
 
     void gotoDivide(int var1);
 
+    /**
+     * 超时以外的通信失败,参数依次为功能码、耗时(毫秒)、设备编号
+     */
     void sendFail(int var1, long var2, String var4);
 
+    /**
+     * 收到异常应答,参数依次为功能码、往返耗时(毫秒)、设备编号
+     */
     void responFail(int var1, long var2, String var4);
 
     void checkNet(int var1);
@@ -0,0 +1,171 @@
+package com.study.modbus;
+
+import com.study.modbus.constant.Constants;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轮询引擎,由一个固定大小的线程池驱动所有注册的 ModbusConnection
+ * 线程数不随设备数量增长,同一台设备同一时刻最多只有一个轮询任务在执行
+ */
+public class PollEngine {
+
+    private static final Logger logger = Logger.getLogger(PollEngine.class);
+
+    /**
+     * 为空表示手动驱动,见 manual()
+     */
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * 已注册的连接及其轮询任务
+     */
+    private final Map<ModbusConnection, PollTask> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads 工作线程数
+     */
+    public PollEngine(int threads) {
+        AtomicInteger index = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "modbus-poll-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ScheduledThreadPoolExecutor(threads, threadFactory);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    private PollEngine() {
+        executor = null;
+    }
+
+    /**
+     * 手动驱动的引擎：不启动线程,不调度轮询,由调用方通过 poll() 在当前线程执行轮询
+     * 用于测试和基准测试
+     */
+    public static PollEngine manual() {
+        return new PollEngine();
+    }
+
+    /**
+     * 注册连接,延迟 initialDelay 毫秒后开始轮询
+     */
+    public void register(ModbusConnection connection, long initialDelay) {
+        PollTask task = new PollTask(connection);
+        if (tasks.putIfAbsent(connection, task) != null) {
+            logger.warn("连接已注册:" + connection.getDeviceCode());
+            return;
+        }
+        if (executor != null) {
+            task.schedule(initialDelay);
+        }
+    }
+
+    /**
+     * 在当前线程执行一次已注册连接的轮询,只能用于 manual() 创建的引擎
+     *
+     * @return 距离下一次轮询需要等待的毫秒数
+     */
+    public long poll(ModbusConnection connection) {
+        if (executor != null) {
+            throw new IllegalStateException("轮询由引擎线程调度");
+        }
+        if (!tasks.containsKey(connection)) {
+            throw new IllegalStateException("连接未注册:" + connection.getDeviceCode());
+        }
+        return connection.pollOnce();
+    }
+
+    /**
+     * 取消连接的轮询,正在执行的那一次轮询会执行完
+     */
+    public void unregister(ModbusConnection connection) {
+        PollTask task = tasks.remove(connection);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * 当前注册的连接数
+     */
+    public int size() {
+        return tasks.size();
+    }
+
+    /**
+     * 停止引擎,不再调度任何轮询
+     */
+    public void shutdown() {
+        for (PollTask task : tasks.values()) {
+            task.cancel();
+        }
+        tasks.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 单台设备的轮询任务,每次执行完毕后按 pollOnce 的返回值重新调度自己
+     */
+    private class PollTask implements Runnable {
+
+        private final ModbusConnection connection;
+
+        private volatile boolean cancelled = false;
+
+        private volatile ScheduledFuture<?> future;
+
+        PollTask(ModbusConnection connection) {
+            this.connection = connection;
+        }
+
+        void schedule(long delay) {
+            if (cancelled || executor.isShutdown()) {
+                return;
+            }
+            try {
+                future = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.warn("轮询引擎已停止:" + connection.getDeviceCode());
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            long delay;
+            MDC.put(Constants.LOG_EQPCODE, connection.getDeviceCode());
+            try {
+                delay = connection.pollOnce();
+            } catch (Throwable e) {
+                logger.error("轮询任务异常", e);
+                delay = 500L;
+            } finally {
+                MDC.remove(Constants.LOG_EQPCODE);
+            }
+            schedule(delay);
+        }
+    }
+}
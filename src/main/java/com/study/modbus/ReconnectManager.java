@@ -0,0 +1,194 @@
+package com.study.modbus;
+
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 重连管理：所有连接共用一个调度线程池进行重连
+ * 重试间隔按指数退避并加入完全随机抖动(0~退避时间),不超过 maxDelay,
+ * 连接尝试在调度线程上同步执行,同时进行的连接尝试不超过线程数,交换机重启后大量设备不会在同一时刻重连
+ */
+public class ReconnectManager {
+
+    private static final Logger logger = Logger.getLogger(ReconnectManager.class);
+
+    /**
+     * 默认的共享实例
+     */
+    private static volatile ReconnectManager shared;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * 退避上限(毫秒)
+     */
+    private final long maxDelay;
+
+    /**
+     * 正在重连的连接,同一连接只有一个重连任务
+     */
+    private final Map<Object, Task> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads  调度线程数,即同时进行的连接尝试数
+     * @param maxDelay 退避上限(毫秒)
+     */
+    public ReconnectManager(int threads, long maxDelay) {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r, "modbus-reconnect-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * 默认共享实例：4个线程,即最多同时4个连接尝试,退避上限60秒
+     */
+    public static ReconnectManager shared() {
+        ReconnectManager manager = shared;
+        if (manager == null) {
+            synchronized (ReconnectManager.class) {
+                manager = shared;
+                if (manager == null) {
+                    manager = new ReconnectManager(4, 60000L);
+                    shared = manager;
+                }
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * 开始重连,该连接已在重连时忽略
+     *
+     * @param key         连接
+     * @param name        日志中的设备名
+     * @param connect     一次连接尝试,成功返回 true
+     * @param maxAttempts 最多尝试次数,小于0表示不限次数
+     * @param baseDelay   第一次重试的退避时间(毫秒)
+     */
+    public void reconnect(Object key, String name, BooleanSupplier connect, int maxAttempts, long baseDelay) {
+        if (maxAttempts == 0) {
+            return;
+        }
+        Task task = new Task(key, name, connect, maxAttempts, Math.max(1L, baseDelay));
+        if (tasks.putIfAbsent(key, task) != null) {
+            return;
+        }
+        //第一次尝试也加入抖动,避免同时断开的设备同时重连
+        task.schedule(ThreadLocalRandom.current().nextLong(task.baseDelay + 1));
+    }
+
+    /**
+     * 取消连接的重连
+     */
+    public void cancel(Object key) {
+        Task task = tasks.remove(key);
+        if (task != null) {
+            task.cancelled = true;
+        }
+    }
+
+    /**
+     * 是否正在重连
+     */
+    public boolean isReconnecting(Object key) {
+        return tasks.containsKey(key);
+    }
+
+    /**
+     * 当前正在重连的连接数
+     */
+    public int size() {
+        return tasks.size();
+    }
+
+    public void shutdown() {
+        for (Task task : tasks.values()) {
+            task.cancelled = true;
+        }
+        tasks.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 第 attempt 次失败后的等待时间：0 ~ min(maxDelay, baseDelay * 2^attempt) 之间随机
+     */
+    long backoff(long baseDelay, int attempt) {
+        long ceiling = attempt >= 31 || baseDelay > (maxDelay >> attempt) ? maxDelay : baseDelay << attempt;
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private class Task implements Runnable {
+
+        private final Object key;
+
+        private final String name;
+
+        private final BooleanSupplier connect;
+
+        private final int maxAttempts;
+
+        private final long baseDelay;
+
+        private int attempts;
+
+        private volatile boolean cancelled = false;
+
+        Task(Object key, String name, BooleanSupplier connect, int maxAttempts, long baseDelay) {
+            this.key = key;
+            this.name = name;
+            this.connect = connect;
+            this.maxAttempts = maxAttempts;
+            this.baseDelay = baseDelay;
+        }
+
+        void schedule(long delay) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                tasks.remove(key, this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            boolean connected;
+            try {
+                connected = connect.getAsBoolean();
+            } catch (RuntimeException e) {
+                logger.error("重连异常:" + name, e);
+                connected = false;
+            }
+            attempts++;
+            if (connected) {
+                logger.info("重连成功:" + name + " 尝试次数:" + attempts);
+                tasks.remove(key, this);
+                return;
+            }
+            if (maxAttempts > 0 && attempts >= maxAttempts) {
+                logger.warn("重连失败,已达到最大次数:" + name + " " + attempts);
+                tasks.remove(key, this);
+                return;
+            }
+            schedule(backoff(baseDelay, attempts));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.study.modbus;
+
+import com.serotonin.modbus4j.BatchRead;
+import com.serotonin.modbus4j.ModbusMaster;
+import com.serotonin.modbus4j.base.KeyedModbusLocator;
+import com.serotonin.modbus4j.base.ReadFunctionGroup;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.publish.BinaryPayloadEncoder;
+import com.study.modbus.publish.DeltaTracker;
+import com.study.modbus.publish.PayloadSerializer;
+import com.study.modbus.transport.ReadBlock;
+import com.study.modbus.transport.RequestPlanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 扫描组：同一扫描周期的点位共用一个 BatchRead,按截止时间调度
+ * 各组独立维护点位列表缓存、变化推送和序列化状态
+ */
+public class ScanGroup {
+
+    /**
+     * 扫描周期(毫秒),0表示尽可能快
+     */
+    private final long period;
+
+    private volatile BatchRead<String> batchRead;
+
+    /**
+     * 下一次需要轮询的时间(毫秒)
+     */
+    private long nextTime;
+
+    /**
+     * 变化推送,为空时每次推送全量数据
+     */
+    private volatile DeltaTracker deltaTracker;
+
+    private final PayloadSerializer payloadSerializer = new PayloadSerializer();
+
+    private final BinaryPayloadEncoder binaryEncoder = new BinaryPayloadEncoder();
+
+    /**
+     * 读请求块的缓存,batchRead 的分组或 RequestPlanner 变化后重新规划
+     */
+    private List<ReadFunctionGroup<String>> cachedGroups;
+    private RequestPlanner cachedPlanner;
+    private List<ReadBlock<String>> cachedBlocks;
+
+    /**
+     * 按请求块顺序排列的点位、数据类型和本周期的值,下标与 ReadBlock.getFirstSlot() 一致
+     */
+    private List<String> cachedKeys;
+    private int[] cachedDataTypes;
+    private Object[] values;
+
+    /**
+     * slotOf 的缓存
+     */
+    private String slotKey;
+    private int slot = -1;
+
+    public ScanGroup(long period, BatchRead<String> batchRead) {
+        this.period = period;
+        this.batchRead = batchRead;
+    }
+
+    public long getPeriod() {
+        return period;
+    }
+
+    public BatchRead<String> getBatchRead() {
+        return batchRead;
+    }
+
+    void setBatchRead(BatchRead<String> batchRead) {
+        this.batchRead = batchRead;
+    }
+
+    long getNextTime() {
+        return nextTime;
+    }
+
+    /**
+     * 按截止时间计算下一次轮询时间,落后超过一个周期时从当前时间重新计算,避免集中补读
+     *
+     * @param now 本次轮询开始时间
+     */
+    void scheduleNext(long now) {
+        nextTime = Math.max(nextTime + period, now);
+    }
+
+    /**
+     * 推迟到 now + delay 再轮询
+     */
+    void postpone(long now, long delay) {
+        nextTime = now + delay;
+    }
+
+    DeltaTracker getDeltaTracker() {
+        return deltaTracker;
+    }
+
+    void setDeltaTracker(DeltaTracker deltaTracker) {
+        this.deltaTracker = deltaTracker;
+    }
+
+    PayloadSerializer getPayloadSerializer() {
+        return payloadSerializer;
+    }
+
+    BinaryPayloadEncoder getBinaryEncoder() {
+        return binaryEncoder;
+    }
+
+    /**
+     * 规划 batchRead 的读请求块,按分组结果和 planner 缓存,同时计算点位列表
+     * 调用方必须持有连接的 lock,与 addLocator 互斥
+     *
+     * @param planner 为空时按 modbus4j 的分组规则拆分
+     */
+    List<ReadBlock<String>> blocks(ModbusMaster master, RequestPlanner planner) {
+        List<ReadFunctionGroup<String>> groups = batchRead.getReadFunctionGroups(master);
+        if (groups != cachedGroups || planner != cachedPlanner) {
+            List<ReadBlock<String>> blocks = planner != null ? planner.plan(batchRead, master) : ReadBlock.of(batchRead, master);
+            List<String> keys = new ArrayList<>();
+            List<Integer> dataTypes = new ArrayList<>();
+            for (ReadBlock<String> block : blocks) {
+                for (KeyedModbusLocator<String> locator : block.getLocators()) {
+                    keys.add(locator.getKey());
+                    dataTypes.add(locator.getDataType());
+                }
+            }
+            int[] types = new int[dataTypes.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = dataTypes.get(i);
+            }
+            cachedKeys = keys;
+            cachedDataTypes = types;
+            values = new Object[types.length];
+            slotKey = null;
+            cachedBlocks = blocks;
+            cachedGroups = groups;
+            cachedPlanner = planner;
+        }
+        return cachedBlocks;
+    }
+
+    /**
+     * 最近一次 blocks() 计算的点位列表,不访问 BatchRead,只由轮询调用方在持锁读取后使用
+     */
+    List<String> getKeys() {
+        return cachedKeys;
+    }
+
+    /**
+     * 与 getKeys() 一一对应的数据类型
+     */
+    int[] getDataTypes() {
+        return cachedDataTypes;
+    }
+
+    /**
+     * 与 getKeys() 一一对应的本周期读取结果,每个周期复用
+     */
+    Object[] getValues() {
+        return values;
+    }
+
+    /**
+     * 点位在 getKeys() 中的下标,按点位列表缓存
+     *
+     * @return 不存在时返回 -1
+     */
+    int slotOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        if (!key.equals(slotKey)) {
+            slot = cachedKeys.indexOf(key);
+            slotKey = key;
+        }
+        return slot;
+    }
+
+    /**
+     * 查找点位的 locator,调用方必须持有连接的 lock
+     *
+     * @param key 点位名称,为空时返回第一个点位
+     * @return 不存在时返回 null
+     */
+    BaseLocator<?> locator(ModbusMaster master, String key) {
+        for (ReadFunctionGroup<String> group : batchRead.getReadFunctionGroups(master)) {
+            for (KeyedModbusLocator<String> locator : group.getLocators()) {
+                if (key == null || key.equals(locator.getKey())) {
+                    return locator.getLocator();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,57 @@
+package com.study.modbus.command;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 排队等待执行的读写命令,先按优先级再按提交顺序执行
+ * 执行结果通过 future 返回,future 已经结束(超时或取消)的命令不再执行
+ */
+public class Command<T> implements Runnable, Comparable<Command<?>> {
+
+    private final CommandPriority priority;
+
+    /**
+     * 提交序号,同一优先级内先进先出
+     */
+    private final long sequence;
+
+    private final Callable<T> body;
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    Command(CommandPriority priority, long sequence, Callable<T> body) {
+        this.priority = priority;
+        this.sequence = sequence;
+        this.body = body;
+    }
+
+    public CommandPriority getPriority() {
+        return priority;
+    }
+
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    @Override
+    public void run() {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            future.complete(body.call());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public int compareTo(Command<?> o) {
+        int result = priority.compareTo(o.priority);
+        if (result != 0) {
+            return result;
+        }
+        return Long.compare(sequence, o.sequence);
+    }
+}
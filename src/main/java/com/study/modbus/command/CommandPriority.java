@@ -0,0 +1,16 @@
+package com.study.modbus.command;
+
+/**
+ * 命令优先级,按声明顺序从高到低
+ * 所有排队的命令都会在下一次后台轮询之前执行
+ */
+public enum CommandPriority {
+    /**
+     * 操作员写操作
+     */
+    WRITE,
+    /**
+     * 按需读操作
+     */
+    READ
+}
@@ -0,0 +1,159 @@
+package com.study.modbus.command;
+
+import com.study.modbus.util.ThreadBackend;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个连接的命令队列
+ * 持有 ioLock 的线程负责执行队列中的命令：锁空闲时由 executor 执行,
+ * 否则由当前持锁方(通常是轮询)在本次操作结束后代为执行,
+ * 所有持锁方都通过 withIoLock/callWithIoLock 持锁,释放锁后执行期间入队的命令,
+ * 因此命令最多等待一次正在进行的通信,提交方不会被阻塞
+ */
+public class CommandQueue {
+
+    /**
+     * 默认的命令执行线程池,同一连接同一时刻最多占用一个线程
+     * 由 ThreadBackend 决定使用平台线程还是虚拟线程
+     */
+    private static final Executor DEFAULT_EXECUTOR = r -> ThreadBackend.commandExecutor().execute(r);
+
+    /**
+     * 命令超时计时器
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("modbus-command-timer-"));
+
+    private final PriorityBlockingQueue<Command<?>> queue = new PriorityBlockingQueue<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 保护通信通道的锁
+     */
+    private final ReentrantLock ioLock;
+
+    /**
+     * 锁空闲时执行命令的线程池
+     */
+    private final Executor executor;
+
+    public CommandQueue(ReentrantLock ioLock) {
+        this(ioLock, DEFAULT_EXECUTOR);
+    }
+
+    public CommandQueue(ReentrantLock ioLock, Executor executor) {
+        this.ioLock = ioLock;
+        this.executor = executor;
+    }
+
+    /**
+     * 提交命令,不等待结果
+     *
+     * @param timeout 超时时间(毫秒),超时后 future 以 TimeoutException 结束,未开始执行的命令不再执行；小于等于0不超时
+     */
+    public <T> CompletableFuture<T> submit(CommandPriority priority, Callable<T> body, long timeout) {
+        Command<T> command = new Command<>(priority, sequence.incrementAndGet(), body);
+        CompletableFuture<T> future = command.getFuture();
+        if (timeout > 0) {
+            ScheduledFuture<?> timeoutTask = TIMER.schedule(
+                    () -> future.completeExceptionally(new TimeoutException("命令执行超时:" + timeout + "ms")),
+                    timeout, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, e) -> timeoutTask.cancel(false));
+        }
+        queue.add(command);
+        //锁被占用时由持锁方释放锁后执行,命令在检查之前已入队,持锁方的 drain 一定能看到
+        if (!ioLock.isLocked()) {
+            executor.execute(this::drain);
+        }
+        return future;
+    }
+
+    /**
+     * 持有 ioLock 执行 body,释放锁后执行持锁期间入队的命令
+     */
+    public void withIoLock(Runnable body) {
+        ioLock.lock();
+        try {
+            body.run();
+        } finally {
+            ioLock.unlock();
+            drain();
+        }
+    }
+
+    /**
+     * 持有 ioLock 执行 body 并返回结果,释放锁后执行持锁期间入队的命令,body 失败时也会执行
+     */
+    public <T> T callWithIoLock(Callable<T> body) throws Exception {
+        ioLock.lock();
+        try {
+            return body.call();
+        } finally {
+            ioLock.unlock();
+            drain();
+        }
+    }
+
+    /**
+     * 执行队列中所有命令,调用方必须持有 ioLock
+     */
+    public void runPending() {
+        Command<?> command;
+        while ((command = queue.poll()) != null) {
+            command.run();
+        }
+    }
+
+    /**
+     * 锁空闲时在当前线程执行排队的命令
+     * 没有通过 withIoLock 持锁的调用方释放锁后需要调用,避免在它释放锁之前入队的命令无人执行
+     */
+    public void drain() {
+        while (!queue.isEmpty() && ioLock.tryLock()) {
+            try {
+                runPending();
+            } finally {
+                ioLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 以 cause 结束所有排队中的命令,用于关闭连接
+     */
+    public void failAll(Throwable cause) {
+        Command<?> command;
+        while ((command = queue.poll()) != null) {
+            command.getFuture().completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 排队中的命令数
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
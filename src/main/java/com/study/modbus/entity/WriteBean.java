@@ -14,6 +14,10 @@ public class WriteBean {
      * 点位地址
      */
     private String addr;
+    /**
+     * TagTable 中的点位句柄,大于等于0时按句柄写入,不再解析 addr
+     */
+    private int tag = -1;
 
     public int getDataType() {
         return dataType;
@@ -39,12 +43,21 @@ public class WriteBean {
         this.addr = addr;
     }
 
+    public int getTag() {
+        return tag;
+    }
+
+    public void setTag(int tag) {
+        this.tag = tag;
+    }
+
     @Override
     public String toString() {
         return "WriteBean{" +
                 "dataType=" + dataType +
                 ", data=" + data +
                 ", addr='" + addr + '\'' +
+                ", tag=" + tag +
                 '}';
     }
 }
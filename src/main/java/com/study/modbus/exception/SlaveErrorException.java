@@ -0,0 +1,33 @@
+package com.study.modbus.exception;
+
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+
+/**
+ * slave 返回了异常响应(功能码最高位为1)
+ */
+public class SlaveErrorException extends ModbusTransportException {
+
+    /**
+     * 请求的功能码
+     */
+    private final int functionCode;
+
+    /**
+     * slave 返回的异常码
+     */
+    private final int exceptionCode;
+
+    public SlaveErrorException(int slaveId, int functionCode, int exceptionCode) {
+        super("异常响应 slaveId:" + slaveId + " functionCode:" + functionCode + " exceptionCode:" + exceptionCode, slaveId);
+        this.functionCode = functionCode;
+        this.exceptionCode = exceptionCode;
+    }
+
+    public int getFunctionCode() {
+        return functionCode;
+    }
+
+    public int getExceptionCode() {
+        return exceptionCode;
+    }
+}
@@ -0,0 +1,37 @@
+package com.study.modbus.exception;
+
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.study.modbus.entity.WriteBean;
+
+import java.util.List;
+
+/**
+ * 批量写入部分失败,记录失败的写入项以及此前已经写入成功的写入项
+ * 原始的通信异常或异常响应通过 getCause() 获取
+ */
+public class WriteFailedException extends ModbusTransportException {
+
+    /**
+     * 写入失败的请求中包含的写入项
+     */
+    private final List<WriteBean> failedBeans;
+
+    /**
+     * 已经写入成功的写入项
+     */
+    private final List<WriteBean> writtenBeans;
+
+    public WriteFailedException(Throwable cause, int slaveId, List<WriteBean> failedBeans, List<WriteBean> writtenBeans) {
+        super("写入失败:" + failedBeans + ",已写入" + writtenBeans.size() + "项", cause, slaveId);
+        this.failedBeans = failedBeans;
+        this.writtenBeans = writtenBeans;
+    }
+
+    public List<WriteBean> getFailedBeans() {
+        return failedBeans;
+    }
+
+    public List<WriteBean> getWrittenBeans() {
+        return writtenBeans;
+    }
+}
@@ -0,0 +1,497 @@
+package com.study.modbus.image;
+
+import com.serotonin.modbus4j.code.RegisterRange;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 设备的实时寄存器镜像
+ * 每个 slaveId + 功能区一个存储区：3x/4x 寄存器保存为 short[],0x/1x 线圈和离散输入保存为位数组,
+ * 并记录每个读请求块的更新时间
+ * 只由轮询线程写入；读取使用 StampedLock 乐观读(类似 seqlock),通常不加锁、不分配对象,
+ * 多个寄存器一次读出时保证来自同一次更新
+ * 没有使用写时复制数组：每次更新都要复制整个存储区(最多 65536 个寄存器),轮询线程每个周期都会分配；
+ * 乐观读在没有并发写入时同样不加锁,写锁只有轮询线程一个竞争者,
+ * 连续 OPTIMISTIC_RETRIES 次被写入打断后改为读锁,只是为了让读取方在持续写入时也能结束
+ */
+public class RegisterImage {
+
+    /**
+     * 乐观读的尝试次数,都失败后改为加读锁
+     */
+    private static final int OPTIMISTIC_RETRIES = 3;
+
+    /**
+     * 地址上限
+     */
+    private static final int MAX_ADDRESS = 65536;
+
+    /**
+     * 每个存储区最多保存的读请求块数,超过时淘汰更新时间最早的块
+     */
+    private static final int MAX_BLOCKS = 256;
+
+    private volatile Area[] areas = new Area[0];
+
+    /**
+     * 轮询线程写入一个读请求块的响应数据
+     *
+     * @param range  功能区,与 RegisterRange 一致
+     * @param start  起始地址(从0开始)
+     * @param length 位数或寄存器数
+     * @param data   响应中的数据部分(不含字节数)
+     * @param time   更新时间(毫秒)
+     */
+    public void update(int slaveId, int range, int start, int length, byte[] data, long time) {
+        Area area = find(slaveId, range);
+        if (area == null) {
+            area = add(slaveId, range);
+        }
+        area.update(start, length, data, time);
+    }
+
+    /**
+     * 读取一个寄存器
+     *
+     * @return 无符号寄存器值,没有缓存时返回-1
+     */
+    public int getRegister(int slaveId, int range, int offset) {
+        Area area = find(slaveId, range);
+        return area == null ? -1 : area.getRegister(offset);
+    }
+
+    /**
+     * 读取一个线圈或离散输入
+     *
+     * @return 1 或 0,没有缓存时返回-1
+     */
+    public int getBit(int slaveId, int range, int offset) {
+        Area area = find(slaveId, range);
+        return area == null ? -1 : area.getBit(offset);
+    }
+
+    /**
+     * 读取连续的寄存器,所有寄存器来自同一次更新
+     *
+     * @return 所在读请求块的更新时间,范围没有被同一个块完整覆盖时返回0,此时 dst 的内容不确定
+     */
+    public long readRegisters(int slaveId, int range, int offset, short[] dst, int dstOffset, int count) {
+        Area area = find(slaveId, range);
+        return area == null ? 0L : area.readRegisters(offset, dst, dstOffset, count);
+    }
+
+    /**
+     * 读取连续的寄存器,以大端字节序写入 dst 的 dstPosition 位置,不修改 dst 的 position,
+     * 可以直接交给 RegisterCodec 解码
+     *
+     * @return 所在读请求块的更新时间,范围没有被同一个块完整覆盖时返回0,此时 dst 的内容不确定
+     */
+    public long readRegisters(int slaveId, int range, int offset, ByteBuffer dst, int dstPosition, int count) {
+        Area area = find(slaveId, range);
+        return area == null ? 0L : area.readRegisters(offset, dst, dstPosition, count);
+    }
+
+    /**
+     * 读取连续的线圈或离散输入,所有位来自同一次更新
+     *
+     * @return 所在读请求块的更新时间,范围没有被同一个块完整覆盖时返回0,此时 dst 的内容不确定
+     */
+    public long readBits(int slaveId, int range, int offset, boolean[] dst, int dstOffset, int count) {
+        Area area = find(slaveId, range);
+        return area == null ? 0L : area.readBits(offset, dst, dstOffset, count);
+    }
+
+    /**
+     * 获取地址范围的更新时间
+     *
+     * @return 所在读请求块的更新时间,范围没有被同一个块完整覆盖时返回0
+     */
+    public long getTimestamp(int slaveId, int range, int offset, int count) {
+        Area area = find(slaveId, range);
+        return area == null ? 0L : area.getTimestamp(offset, count);
+    }
+
+    /**
+     * 清空镜像,避免读到过期数据
+     */
+    public synchronized void clear() {
+        areas = new Area[0];
+    }
+
+    /**
+     * 清空一个 slaveId 的所有存储区,设备离线后调用
+     */
+    public synchronized void clear(int slaveId) {
+        int count = 0;
+        for (Area area : areas) {
+            if (area.slaveId != slaveId) {
+                count++;
+            }
+        }
+        if (count == areas.length) {
+            return;
+        }
+        Area[] remaining = new Area[count];
+        int i = 0;
+        for (Area area : areas) {
+            if (area.slaveId != slaveId) {
+                remaining[i++] = area;
+            }
+        }
+        areas = remaining;
+    }
+
+    private Area find(int slaveId, int range) {
+        for (Area area : areas) {
+            if (area.slaveId == slaveId && area.range == range) {
+                return area;
+            }
+        }
+        return null;
+    }
+
+    private synchronized Area add(int slaveId, int range) {
+        Area area = find(slaveId, range);
+        if (area == null) {
+            Area[] areas = Arrays.copyOf(this.areas, this.areas.length + 1);
+            area = new Area(slaveId, range);
+            areas[areas.length - 1] = area;
+            this.areas = areas;
+        }
+        return area;
+    }
+
+    /**
+     * 一个 slaveId 的一个功能区
+     */
+    private static class Area {
+
+        private final int slaveId;
+
+        private final int range;
+
+        private final boolean bits;
+
+        private final StampedLock lock = new StampedLock();
+
+        /**
+         * 按地址保存的寄存器值
+         */
+        private short[] registers = new short[0];
+
+        /**
+         * 按地址保存的位,每个 long 保存64位
+         */
+        private long[] bitWords = new long[0];
+
+        /**
+         * 读请求块的起止地址(不含结束地址)和更新时间,块之间互不重叠
+         */
+        private int[] blockStarts = new int[4];
+        private int[] blockEnds = new int[4];
+        private long[] blockTimes = new long[4];
+        private int blockCount;
+
+        Area(int slaveId, int range) {
+            this.slaveId = slaveId;
+            this.range = range;
+            this.bits = range == RegisterRange.COIL_STATUS || range == RegisterRange.INPUT_STATUS;
+        }
+
+        void update(int start, int length, byte[] data, long time) {
+            int end = start + length;
+            long stamp = lock.writeLock();
+            try {
+                if (bits) {
+                    ensureBits(end);
+                    long[] words = bitWords;
+                    for (int i = 0; i < length; i++) {
+                        int address = start + i;
+                        long mask = 1L << address;
+                        if ((data[i >> 3] & (1 << (i & 7))) != 0) {
+                            words[address >> 6] |= mask;
+                        } else {
+                            words[address >> 6] &= ~mask;
+                        }
+                    }
+                } else {
+                    ensureRegisters(end);
+                    short[] registers = this.registers;
+                    for (int i = 0; i < length; i++) {
+                        registers[start + i] = (short) (((data[i * 2] & 0xFF) << 8) | (data[i * 2 + 1] & 0xFF));
+                    }
+                }
+                updateBlock(start, end, time);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int getRegister(int offset) {
+            for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+                long stamp = lock.tryOptimisticRead();
+                int value = registerAt(offset);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            long stamp = lock.readLock();
+            try {
+                return registerAt(offset);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int getBit(int offset) {
+            for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+                long stamp = lock.tryOptimisticRead();
+                int value = bitAt(offset);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            long stamp = lock.readLock();
+            try {
+                return bitAt(offset);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long readRegisters(int offset, short[] dst, int dstOffset, int count) {
+            for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+                long stamp = lock.tryOptimisticRead();
+                long time = copyRegisters(offset, dst, dstOffset, count);
+                if (lock.validate(stamp)) {
+                    return time;
+                }
+            }
+            long stamp = lock.readLock();
+            try {
+                return copyRegisters(offset, dst, dstOffset, count);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long readRegisters(int offset, ByteBuffer dst, int dstPosition, int count) {
+            for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+                long stamp = lock.tryOptimisticRead();
+                long time = copyRegisters(offset, dst, dstPosition, count);
+                if (lock.validate(stamp)) {
+                    return time;
+                }
+            }
+            long stamp = lock.readLock();
+            try {
+                return copyRegisters(offset, dst, dstPosition, count);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long readBits(int offset, boolean[] dst, int dstOffset, int count) {
+            for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+                long stamp = lock.tryOptimisticRead();
+                long time = copyBits(offset, dst, dstOffset, count);
+                if (lock.validate(stamp)) {
+                    return time;
+                }
+            }
+            long stamp = lock.readLock();
+            try {
+                return copyBits(offset, dst, dstOffset, count);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long getTimestamp(int offset, int count) {
+            for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+                long stamp = lock.tryOptimisticRead();
+                long time = blockTime(offset, offset + count);
+                if (lock.validate(stamp)) {
+                    return time;
+                }
+            }
+            long stamp = lock.readLock();
+            try {
+                return blockTime(offset, offset + count);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 以下读取方法在乐观读期间可能读到写入中的数据,结果只在 validate 成功后使用,
+         * 因此只做边界检查,不能抛出异常
+         */
+        private int registerAt(int offset) {
+            short[] registers = this.registers;
+            if (offset < 0 || offset >= registers.length || findBlock(offset, offset + 1) < 0) {
+                return -1;
+            }
+            return registers[offset] & 0xFFFF;
+        }
+
+        private int bitAt(int offset) {
+            long[] words = bitWords;
+            if (offset < 0 || (offset >> 6) >= words.length || findBlock(offset, offset + 1) < 0) {
+                return -1;
+            }
+            return (words[offset >> 6] & (1L << offset)) != 0 ? 1 : 0;
+        }
+
+        private long copyRegisters(int offset, short[] dst, int dstOffset, int count) {
+            short[] registers = this.registers;
+            long time = blockTime(offset, offset + count);
+            if (time == 0L || offset + count > registers.length) {
+                return 0L;
+            }
+            System.arraycopy(registers, offset, dst, dstOffset, count);
+            return time;
+        }
+
+        private long copyRegisters(int offset, ByteBuffer dst, int dstPosition, int count) {
+            short[] registers = this.registers;
+            long time = blockTime(offset, offset + count);
+            if (time == 0L || offset + count > registers.length) {
+                return 0L;
+            }
+            for (int i = 0; i < count; i++) {
+                dst.putShort(dstPosition + i * 2, registers[offset + i]);
+            }
+            return time;
+        }
+
+        private long copyBits(int offset, boolean[] dst, int dstOffset, int count) {
+            long[] words = bitWords;
+            long time = blockTime(offset, offset + count);
+            if (time == 0L || ((offset + count - 1) >> 6) >= words.length) {
+                return 0L;
+            }
+            for (int i = 0; i < count; i++) {
+                int address = offset + i;
+                dst[dstOffset + i] = (words[address >> 6] & (1L << address)) != 0;
+            }
+            return time;
+        }
+
+        private long blockTime(int start, int end) {
+            int index = findBlock(start, end);
+            if (index < 0) {
+                return 0L;
+            }
+            long[] times = blockTimes;
+            return index < times.length ? times[index] : 0L;
+        }
+
+        /**
+         * 查找完整覆盖 [start, end) 的读请求块,有多个时返回更新时间最晚的块
+         */
+        private int findBlock(int start, int end) {
+            int[] starts = blockStarts;
+            int[] ends = blockEnds;
+            long[] times = blockTimes;
+            int count = Math.min(blockCount, Math.min(starts.length, Math.min(ends.length, times.length)));
+            if (start < 0 || end <= start) {
+                return -1;
+            }
+            int found = -1;
+            for (int i = 0; i < count; i++) {
+                if (starts[i] <= start && end <= ends[i] && (found < 0 || times[i] > times[found])) {
+                    found = i;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * 记录读请求块,与之重叠的旧块裁掉重叠部分,重叠部分的数据已经来自这一次更新
+         * 块之间互不重叠,同一组读请求反复更新时块数不变
+         */
+        private void updateBlock(int start, int end, long time) {
+            int leftStart = -1;
+            int leftEnd = -1;
+            long leftTime = 0L;
+            int rightStart = -1;
+            int rightEnd = -1;
+            long rightTime = 0L;
+            int count = 0;
+            for (int i = 0; i < blockCount; i++) {
+                int blockStart = blockStarts[i];
+                int blockEnd = blockEnds[i];
+                if (blockEnd <= start || end <= blockStart) {
+                    blockStarts[count] = blockStart;
+                    blockEnds[count] = blockEnd;
+                    blockTimes[count] = blockTimes[i];
+                    count++;
+                    continue;
+                }
+                //旧块互不重叠,左右两侧最多各剩下一段
+                if (blockStart < start) {
+                    leftStart = blockStart;
+                    leftEnd = start;
+                    leftTime = blockTimes[i];
+                }
+                if (end < blockEnd) {
+                    rightStart = end;
+                    rightEnd = blockEnd;
+                    rightTime = blockTimes[i];
+                }
+            }
+            blockCount = count;
+            if (leftStart >= 0) {
+                addBlock(leftStart, leftEnd, leftTime);
+            }
+            if (rightStart >= 0) {
+                addBlock(rightStart, rightEnd, rightTime);
+            }
+            addBlock(start, end, time);
+            while (blockCount > MAX_BLOCKS) {
+                removeOldestBlock();
+            }
+        }
+
+        private void addBlock(int start, int end, long time) {
+            if (blockCount == blockStarts.length) {
+                blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+                blockEnds = Arrays.copyOf(blockEnds, blockCount * 2);
+                blockTimes = Arrays.copyOf(blockTimes, blockCount * 2);
+            }
+            blockStarts[blockCount] = start;
+            blockEnds[blockCount] = end;
+            blockTimes[blockCount] = time;
+            blockCount++;
+        }
+
+        private void removeOldestBlock() {
+            int oldest = 0;
+            for (int i = 1; i < blockCount; i++) {
+                if (blockTimes[i] < blockTimes[oldest]) {
+                    oldest = i;
+                }
+            }
+            blockCount--;
+            blockStarts[oldest] = blockStarts[blockCount];
+            blockEnds[oldest] = blockEnds[blockCount];
+            blockTimes[oldest] = blockTimes[blockCount];
+        }
+
+        private void ensureRegisters(int end) {
+            if (end > registers.length) {
+                registers = Arrays.copyOf(registers, Math.min(MAX_ADDRESS, Math.max(end, registers.length * 2)));
+            }
+        }
+
+        private void ensureBits(int end) {
+            int words = (end + 63) >> 6;
+            if (words > bitWords.length) {
+                bitWords = Arrays.copyOf(bitWords, Math.min(MAX_ADDRESS >> 6, Math.max(words, bitWords.length * 2)));
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.study.modbus.journal;
+
+import cn.tzauto.isecs.api.MsgListener;
+import com.study.modbus.constant.Constants;
+import com.study.modbus.publish.BinaryMsgListener;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 日志推送：所有设备的 SampleJournal 由共享的固定大小线程池推送给 MsgListener 和 BinaryMsgListener,线程数不随设备数量增长
+ * 每个日志从最早未确认的记录开始依次推送,推送成功后确认；同一个日志同一时刻最多占用一个推送线程,
+ * 每次最多推送 BATCH 条后让出线程,日志为空时不占用线程,追加记录后再提交
+ * listener 抛出异常视为推送失败,按指数退避重试同一条记录,因此下游可能收到重复的记录(至少一次)
+ */
+public class JournalPublisher {
+
+    private static final Logger logger = Logger.getLogger(JournalPublisher.class);
+
+    /**
+     * 重试间隔上限(毫秒)
+     */
+    private static final long MAX_BACKOFF = 30000L;
+
+    /**
+     * 一次最多连续推送的条数
+     */
+    private static final int BATCH = 64;
+
+    /**
+     * 默认的共享实例
+     */
+    private static volatile JournalPublisher shared;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * @param threads 推送线程数
+     */
+    public JournalPublisher(int threads) {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r, "modbus-journal-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 默认共享实例：2个推送线程
+     */
+    public static JournalPublisher shared() {
+        JournalPublisher publisher = shared;
+        if (publisher == null) {
+            synchronized (JournalPublisher.class) {
+                publisher = shared;
+                if (publisher == null) {
+                    publisher = new JournalPublisher(2);
+                    shared = publisher;
+                }
+            }
+        }
+        return publisher;
+    }
+
+    /**
+     * 开始推送一个日志,日志中已有的记录立即推送
+     *
+     * @param deviceCode 日志中的设备名
+     */
+    public Drain start(SampleJournal journal, MsgListener listener, String deviceCode) {
+        return start(journal, listener, null, deviceCode);
+    }
+
+    /**
+     * 开始推送一个日志,文本记录推送给 listener,二进制记录推送给 binaryListener,为空的一方的记录确认后丢弃
+     *
+     * @param binaryListener 可以通过 Drain.setBinaryListener 修改
+     * @param deviceCode     日志中的设备名
+     */
+    public Drain start(SampleJournal journal, MsgListener listener, BinaryMsgListener binaryListener, String deviceCode) {
+        Drain drain = new Drain(journal, listener, binaryListener, deviceCode);
+        journal.setAppendListener(drain::signal);
+        drain.signal();
+        return drain;
+    }
+
+    /**
+     * 停止推送线程,未推送的记录保留在日志中
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 单个日志的推送任务
+     */
+    public class Drain implements Runnable {
+
+        private final SampleJournal journal;
+
+        private final MsgListener listener;
+
+        private volatile BinaryMsgListener binaryListener;
+
+        private final String deviceCode;
+
+        /**
+         * 是否已提交给推送线程,包括退避等待中
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean running = true;
+
+        /**
+         * 只在推送线程中修改
+         */
+        private long backoff;
+
+        /**
+         * 已推送的记录数
+         */
+        private volatile long published;
+
+        /**
+         * 推送失败次数
+         */
+        private volatile long failures;
+
+        Drain(SampleJournal journal, MsgListener listener, BinaryMsgListener binaryListener, String deviceCode) {
+            this.journal = journal;
+            this.listener = listener;
+            this.binaryListener = binaryListener;
+            this.deviceCode = deviceCode;
+        }
+
+        public void setBinaryListener(BinaryMsgListener binaryListener) {
+            this.binaryListener = binaryListener;
+        }
+
+        /**
+         * 停止推送,正在推送的那一条会推送完,未推送的记录保留在日志中
+         */
+        public void stop() {
+            running = false;
+            journal.setAppendListener(null);
+        }
+
+        public long getPublished() {
+            return published;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * 有新记录,没有提交时提交给推送线程
+         */
+        void signal() {
+            if (running && scheduled.compareAndSet(false, true)) {
+                submit(0L);
+            }
+        }
+
+        @Override
+        public void run() {
+            MDC.put(Constants.LOG_EQPCODE, deviceCode);
+            try {
+                for (int i = 0; i < BATCH; i++) {
+                    if (!running) {
+                        scheduled.set(false);
+                        return;
+                    }
+                    SampleJournal.Record record = journal.next(0L);
+                    if (record == null) {
+                        scheduled.set(false);
+                        //清除标记前追加的记录没有再次提交
+                        if (journal.pending() > 0 && !journal.isClosed()) {
+                            signal();
+                        }
+                        return;
+                    }
+                    try {
+                        deliver(record);
+                    } catch (RuntimeException e) {
+                        failures++;
+                        backoff = backoff == 0 ? 500L : Math.min(MAX_BACKOFF, backoff * 2);
+                        logger.warn("推送失败,稍后重试:" + record.getSequence() + " " + e.getMessage());
+                        submit(backoff);
+                        return;
+                    }
+                    journal.ack(record);
+                    published++;
+                    backoff = 0L;
+                }
+                //让出线程,剩余的记录排到其他设备之后
+                submit(0L);
+            } catch (InterruptedException e) {
+                scheduled.set(false);
+            } finally {
+                MDC.remove(Constants.LOG_EQPCODE);
+            }
+        }
+
+        private void deliver(SampleJournal.Record record) {
+            if (record.getKind() == SampleJournal.KIND_BINARY) {
+                BinaryMsgListener binaryListener = this.binaryListener;
+                if (binaryListener != null) {
+                    binaryListener.deal(ByteBuffer.wrap(record.getPayload()));
+                }
+            } else if (listener != null) {
+                listener.dealMultMsg(record.getPayloadString());
+            }
+        }
+
+        private void submit(long delay) {
+            try {
+                executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                logger.warn("推送线程已停止:" + deviceCode);
+            }
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package com.study.modbus.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于内存映射文件的环形缓冲区,保存尚未推送成功的轮询结果
+ * 文件头64字节：魔数、版本、容量、head(最早未确认记录的位置)、tail(写入位置)、下一个序号
+ * 记录：int 长度、int 类型(0 文本,1 二进制)、long 序号、long 时间戳、内容,按8字节对齐,不跨越缓冲区末尾,
+ * 末尾放不下时写入填充标记从头开始
+ * 位置为逻辑位置(只增不减),物理位置为逻辑位置对容量取模
+ * 追加只是内存拷贝,不等待磁盘；空间不足时淘汰最早的记录；进程崩溃后数据保留在页缓存中,重新打开时从 head 继续
+ */
+public class SampleJournal implements Closeable {
+
+    /**
+     * UTF-8 文本,推送给 MsgListener
+     */
+    public static final int KIND_TEXT = 0;
+
+    /**
+     * BinaryPayloadEncoder 编码的 schema 或 frame,推送给 BinaryMsgListener
+     */
+    public static final int KIND_BINARY = 1;
+
+    private static final int MAGIC = 0x4D424A31;
+
+    private static final int VERSION = 1;
+
+    private static final int FILE_HEADER = 64;
+
+    private static final int RECORD_HEADER = 24;
+
+    /**
+     * 填充标记,表示本圈剩余空间不使用
+     */
+    private static final int PADDING = -1;
+
+    private static final int HEAD_OFFSET = 16;
+
+    private static final int TAIL_OFFSET = 24;
+
+    private static final int SEQUENCE_OFFSET = 32;
+
+    private final RandomAccessFile file;
+
+    /**
+     * 关闭后为空,只在持有 lock 时访问
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * 数据区容量(字节)
+     */
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * 编码缓存,只在持有 lock 时使用
+     */
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+
+    private long head;
+
+    private long tail;
+
+    private long nextSequence;
+
+    /**
+     * 被淘汰的记录数
+     */
+    private long evicted;
+
+    /**
+     * 超过容量被丢弃的记录数
+     */
+    private long rejected;
+
+    /**
+     * 上一次 takeLost() 之后是否有记录被淘汰或丢弃
+     */
+    private boolean lostSince;
+
+    private boolean closed;
+
+    /**
+     * 追加记录后的通知,由 JournalPublisher 设置,在释放 lock 后调用
+     */
+    private volatile Runnable appendListener;
+
+    /**
+     * 打开或创建日志文件,文件已存在且容量相同时从上次的 head 继续
+     *
+     * @param capacity 数据区容量(字节),按8字节对齐
+     */
+    public SampleJournal(File path, int capacity) throws IOException {
+        this.capacity = align(Math.max(capacity, RECORD_HEADER * 2));
+        file = new RandomAccessFile(path, "rw");
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER + (long) this.capacity);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getLong(8) == this.capacity) {
+            head = buffer.getLong(HEAD_OFFSET);
+            tail = buffer.getLong(TAIL_OFFSET);
+            nextSequence = buffer.getLong(SEQUENCE_OFFSET);
+            if (head > tail || tail - head > this.capacity || (head & 7) != 0 || (tail & 7) != 0) {
+                //文件头损坏,丢弃原有数据
+                head = tail = 0L;
+            }
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, this.capacity);
+        }
+        writeHeader();
+    }
+
+    /**
+     * 追加一条记录,空间不足时淘汰最早的记录
+     *
+     * @return 记录超过容量时丢弃或日志已关闭时返回 false
+     */
+    public boolean append(long timestamp, CharSequence payload) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            ByteBuffer data = encode(payload);
+            return append(timestamp, KIND_TEXT, data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 追加一条文本记录,写入 payload 的 position 到 limit 之间的内容
+     *
+     * @return 记录超过容量时丢弃或日志已关闭时返回 false
+     */
+    public boolean append(long timestamp, ByteBuffer payload) {
+        return append(timestamp, KIND_TEXT, payload);
+    }
+
+    /**
+     * 追加一条记录,写入 payload 的 position 到 limit 之间的内容
+     * close() 等待正在进行的追加完成后才释放映射
+     *
+     * @param kind KIND_TEXT 或 KIND_BINARY
+     * @return 记录超过容量时丢弃或日志已关闭时返回 false
+     */
+    public boolean append(long timestamp, int kind, ByteBuffer payload) {
+        int length = payload.remaining();
+        int size = align(RECORD_HEADER + length);
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (size > capacity) {
+                rejected++;
+                lostSince = true;
+                return false;
+            }
+            int physical = (int) (tail % capacity);
+            int remaining = capacity - physical;
+            int needed = remaining < size ? size + remaining : size;
+            while (tail + needed - head > capacity && head < tail) {
+                evictOldest();
+            }
+            if (remaining < size) {
+                if (head == tail) {
+                    head = tail + remaining;
+                } else {
+                    buffer.putInt(FILE_HEADER + physical, PADDING);
+                }
+                tail += remaining;
+                physical = 0;
+            }
+            int index = FILE_HEADER + physical;
+            buffer.putInt(index, length);
+            buffer.putInt(index + 4, kind);
+            buffer.putLong(index + 8, nextSequence++);
+            buffer.putLong(index + 16, timestamp);
+            ByteBuffer view = buffer.duplicate();
+            view.position(index + RECORD_HEADER);
+            view.put(payload.duplicate());
+            tail += size;
+            writeHeader();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        Runnable appendListener = this.appendListener;
+        if (appendListener != null) {
+            appendListener.run();
+        }
+        return true;
+    }
+
+    /**
+     * 读取最早未确认的记录,不移除,没有记录时最多等待 timeout 毫秒
+     *
+     * @return 超时或日志已关闭时返回 null
+     */
+    public Record next(long timeout) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            while (true) {
+                while (head == tail && !closed) {
+                    if (nanos <= 0L) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                if (closed) {
+                    return null;
+                }
+                int physical = (int) (head % capacity);
+                int index = FILE_HEADER + physical;
+                int length = buffer.getInt(index);
+                if (length == PADDING) {
+                    head += capacity - physical;
+                    writeHeader();
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                ByteBuffer view = buffer.duplicate();
+                view.position(index + RECORD_HEADER);
+                view.get(payload);
+                return new Record(head, align(RECORD_HEADER + length), buffer.getInt(index + 4), buffer.getLong(index + 8), buffer.getLong(index + 16), payload);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 确认记录已推送,记录在此之前已被淘汰时忽略
+     */
+    public void ack(Record record) {
+        lock.lock();
+        try {
+            if (!closed && head == record.position) {
+                head += record.size;
+                writeHeader();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 未确认的字节数
+     */
+    public long pending() {
+        lock.lock();
+        try {
+            return tail - head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getEvicted() {
+        lock.lock();
+        try {
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 上一次调用之后是否有未推送的记录被淘汰或超过容量被丢弃,并清除该标记
+     * 开启变化推送时丢失的记录中可能有变化的点位,发生丢失后应全量推送一次
+     */
+    public boolean takeLost() {
+        lock.lock();
+        try {
+            boolean result = lostSince;
+            lostSince = false;
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 设置追加记录后的通知,为空时取消
+     */
+    public void setAppendListener(Runnable appendListener) {
+        this.appendListener = appendListener;
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把映射内容写入磁盘
+     */
+    public void force() {
+        lock.lock();
+        try {
+            if (!closed) {
+                buffer.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭日志：等待正在进行的追加完成,写入磁盘后释放映射,之后的追加返回 false,可以重复调用
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appendListener = null;
+            notEmpty.signalAll();
+            MappedByteBuffer buffer = this.buffer;
+            this.buffer = null;
+            try {
+                buffer.force();
+            } finally {
+                file.close();
+                unmap(buffer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictOldest() {
+        int physical = (int) (head % capacity);
+        int length = buffer.getInt(FILE_HEADER + physical);
+        if (length == PADDING) {
+            head += capacity - physical;
+        } else {
+            head += align(RECORD_HEADER + length);
+            evicted++;
+            lostSince = true;
+        }
+    }
+
+    private ByteBuffer encode(CharSequence payload) {
+        CharBuffer chars = CharBuffer.wrap(payload);
+        while (true) {
+            encoder.reset();
+            scratch.clear();
+            CoderResult result = encoder.encode(chars, scratch, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(scratch);
+            }
+            if (!result.isOverflow()) {
+                scratch.flip();
+                return scratch;
+            }
+            scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            chars.rewind();
+        }
+    }
+
+    private void writeHeader() {
+        buffer.putLong(HEAD_OFFSET, head);
+        buffer.putLong(TAIL_OFFSET, tail);
+        buffer.putLong(SEQUENCE_OFFSET, nextSequence);
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * 立即释放映射,不等待 GC；JDK 9 及以上通过 Unsafe.invokeCleaner,JDK 8 通过 DirectBuffer.cleaner()
+     * 调用方保证之后不再访问 buffer,释放失败时由 GC 回收
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //JDK 8 没有 invokeCleaner
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //由 GC 回收
+        }
+    }
+
+    /**
+     * 一条记录
+     */
+    public static class Record {
+
+        private final long position;
+
+        private final int size;
+
+        private final int kind;
+
+        private final long sequence;
+
+        private final long timestamp;
+
+        private final byte[] payload;
+
+        Record(long position, int size, int kind, long sequence, long timestamp, byte[] payload) {
+            this.position = position;
+            this.size = size;
+            this.kind = kind;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.payload = payload;
+        }
+
+        /**
+         * 记录在日志中的逻辑位置
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * KIND_TEXT 或 KIND_BINARY
+         */
+        public int getKind() {
+            return kind;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public String getPayloadString() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.study.modbus.metrics;
+
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.study.modbus.ModbusEventDealer;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个连接的通信指标：请求往返耗时、轮询周期耗时直方图,以及超时、异常应答、重连和收发字节计数
+ * 同时把每个请求的结果回调给 ModbusEventDealer 的 hasSend/hasResponed/T3tIMEOUT/sendFail/responFail
+ */
+public class ConnectionMetrics {
+
+    private final String deviceCode;
+
+    private final ModbusEventDealer modbusEventDealer;
+
+    private final LatencyHistogram requestTime = new LatencyHistogram();
+
+    private final LatencyHistogram cycleTime = new LatencyHistogram();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder exceptionResponses = new LongAdder();
+
+    private final LongAdder failedCycles = new LongAdder();
+
+    private final LongAdder reconnects = new LongAdder();
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final LongAdder bytesReceived = new LongAdder();
+
+    /**
+     * @param modbusEventDealer 可以为空
+     */
+    public ConnectionMetrics(String deviceCode, ModbusEventDealer modbusEventDealer) {
+        this.deviceCode = deviceCode;
+        this.modbusEventDealer = modbusEventDealer;
+    }
+
+    /**
+     * 请求已发送
+     *
+     * @param bytes 帧长度,包括 MBAP 头
+     */
+    public void requestSent(int functionCode, int bytes) {
+        requests.increment();
+        bytesSent.add(bytes);
+        if (modbusEventDealer != null) {
+            modbusEventDealer.hasSend(functionCode, System.currentTimeMillis(), deviceCode);
+        }
+    }
+
+    /**
+     * 收到应答
+     *
+     * @param nanos     往返耗时
+     * @param bytes     帧长度,包括 MBAP 头
+     * @param exception 是否为异常应答
+     */
+    public void responseReceived(int functionCode, long nanos, int bytes, boolean exception) {
+        requestTime.record(nanos);
+        bytesReceived.add(bytes);
+        if (exception) {
+            exceptionResponses.increment();
+        }
+        if (modbusEventDealer != null) {
+            if (exception) {
+                modbusEventDealer.responFail(functionCode, nanos / 1000000L, deviceCode);
+            } else {
+                modbusEventDealer.hasResponed(functionCode, nanos / 1000000L, deviceCode);
+            }
+        }
+    }
+
+    /**
+     * 请求失败,没有收到应答
+     *
+     * @param nanos   从发送到失败的耗时
+     * @param timeout 是否为等待应答超时
+     */
+    public void requestFailed(int functionCode, long nanos, boolean timeout) {
+        if (timeout) {
+            timeouts.increment();
+        } else {
+            failures.increment();
+        }
+        if (modbusEventDealer != null) {
+            if (timeout) {
+                modbusEventDealer.T3tIMEOUT(functionCode, nanos / 1000000L, deviceCode);
+            } else {
+                modbusEventDealer.sendFail(functionCode, nanos / 1000000L, deviceCode);
+            }
+        }
+    }
+
+    /**
+     * 一次轮询周期完成
+     */
+    public void cycleCompleted(long nanos) {
+        cycleTime.record(nanos);
+    }
+
+    /**
+     * 一次轮询周期失败,耗时同样计入周期直方图
+     */
+    public void cycleFailed(long nanos) {
+        cycleTime.record(nanos);
+        failedCycles.increment();
+    }
+
+    public void reconnected() {
+        reconnects.increment();
+    }
+
+    /**
+     * 当前指标的快照,只复制计数,开销很小
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(deviceCode, requestTime.snapshot(), cycleTime.snapshot(), requests.sum(),
+                timeouts.sum(), failures.sum(), exceptionResponses.sum(), failedCycles.sum(), reconnects.sum(),
+                bytesSent.sum(), bytesReceived.sum());
+    }
+
+    /**
+     * 判断异常是否由等待应答超时引起：socket 读超时、modbus4j 的应答超时(通常包在 {@link ModbusTransportException} 中)
+     * 以及 Future 等待超时
+     */
+    public static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException
+                    || cause instanceof com.serotonin.modbus4j.sero.messaging.TimeoutException
+                    || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,125 @@
+package com.study.modbus.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图,按微秒记录,每个2的幂区间再分4个桶,相对误差不超过25%
+ * 记录只做原子累加,不加锁、不分配对象
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 160;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0L, nanos / 1000L);
+        buckets.incrementAndGet(index(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long current;
+        while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return new Snapshot(copy, count.get(), sum.get(), max.get());
+    }
+
+    static int index(long micros) {
+        if (micros < 4) {
+            return (int) micros;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(micros);
+        int index = (octave - 1) * 4 + ((int) (micros >>> (octave - 2)) & 3);
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    /**
+     * 桶的上界(微秒)
+     */
+    static long upperBound(int index) {
+        if (index < 4) {
+            return index;
+        }
+        int octave = index / 4 + 1;
+        return ((4L + index % 4 + 1) << (octave - 2)) - 1;
+    }
+
+    /**
+     * 直方图快照,耗时单位为微秒
+     */
+    public static class Snapshot {
+
+        private final long[] buckets;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * 百分位耗时,返回所在桶的上界
+         *
+         * @param percentile 0~100
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && buckets[i] > 0) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1fus p50=%dus p99=%dus max=%dus",
+                    count, getMean(), getPercentile(50), getPercentile(99), max);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.study.modbus.metrics;
+
+/**
+ * 连接指标快照,耗时单位为微秒
+ */
+public class MetricsSnapshot {
+
+    private final String deviceCode;
+
+    private final LatencyHistogram.Snapshot requestTime;
+
+    private final LatencyHistogram.Snapshot cycleTime;
+
+    private final long requests;
+
+    private final long timeouts;
+
+    private final long failures;
+
+    private final long exceptionResponses;
+
+    private final long failedCycles;
+
+    private final long reconnects;
+
+    private final long bytesSent;
+
+    private final long bytesReceived;
+
+    MetricsSnapshot(String deviceCode, LatencyHistogram.Snapshot requestTime, LatencyHistogram.Snapshot cycleTime,
+                    long requests, long timeouts, long failures, long exceptionResponses, long failedCycles, long reconnects,
+                    long bytesSent, long bytesReceived) {
+        this.deviceCode = deviceCode;
+        this.requestTime = requestTime;
+        this.cycleTime = cycleTime;
+        this.requests = requests;
+        this.timeouts = timeouts;
+        this.failures = failures;
+        this.exceptionResponses = exceptionResponses;
+        this.failedCycles = failedCycles;
+        this.reconnects = reconnects;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+    }
+
+    public String getDeviceCode() {
+        return deviceCode;
+    }
+
+    /**
+     * 单个请求的往返耗时
+     */
+    public LatencyHistogram.Snapshot getRequestTime() {
+        return requestTime;
+    }
+
+    /**
+     * 轮询周期耗时,包括失败的周期
+     */
+    public LatencyHistogram.Snapshot getCycleTime() {
+        return cycleTime;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * 超时以外的通信失败次数
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getExceptionResponses() {
+        return exceptionResponses;
+    }
+
+    /**
+     * 失败的轮询周期数
+     */
+    public long getFailedCycles() {
+        return failedCycles;
+    }
+
+    public long getReconnects() {
+        return reconnects;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "deviceCode='" + deviceCode + '\'' +
+                ", requestTime=[" + requestTime + ']' +
+                ", cycleTime=[" + cycleTime + ']' +
+                ", requests=" + requests +
+                ", timeouts=" + timeouts +
+                ", failures=" + failures +
+                ", exceptionResponses=" + exceptionResponses +
+                ", failedCycles=" + failedCycles +
+                ", reconnects=" + reconnects +
+                ", bytesSent=" + bytesSent +
+                ", bytesReceived=" + bytesReceived +
+                '}';
+    }
+}
@@ -0,0 +1,339 @@
+package com.study.modbus.publish;
+
+import cn.tzauto.isecs.api.MsgListener;
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 异步推送：轮询线程把结果放入每台设备的有界队列后立即返回,由共享的推送线程调用 MsgListener 和 BinaryMsgListener
+ * 同一周期的 JSON 和二进制结果作为一条放入队列,按同一个 OverloadPolicy 处理；同一台设备的结果按顺序推送,同一时刻最多占用一个推送线程；每次最多推送 BATCH 条后让出线程,避免慢设备占满线程
+ * 队列满时按 OverloadPolicy 处理,BLOCK 以外的策略不会让 listener 影响扫描周期
+ * 注意：开启变化推送时丢弃的结果中可能有变化的点位,设备发生丢弃后应在下一次全量推送,见 Lane.takeDropped()；
+ * 丢弃的结果中可能有二进制 schema,二进制推送失败时下游也可能没有收到 schema,同样需要重新同步
+ */
+public class AsyncDispatcher {
+
+    private static final Logger logger = Logger.getLogger(AsyncDispatcher.class);
+
+    /**
+     * 一次最多连续推送的条数
+     */
+    private static final int BATCH = 64;
+
+    private final ExecutorService executor;
+
+    /**
+     * 每台设备的队列长度
+     */
+    private final int capacity;
+
+    private final OverloadPolicy policy;
+
+    /**
+     * 所有设备排队中的条数
+     */
+    private final AtomicLong depth = new AtomicLong();
+
+    /**
+     * 所有设备丢弃或被替换的条数
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param threads  推送线程数
+     * @param capacity 每台设备的队列长度,CONFLATE 时固定为1
+     * @param policy   队列满时的处理方式
+     */
+    public AsyncDispatcher(int threads, int capacity, OverloadPolicy policy) {
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "modbus-dispatch-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.capacity = policy == OverloadPolicy.CONFLATE ? 1 : Math.max(1, capacity);
+        this.policy = policy;
+    }
+
+    /**
+     * 为一台设备创建推送队列
+     */
+    public Lane lane(MsgListener listener, String name) {
+        return new Lane(listener, null, name);
+    }
+
+    /**
+     * 为一台设备创建推送队列,同时推送二进制格式
+     *
+     * @param listener       为空时不推送 JSON
+     * @param binaryListener 为空时不推送二进制格式,可以通过 Lane.setBinaryListener 修改
+     */
+    public Lane lane(MsgListener listener, BinaryMsgListener binaryListener, String name) {
+        return new Lane(listener, binaryListener, name);
+    }
+
+    public OverloadPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getDepth() {
+        return depth.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 停止推送线程,未推送的结果被丢弃
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 单台设备的推送队列
+     */
+    public class Lane implements Runnable {
+
+        private final MsgListener listener;
+
+        private volatile BinaryMsgListener binaryListener;
+
+        private final String name;
+
+        private final ArrayDeque<Message> queue = new ArrayDeque<>();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition notFull = lock.newCondition();
+
+        /**
+         * 是否已提交给推送线程
+         */
+        private boolean scheduled;
+
+        private boolean closed;
+
+        private long droppedCount;
+
+        /**
+         * 上一次 takeDropped() 之后是否发生过丢弃
+         */
+        private boolean droppedSince;
+
+        Lane(MsgListener listener, BinaryMsgListener binaryListener, String name) {
+            this.listener = listener;
+            this.binaryListener = binaryListener;
+            this.name = name;
+        }
+
+        public void setBinaryListener(BinaryMsgListener binaryListener) {
+            this.binaryListener = binaryListener;
+        }
+
+        /**
+         * 放入一条结果,只有 BLOCK 策略会等待
+         *
+         * @return 关闭后返回 false
+         */
+        public boolean offer(String payload) throws InterruptedException {
+            return offer(payload, null, null);
+        }
+
+        /**
+         * 放入一个周期的结果,只有 BLOCK 策略会等待
+         *
+         * @param payload JSON,为空时不推送
+         * @param schema  二进制 schema,为空时不推送,调用后不能再修改
+         * @param frame   二进制 frame,为空时不推送,调用后不能再修改
+         * @return 关闭后返回 false
+         */
+        public boolean offer(String payload, byte[] schema, byte[] frame) throws InterruptedException {
+            Message message = new Message(payload, schema, frame);
+            lock.lock();
+            try {
+                if (closed) {
+                    return false;
+                }
+                while (queue.size() >= capacity) {
+                    if (policy == OverloadPolicy.BLOCK) {
+                        notFull.await();
+                        if (closed) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    //DROP_OLDEST 丢弃最早的一条,CONFLATE 替换未推送的一条
+                    queue.pollFirst();
+                    depth.decrementAndGet();
+                    droppedCount++;
+                    droppedSince = true;
+                    dropped.incrementAndGet();
+                }
+                queue.addLast(message);
+                depth.incrementAndGet();
+                if (!scheduled) {
+                    scheduled = true;
+                    submit();
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < BATCH; i++) {
+                Message message;
+                lock.lock();
+                try {
+                    message = queue.pollFirst();
+                    if (message == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    depth.decrementAndGet();
+                    notFull.signal();
+                } finally {
+                    lock.unlock();
+                }
+                if (message.payload != null && listener != null) {
+                    try {
+                        listener.dealMultMsg(message.payload);
+                    } catch (RuntimeException e) {
+                        logger.error("推送失败:" + name, e);
+                    }
+                }
+                deliverBinary(message);
+            }
+            //让出线程,剩余的结果排到其他设备之后
+            lock.lock();
+            try {
+                if (queue.isEmpty()) {
+                    scheduled = false;
+                } else {
+                    submit();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 排队中的条数
+         */
+        public int getDepth() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 丢弃或被替换的条数
+         */
+        public long getDropped() {
+            lock.lock();
+            try {
+                return droppedCount;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 上一次调用之后是否发生过丢弃,并清除该标记
+         */
+        public boolean takeDropped() {
+            lock.lock();
+            try {
+                boolean result = droppedSince;
+                droppedSince = false;
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 关闭队列,丢弃未推送的结果,唤醒等待中的轮询线程
+         */
+        public void close() {
+            lock.lock();
+            try {
+                closed = true;
+                depth.addAndGet(-queue.size());
+                queue.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 推送二进制格式,失败时下游可能没有收到 schema,标记为丢弃使轮询线程重新同步
+         */
+        private void deliverBinary(Message message) {
+            BinaryMsgListener binaryListener = this.binaryListener;
+            if (binaryListener == null || (message.schema == null && message.frame == null)) {
+                return;
+            }
+            try {
+                if (message.schema != null) {
+                    binaryListener.dealSchema(ByteBuffer.wrap(message.schema));
+                }
+                if (message.frame != null) {
+                    binaryListener.dealFrame(ByteBuffer.wrap(message.frame));
+                }
+            } catch (RuntimeException e) {
+                logger.error("二进制推送失败:" + name, e);
+                lock.lock();
+                try {
+                    droppedSince = true;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void submit() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled = false;
+                logger.warn("推送线程已停止:" + name);
+            }
+        }
+    }
+
+    /**
+     * 一个周期的结果
+     */
+    private static class Message {
+
+        private final String payload;
+
+        private final byte[] schema;
+
+        private final byte[] frame;
+
+        Message(String payload, byte[] schema, byte[] frame) {
+            this.payload = payload;
+            this.schema = schema;
+            this.frame = frame;
+        }
+    }
+}
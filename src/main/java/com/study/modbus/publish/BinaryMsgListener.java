@@ -0,0 +1,32 @@
+package com.study.modbus.publish;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 二进制格式的轮询结果回调,格式见 BinaryPayloadEncoder,可以用 BinaryPayloadDecoder 解析
+ * 与 MsgListener 相同：没有推送队列和本地日志时在轮询线程中调用,否则在 AsyncDispatcher 或 JournalPublisher 的推送线程中调用
+ * buffer 只在调用期间有效,需要保留时复制内容
+ */
+public interface BinaryMsgListener {
+
+    /**
+     * 点位表,在使用它的第一帧之前、点位变化和断线恢复后发送
+     */
+    void dealSchema(ByteBuffer schema);
+
+    /**
+     * 一个周期的点位值
+     */
+    void dealFrame(ByteBuffer frame);
+
+    /**
+     * 按消息的第一个字节分发给 dealSchema 或 dealFrame
+     */
+    default void deal(ByteBuffer message) {
+        if (message.get(message.position()) == BinaryPayloadEncoder.MSG_SCHEMA) {
+            dealSchema(message);
+        } else {
+            dealFrame(message);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.study.modbus.publish;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 供下游使用的二进制格式解析,格式见 BinaryPayloadEncoder
+ * 按 schemaId 保存收到的 schema,之后的 frame 按点位编号还原点位名称
+ * 非线程安全,每个接收方使用一个实例
+ */
+public class BinaryPayloadDecoder {
+
+    private final Map<Integer, String[]> schemas = new HashMap<>();
+
+    /**
+     * 解析一条消息,schema 保存后返回 null,frame 返回点位值
+     * 从 buffer 的 position 开始读取,读取后 position 移到消息末尾
+     *
+     * @throws IllegalArgumentException 格式错误或 frame 的 schema 未收到
+     */
+    public Frame decode(ByteBuffer buffer) {
+        byte msg = buffer.get();
+        byte version = buffer.get();
+        if (version != BinaryPayloadEncoder.VERSION) {
+            throw new IllegalArgumentException("不支持的版本:" + version);
+        }
+        int schemaId = buffer.getInt();
+        switch (msg) {
+            case BinaryPayloadEncoder.MSG_SCHEMA:
+                int size = buffer.getShort() & 0xFFFF;
+                String[] names = new String[size];
+                for (int i = 0; i < size; i++) {
+                    int id = buffer.getShort() & 0xFFFF;
+                    //类型在每个值之前重复出现,这里不需要
+                    buffer.get();
+                    byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(name);
+                    names[id] = new String(name, StandardCharsets.UTF_8);
+                }
+                schemas.put(schemaId, names);
+                return null;
+            case BinaryPayloadEncoder.MSG_FRAME:
+                String[] keys = schemas.get(schemaId);
+                if (keys == null) {
+                    throw new IllegalArgumentException("没有收到 schema:" + schemaId);
+                }
+                long timestamp = buffer.getLong();
+                int count = buffer.getShort() & 0xFFFF;
+                Map<String, Object> values = new LinkedHashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    int id = buffer.getShort() & 0xFFFF;
+                    values.put(keys[id], readValue(buffer, buffer.get()));
+                }
+                return new Frame(schemaId, timestamp, values);
+            default:
+                throw new IllegalArgumentException("未知的消息类型:" + msg);
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer, byte type) {
+        switch (type) {
+            case BinaryPayloadEncoder.TYPE_BOOLEAN:
+                return buffer.get() != 0;
+            case BinaryPayloadEncoder.TYPE_INT:
+                return buffer.getInt();
+            case BinaryPayloadEncoder.TYPE_LONG:
+                return buffer.getLong();
+            case BinaryPayloadEncoder.TYPE_FLOAT:
+                return buffer.getFloat();
+            case BinaryPayloadEncoder.TYPE_DOUBLE:
+                return buffer.getDouble();
+            case BinaryPayloadEncoder.TYPE_STRING:
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            default:
+                throw new IllegalArgumentException("未知的值类型:" + type);
+        }
+    }
+
+    /**
+     * 一个周期的点位值
+     */
+    public static class Frame {
+
+        private final int schemaId;
+
+        private final long timestamp;
+
+        private final Map<String, Object> values;
+
+        Frame(int schemaId, long timestamp, Map<String, Object> values) {
+            this.schemaId = schemaId;
+            this.timestamp = timestamp;
+            this.values = values;
+        }
+
+        public int getSchemaId() {
+            return schemaId;
+        }
+
+        /**
+         * 周期时间戳(毫秒)
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * 点位名称到值,按编码顺序
+         */
+        public Map<String, Object> getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return "Frame{" +
+                    "schemaId=" + schemaId +
+                    ", timestamp=" + timestamp +
+                    ", values=" + values +
+                    '}';
+        }
+    }
+}
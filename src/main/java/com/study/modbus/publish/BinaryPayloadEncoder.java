@@ -0,0 +1,226 @@
+package com.study.modbus.publish;
+
+import com.serotonin.modbus4j.code.DataType;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轮询结果的二进制编码,作为 JSON(PayloadSerializer)之外的选择
+ * 点位表(schema)只在点位变化或重新同步时发送一次,之后每个周期只发送点位编号和值
+ * schema：byte 1、byte 版本、int schemaId、short 点位数,每个点位 short 编号、byte 类型、short 名称长度、UTF-8 名称
+ * frame：byte 2、byte 版本、int schemaId、long 周期时间戳、short 点位数,每个点位 short 编号、byte 类型、值
+ * 值按类型编码：BOOLEAN 1字节,INT 4字节,LONG 8字节(EIGHT_BYTE_INT_UNSIGNED 为无符号),FLOAT 4字节,DOUBLE 8字节,
+ * STRING short 长度加 UTF-8；大端字节序
+ * 编码结果写入复用的 ByteBuffer,下一次编码前有效
+ * 除 reset() 外只在轮询线程中使用,非线程安全
+ */
+public class BinaryPayloadEncoder {
+
+    public static final byte MSG_SCHEMA = 1;
+
+    public static final byte MSG_FRAME = 2;
+
+    public static final byte VERSION = 1;
+
+    public static final byte TYPE_BOOLEAN = 1;
+
+    public static final byte TYPE_INT = 2;
+
+    public static final byte TYPE_LONG = 3;
+
+    public static final byte TYPE_FLOAT = 4;
+
+    public static final byte TYPE_DOUBLE = 5;
+
+    public static final byte TYPE_STRING = 6;
+
+    /**
+     * 一个 schema 最多的点位数
+     */
+    public static final int MAX_TAGS = 0xFFFF;
+
+    private static final AtomicInteger SCHEMA_IDS = new AtomicInteger();
+
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    /**
+     * 当前 schema 对应的点位列表,为空表示需要重新发送 schema
+     * reset() 可能由其他线程调用
+     */
+    private volatile List<String> keys;
+
+    private int schemaId;
+
+    /**
+     * 与 keys 一一对应的编码类型
+     */
+    private byte[] types;
+
+    /**
+     * 与 keys 一一对应的 UTF-8 名称
+     */
+    private byte[][] names;
+
+    /**
+     * 点位列表变化或调用 reset() 后需要先发送 schema
+     */
+    public boolean needsSchema(List<String> keys) {
+        return keys != this.keys;
+    }
+
+    /**
+     * 下一帧之前重新发送 schema,用于断线恢复后下游重新同步
+     */
+    public void reset() {
+        keys = null;
+    }
+
+    /**
+     * 编码 schema,分配新的 schemaId
+     *
+     * @param dataTypes 与 keys 一一对应,来自com.serotonin.modbus4j.code.DataType
+     * @return 编码结果,position 为0,limit 为长度
+     */
+    public ByteBuffer writeSchema(List<String> keys, int[] dataTypes) {
+        int size = keys.size();
+        if (size > MAX_TAGS) {
+            throw new IllegalArgumentException("点位数超过" + MAX_TAGS + ":" + size);
+        }
+        if (dataTypes.length != size) {
+            throw new IllegalStateException("点位列表与数据类型不一致");
+        }
+        byte[] types = new byte[size];
+        byte[][] names = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            types[i] = typeOf(dataTypes[i]);
+            names[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        this.types = types;
+        this.names = names;
+        this.schemaId = SCHEMA_IDS.incrementAndGet();
+        this.keys = keys;
+        while (true) {
+            ByteBuffer buffer = this.buffer;
+            try {
+                buffer.clear();
+                buffer.put(MSG_SCHEMA).put(VERSION).putInt(schemaId).putShort((short) size);
+                for (int i = 0; i < size; i++) {
+                    buffer.putShort((short) i).put(types[i]).putShort((short) names[i].length).put(names[i]);
+                }
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                this.buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * 编码一个周期的值,值为空的点位会被忽略
+     *
+     * @param keys      必须与上一次 writeSchema 的点位列表相同
+     * @param values    与 keys 一一对应的读取结果
+     * @param mask      与 keys 一一对应,为 true 的点位才输出；为空表示全部输出
+     * @param timestamp 周期时间戳(毫秒)
+     * @return 编码结果,position 为0,limit 为长度
+     */
+    public ByteBuffer writeFrame(List<String> keys, Object[] values, boolean[] mask, long timestamp) {
+        if (keys != this.keys) {
+            throw new IllegalStateException("需要先发送 schema");
+        }
+        byte[] types = this.types;
+        while (true) {
+            ByteBuffer buffer = this.buffer;
+            try {
+                buffer.clear();
+                buffer.put(MSG_FRAME).put(VERSION).putInt(schemaId).putLong(timestamp);
+                int countPosition = buffer.position();
+                buffer.putShort((short) 0);
+                int count = 0;
+                for (int i = 0; i < types.length; i++) {
+                    if (mask != null && !mask[i]) {
+                        continue;
+                    }
+                    Object value = values[i];
+                    if (value == null) {
+                        continue;
+                    }
+                    buffer.putShort((short) i);
+                    writeValue(buffer, types[i], value);
+                    count++;
+                }
+                buffer.putShort(countPosition, (short) count);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                this.buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * 按 schema 的类型写入值,实际值与类型不符时按字符串写入
+     */
+    private static void writeValue(ByteBuffer buffer, byte type, Object value) {
+        if (type == TYPE_BOOLEAN && value instanceof Boolean) {
+            buffer.put(type).put((byte) ((Boolean) value ? 1 : 0));
+            return;
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            switch (type) {
+                case TYPE_INT:
+                    buffer.put(type).putInt(number.intValue());
+                    return;
+                case TYPE_LONG:
+                    buffer.put(type).putLong(number.longValue());
+                    return;
+                case TYPE_FLOAT:
+                    buffer.put(type).putFloat(number.floatValue());
+                    return;
+                case TYPE_DOUBLE:
+                    buffer.put(type).putDouble(number.doubleValue());
+                    return;
+                default:
+            }
+        }
+        byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+        buffer.put(TYPE_STRING).putShort((short) Math.min(bytes.length, 0xFFFF)).put(bytes, 0, Math.min(bytes.length, 0xFFFF));
+    }
+
+    /**
+     * 数据类型对应的编码类型
+     */
+    static byte typeOf(int dataType) {
+        switch (dataType) {
+            case DataType.BINARY:
+                return TYPE_BOOLEAN;
+            case DataType.FOUR_BYTE_FLOAT:
+            case DataType.FOUR_BYTE_FLOAT_SWAPPED:
+                return TYPE_FLOAT;
+            case DataType.EIGHT_BYTE_FLOAT:
+            case DataType.EIGHT_BYTE_FLOAT_SWAPPED:
+                return TYPE_DOUBLE;
+            case DataType.FOUR_BYTE_INT_UNSIGNED:
+            case DataType.FOUR_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.FOUR_BYTE_MOD_10K:
+            case DataType.FOUR_BYTE_MOD_10K_SWAPPED:
+            case DataType.SIX_BYTE_MOD_10K:
+            case DataType.EIGHT_BYTE_MOD_10K:
+            case DataType.EIGHT_BYTE_INT_UNSIGNED:
+            case DataType.EIGHT_BYTE_INT_SIGNED:
+            case DataType.EIGHT_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.EIGHT_BYTE_INT_SIGNED_SWAPPED:
+                return TYPE_LONG;
+            case DataType.CHAR:
+            case DataType.VARCHAR:
+                return TYPE_STRING;
+            default:
+                return TYPE_INT;
+        }
+    }
+}
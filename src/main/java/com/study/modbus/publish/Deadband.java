@@ -0,0 +1,109 @@
+package com.study.modbus.publish;
+
+/**
+ * 点位死区：与上一次推送的值比较,变化超过死区才推送
+ * 阈值为 absolute 和 上一次推送值的 percent% 中较大的一个,都为0时任何变化都推送
+ * minInterval 内不重复推送,超过 maxInterval 没有推送时即使没有变化也推送一次
+ * 非数值点位(如线圈)只比较是否相等,只有 minInterval 和 maxInterval 生效
+ */
+public class Deadband {
+
+    /**
+     * 绝对死区
+     */
+    private final double absolute;
+
+    /**
+     * 百分比死区,相对上一次推送的值
+     */
+    private final double percent;
+
+    /**
+     * 最小推送间隔(毫秒),小于等于0不限制
+     */
+    private final long minInterval;
+
+    /**
+     * 最大推送间隔(毫秒),小于等于0不限制
+     */
+    private final long maxInterval;
+
+    public Deadband(double absolute, double percent, long minInterval, long maxInterval) {
+        if (absolute < 0 || percent < 0) {
+            throw new IllegalArgumentException("死区不能为负数");
+        }
+        this.absolute = absolute;
+        this.percent = percent;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * 只有绝对死区
+     */
+    public static Deadband absolute(double absolute) {
+        return new Deadband(absolute, 0, 0L, 0L);
+    }
+
+    /**
+     * 只有百分比死区
+     */
+    public static Deadband percent(double percent) {
+        return new Deadband(0, percent, 0L, 0L);
+    }
+
+    /**
+     * 是否需要推送
+     *
+     * @param last     上一次推送的值,为空表示还没有推送过
+     * @param value    本次读取的值
+     * @param elapsed  距离上一次推送的毫秒数
+     */
+    boolean report(Object last, Object value, long elapsed) {
+        if (last == null) {
+            return true;
+        }
+        if (maxInterval > 0 && elapsed >= maxInterval) {
+            return true;
+        }
+        if (minInterval > 0 && elapsed < minInterval) {
+            return false;
+        }
+        if (last instanceof Number && value instanceof Number) {
+            double previous = ((Number) last).doubleValue();
+            double current = ((Number) value).doubleValue();
+            if (Double.isNaN(previous) || Double.isNaN(current)) {
+                return Double.isNaN(previous) != Double.isNaN(current);
+            }
+            double threshold = Math.max(absolute, Math.abs(previous) * percent / 100);
+            return Math.abs(current - previous) > threshold;
+        }
+        return !last.equals(value);
+    }
+
+    public double getAbsolute() {
+        return absolute;
+    }
+
+    public double getPercent() {
+        return percent;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadband{" +
+                "absolute=" + absolute +
+                ", percent=" + percent +
+                ", minInterval=" + minInterval +
+                ", maxInterval=" + maxInterval +
+                '}';
+    }
+}
@@ -0,0 +1,152 @@
+package com.study.modbus.publish;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 变化推送：记录每个点位上一次推送的值,只推送发生变化的点位,
+ * 并按 fullInterval 周期性推送一次全量数据用于下游重新同步
+ * 设置了 Deadband 的点位变化超过死区才推送
+ * 上一次的值和死区按点位列表的下标保存,不做 hash 查找
+ * 只在轮询线程中使用,非线程安全
+ */
+public class DeltaTracker {
+
+    /**
+     * 上一次计算使用的点位列表
+     */
+    private List<String> keys;
+
+    /**
+     * 与 keys 一一对应,每个点位上一次推送的值
+     */
+    private Object[] lastValues = new Object[0];
+
+    /**
+     * 与 keys 一一对应,每个点位上一次推送的时间
+     */
+    private long[] lastTimes = new long[0];
+
+    /**
+     * 与 keys 一一对应,没有死区的点位为空
+     */
+    private Deadband[] bands = new Deadband[0];
+
+    /**
+     * 按点位名称设置的死区,整体替换,不修改
+     */
+    private volatile Map<String, Deadband> deadbands = Collections.emptyMap();
+
+    /**
+     * bands 对应的 deadbands
+     */
+    private Map<String, Deadband> compiledDeadbands;
+
+    /**
+     * 与 keys 一一对应,本次需要推送的点位
+     */
+    private boolean[] mask = new boolean[0];
+
+    /**
+     * 全量推送间隔(毫秒)
+     */
+    private final long fullInterval;
+
+    /**
+     * 上一次全量推送的时间,小于0表示下一次必须全量推送
+     */
+    private long lastFullTime = -1L;
+
+    /**
+     * @param fullInterval 全量推送间隔(毫秒),小于等于0表示只在启动和重连后全量推送一次
+     */
+    public DeltaTracker(long fullInterval) {
+        this.fullInterval = fullInterval;
+    }
+
+    /**
+     * 计算需要推送的点位,结果通过 {@link #getMask()} 获取
+     *
+     * @param keys   本次读取的所有点位
+     * @param values 与 keys 一一对应的本次读取结果
+     * @param now    当前时间(毫秒)
+     * @return 需要推送的点位数,为0表示不需要推送
+     */
+    public int delta(List<String> keys, Object[] values, long now) {
+        if (keys != this.keys) {
+            //点位列表变化,重新全量推送
+            this.keys = keys;
+            lastValues = new Object[keys.size()];
+            lastTimes = new long[keys.size()];
+            mask = new boolean[keys.size()];
+            compiledDeadbands = null;
+            lastFullTime = -1L;
+        }
+        Map<String, Deadband> deadbands = this.deadbands;
+        if (deadbands != compiledDeadbands) {
+            bands = new Deadband[keys.size()];
+            for (int i = 0; i < bands.length; i++) {
+                bands[i] = deadbands.get(keys.get(i));
+            }
+            compiledDeadbands = deadbands;
+        }
+        Object[] lastValues = this.lastValues;
+        long[] lastTimes = this.lastTimes;
+        Deadband[] bands = this.bands;
+        boolean[] mask = this.mask;
+        boolean full = lastFullTime < 0 || (fullInterval > 0 && now - lastFullTime >= fullInterval);
+        if (full) {
+            lastFullTime = now;
+        }
+        int count = 0;
+        for (int i = 0; i < mask.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                mask[i] = false;
+                continue;
+            }
+            Deadband band = bands[i];
+            if (full) {
+                mask[i] = true;
+            } else if (band == null) {
+                mask[i] = !Objects.equals(lastValues[i], value);
+            } else {
+                mask[i] = band.report(lastValues[i], value, now - lastTimes[i]);
+            }
+            if (mask[i]) {
+                //死区与上一次推送的值比较,缓慢漂移累计超过死区后也会推送
+                lastValues[i] = value;
+                lastTimes[i] = now;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 上一次 delta 计算的结果,与点位列表一一对应
+     */
+    public boolean[] getMask() {
+        return mask;
+    }
+
+    /**
+     * 设置死区
+     *
+     * @param deadbands 点位名称到死区,调用后不能再修改
+     */
+    public void setDeadbands(Map<String, Deadband> deadbands) {
+        this.deadbands = deadbands;
+    }
+
+    /**
+     * 下一次推送强制为全量,用于断线重连后重新同步
+     */
+    public void reset() {
+        lastFullTime = -1L;
+        Arrays.fill(lastValues, null);
+    }
+}
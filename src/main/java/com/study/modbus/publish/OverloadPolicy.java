@@ -0,0 +1,22 @@
+package com.study.modbus.publish;
+
+/**
+ * 推送队列满时的处理方式
+ */
+public enum OverloadPolicy {
+
+    /**
+     * 轮询线程等待队列有空位,不丢数据,但扫描周期会受 listener 影响
+     */
+    BLOCK,
+
+    /**
+     * 丢弃最早的一条
+     */
+    DROP_OLDEST,
+
+    /**
+     * 每台设备只保留最新的一条,未推送的旧数据被替换
+     */
+    CONFLATE
+}
@@ -0,0 +1,182 @@
+package com.study.modbus.publish;
+
+import java.util.List;
+
+/**
+ * 轮询结果的 JSON 序列化,输出与 gson.toJson(BatchResults) 相同的 {"data":{...}} 格式
+ * 不使用反射,值按点位下标读取,点位名的转义结果按点位列表缓存,缓冲区在每个周期复用
+ * 只在轮询线程中使用,非线程安全
+ */
+public class PayloadSerializer {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder buffer = new StringBuilder(1024);
+
+    /**
+     * 上一次序列化使用的点位列表
+     */
+    private List<String> keys;
+
+    /**
+     * 与 keys 一一对应的 "key": 片段
+     */
+    private String[] names;
+
+    /**
+     * 序列化结果中值为空的点位会被忽略
+     *
+     * @param keys   所有点位
+     * @param values 与 keys 一一对应的读取结果
+     * @param mask   与 keys 一一对应,为 true 的点位才输出；为空表示全部输出
+     * @return 输出的点位数
+     */
+    public int write(List<String> keys, Object[] values, boolean[] mask) {
+        String[] names = namesOf(keys);
+        StringBuilder buffer = this.buffer;
+        buffer.setLength(0);
+        buffer.append("{\"data\":{");
+        int count = 0;
+        for (int i = 0, size = names.length; i < size; i++) {
+            if (mask != null && !mask[i]) {
+                continue;
+            }
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            if (count > 0) {
+                buffer.append(',');
+            }
+            buffer.append(names[i]);
+            appendValue(buffer, value);
+            count++;
+        }
+        buffer.append("}}");
+        return count;
+    }
+
+    /**
+     * 上一次 write 的结果
+     */
+    public CharSequence buffer() {
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    /**
+     * 统计结果中有值的点位数,用于判断是否读到了内容
+     */
+    public static int count(Object[] values) {
+        int count = 0;
+        for (Object value : values) {
+            if (value != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String[] namesOf(List<String> keys) {
+        if (keys != this.keys) {
+            String[] names = new String[keys.size()];
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < names.length; i++) {
+                sb.setLength(0);
+                appendString(sb, keys.get(i));
+                sb.append(':');
+                names[i] = sb.toString();
+            }
+            this.names = names;
+            this.keys = keys;
+        }
+        return names;
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        if (value instanceof Boolean) {
+            sb.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Float) {
+            float f = (Float) value;
+            if (Float.isNaN(f) || Float.isInfinite(f)) {
+                sb.append("null");
+            } else {
+                sb.append(f);
+            }
+        } else if (value instanceof Double) {
+            double d = (Double) value;
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                sb.append("null");
+            } else {
+                sb.append(d);
+            }
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            sb.append(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            sb.append(value.toString());
+        } else {
+            appendString(sb, value.toString());
+        }
+    }
+
+    /**
+     * 与 gson 默认设置相同的字符串转义,包括 html 字符
+     */
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '<':
+                case '>':
+                case '&':
+                case '=':
+                case '\'':
+                case '\u2028':
+                case '\u2029':
+                    appendUnicode(sb, c);
+                    break;
+                default:
+                    if (c < 0x20) {
+                        appendUnicode(sb, c);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendUnicode(StringBuilder sb, char c) {
+        sb.append("\\u")
+                .append(HEX[(c >> 12) & 0xF])
+                .append(HEX[(c >> 8) & 0xF])
+                .append(HEX[(c >> 4) & 0xF])
+                .append(HEX[c & 0xF]);
+    }
+}
@@ -0,0 +1,217 @@
+package com.study.modbus.tag;
+
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.image.RegisterImage;
+import com.study.modbus.util.RegisterCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 点位注册表：把地址字符串、slaveId 和数据类型在注册时编译为 int 句柄,
+ * 预先计算功能码、起始地址和占用宽度,轮询和读写时按句柄直接访问数组,不再解析字符串和 hash 查找
+ * 地址格式与 WriteBean 一致：00001 线圈,10001 离散输入,30001 输入寄存器,40001 保持寄存器
+ */
+public class TagTable {
+
+    /**
+     * 按句柄解码时使用的临时缓冲区,最长8字节
+     */
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(8));
+
+    /**
+     * 只在注册时使用
+     */
+    private final Map<String, Integer> handles = new HashMap<>();
+
+    private String[] keys = new String[16];
+
+    private int[] slaveIds = new int[16];
+
+    /**
+     * 功能区,与 RegisterRange 一致
+     */
+    private int[] functionCodes = new int[16];
+
+    private int[] offsets = new int[16];
+
+    /**
+     * 占用的位数或寄存器数
+     */
+    private int[] widths = new int[16];
+
+    private int[] dataTypes = new int[16];
+
+    /**
+     * 已注册的点位数,先写数组再增加,读取方按句柄读取前先读取 size
+     */
+    private volatile int size;
+
+    /**
+     * 注册点位,相同的地址、slaveId 和数据类型返回同一个句柄
+     *
+     * @param addr     地址,如 40001
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType,线圈和离散输入使用 DataType.BINARY
+     * @return 句柄
+     * @throws IllegalArgumentException 地址格式错误
+     */
+    public synchronized int register(String addr, int slaveId, int dataType) {
+        String id = addr + "/" + slaveId + "/" + dataType;
+        Integer existing = handles.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        if (addr == null || addr.length() < 2) {
+            throw new IllegalArgumentException("地址格式错误:" + addr);
+        }
+        int functionCode;
+        switch (addr.charAt(0)) {
+            case '0':
+                functionCode = RegisterRange.COIL_STATUS;
+                break;
+            case '1':
+                functionCode = RegisterRange.INPUT_STATUS;
+                break;
+            case '3':
+                functionCode = RegisterRange.INPUT_REGISTER;
+                break;
+            case '4':
+                functionCode = RegisterRange.HOLDING_REGISTER;
+                break;
+            default:
+                throw new IllegalArgumentException("地址格式错误:" + addr);
+        }
+        int offset = Integer.parseInt(addr.substring(1)) - 1;
+        boolean bits = functionCode == RegisterRange.COIL_STATUS || functionCode == RegisterRange.INPUT_STATUS;
+
+        int handle = size;
+        if (handle == keys.length) {
+            int capacity = handle * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            slaveIds = Arrays.copyOf(slaveIds, capacity);
+            functionCodes = Arrays.copyOf(functionCodes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            dataTypes = Arrays.copyOf(dataTypes, capacity);
+        }
+        keys[handle] = addr;
+        slaveIds[handle] = slaveId;
+        functionCodes[handle] = functionCode;
+        offsets[handle] = offset;
+        widths[handle] = bits ? 1 : DataType.getRegisterCount(dataType);
+        dataTypes[handle] = bits ? DataType.BINARY : dataType;
+        handles.put(id, handle);
+        size = handle + 1;
+        return handle;
+    }
+
+    /**
+     * 查找已注册的点位
+     *
+     * @return 句柄,不存在时返回-1
+     */
+    public synchronized int find(String addr, int slaveId, int dataType) {
+        Integer handle = handles.get(addr + "/" + slaveId + "/" + dataType);
+        return handle == null ? -1 : handle;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getKey(int handle) {
+        check(handle);
+        return keys[handle];
+    }
+
+    public int getSlaveId(int handle) {
+        check(handle);
+        return slaveIds[handle];
+    }
+
+    public int getFunctionCode(int handle) {
+        check(handle);
+        return functionCodes[handle];
+    }
+
+    public int getOffset(int handle) {
+        check(handle);
+        return offsets[handle];
+    }
+
+    public int getWidth(int handle) {
+        check(handle);
+        return widths[handle];
+    }
+
+    public int getDataType(int handle) {
+        check(handle);
+        return dataTypes[handle];
+    }
+
+    /**
+     * 创建点位对应的 modbus4j locator,用于加入 BatchRead
+     */
+    public BaseLocator<?> locator(int handle) {
+        check(handle);
+        int slaveId = slaveIds[handle];
+        int offset = offsets[handle];
+        switch (functionCodes[handle]) {
+            case RegisterRange.COIL_STATUS:
+                return BaseLocator.coilStatus(slaveId, offset);
+            case RegisterRange.INPUT_STATUS:
+                return BaseLocator.inputStatus(slaveId, offset);
+            case RegisterRange.INPUT_REGISTER:
+                return BaseLocator.inputRegister(slaveId, offset, dataTypes[handle]);
+            default:
+                return BaseLocator.holdingRegister(slaveId, offset, dataTypes[handle]);
+        }
+    }
+
+    /**
+     * 从寄存器镜像读取点位的数值,不分配对象
+     * 线圈和离散输入返回 1 或 0
+     *
+     * @return 没有缓存时返回 NaN
+     * @throws IllegalArgumentException 字符串等非数值类型
+     */
+    public double read(RegisterImage image, int handle) {
+        check(handle);
+        int slaveId = slaveIds[handle];
+        int functionCode = functionCodes[handle];
+        int offset = offsets[handle];
+        if (functionCode == RegisterRange.COIL_STATUS || functionCode == RegisterRange.INPUT_STATUS) {
+            int bit = image.getBit(slaveId, functionCode, offset);
+            return bit < 0 ? Double.NaN : bit;
+        }
+        int width = widths[handle];
+        if (width > 4) {
+            throw new IllegalArgumentException("数据类型不能解码为数值:" + dataTypes[handle]);
+        }
+        ByteBuffer buffer = SCRATCH.get();
+        if (image.readRegisters(slaveId, functionCode, offset, buffer, 0, width) == 0L) {
+            return Double.NaN;
+        }
+        return RegisterCodec.decodeDouble(buffer, 0, dataTypes[handle]);
+    }
+
+    /**
+     * 点位在寄存器镜像中的更新时间
+     *
+     * @return 没有缓存时返回0
+     */
+    public long getTimestamp(RegisterImage image, int handle) {
+        check(handle);
+        return image.getTimestamp(slaveIds[handle], functionCodes[handle], offsets[handle], widths[handle]);
+    }
+
+    private void check(int handle) {
+        if (handle < 0 || handle >= size) {
+            throw new IllegalArgumentException("句柄不存在:" + handle);
+        }
+    }
+}
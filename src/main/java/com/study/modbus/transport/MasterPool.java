@@ -0,0 +1,189 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.ModbusFactory;
+import com.serotonin.modbus4j.exception.ModbusInitException;
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.serotonin.modbus4j.ip.IpParameters;
+import com.serotonin.modbus4j.ip.tcp.TcpMaster;
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同一个 ip:port 的 TcpMaster 连接池
+ * 多个 ModbusConnection(或同一网关后的多个 slaveId)共用最多 size 个长连接,
+ * 空闲连接先进先出,请求依次分摊到各个连接上,不同 slave 可以并行轮询
+ */
+public class MasterPool {
+
+    private static final Logger logger = Logger.getLogger(MasterPool.class);
+
+    private static final ModbusFactory modbusFactory = new ModbusFactory();
+
+    /**
+     * 所有连接池,通过 ip:port 管理
+     */
+    private static final Map<String, MasterPool> pools = new ConcurrentHashMap<>();
+
+    private final String ip;
+
+    private final int port;
+
+    private final int size;
+
+    /**
+     * 空闲连接
+     */
+    private final BlockingQueue<TcpMaster> idle;
+
+    /**
+     * 已创建的连接数
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * 引用计数,为0时关闭所有连接,只在 pools 的原子操作中修改
+     */
+    private volatile int references = 0;
+
+    /**
+     * 最后一个引用已释放,之后归还的连接直接关闭
+     */
+    private volatile boolean released = false;
+
+    /**
+     * 等待空闲连接的超时时间(毫秒)
+     */
+    private volatile long borrowTimeout = 5000L;
+
+    private MasterPool(String ip, int port, int size) {
+        this.ip = ip;
+        this.port = port;
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * 获取 ip:port 的连接池,不存在时创建,使用完毕后调用 release
+     *
+     * @param size 最大连接数,只在创建时有效
+     */
+    public static MasterPool acquire(String ip, int port, int size) {
+        return pools.compute(ip + ":" + port, (key, pool) -> {
+            if (pool == null) {
+                pool = new MasterPool(ip, port, Math.max(1, size));
+            }
+            pool.references++;
+            return pool;
+        });
+    }
+
+    /**
+     * 释放连接池的引用,最后一个引用释放时关闭所有连接
+     */
+    public void release() {
+        pools.computeIfPresent(ip + ":" + port, (key, pool) -> {
+            if (pool != this) {
+                return pool;
+            }
+            if (--references > 0) {
+                return pool;
+            }
+            //是否最后一个引用在原子操作中判断,不再读取 references
+            released = true;
+            return null;
+        });
+        if (released) {
+            closeIdle();
+        }
+    }
+
+    /**
+     * 关闭所有空闲连接
+     */
+    private void closeIdle() {
+        TcpMaster master;
+        while ((master = idle.poll()) != null) {
+            master.destroy();
+            created.decrementAndGet();
+        }
+    }
+
+    /**
+     * 借出一个连接,没有空闲连接且未达到上限时新建,否则等待 borrowTimeout
+     */
+    public TcpMaster borrow() throws ModbusTransportException {
+        TcpMaster master = idle.poll();
+        if (master != null) {
+            return master;
+        }
+        int count = created.get();
+        while (count < size) {
+            if (created.compareAndSet(count, count + 1)) {
+                try {
+                    return create();
+                } catch (ModbusInitException e) {
+                    created.decrementAndGet();
+                    throw new ModbusTransportException(e);
+                }
+            }
+            count = created.get();
+        }
+        try {
+            master = idle.poll(borrowTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModbusTransportException(e);
+        }
+        if (master == null) {
+            throw new ModbusTransportException("连接池没有空闲连接:" + ip + ":" + port);
+        }
+        return master;
+    }
+
+    /**
+     * 归还连接,通信失败的连接直接关闭,下次借用时重新创建
+     * 连接池已释放时直接关闭,避免长连接泄漏
+     */
+    public void giveBack(TcpMaster master, boolean broken) {
+        if (broken || released || !idle.offer(master)) {
+            master.destroy();
+            created.decrementAndGet();
+            return;
+        }
+        if (released) {
+            //放入空闲队列的同时连接池被释放
+            closeIdle();
+        }
+    }
+
+    private TcpMaster create() throws ModbusInitException {
+        IpParameters params = new IpParameters();
+        params.setHost(ip);
+        params.setPort(port);
+        TcpMaster master = (TcpMaster) modbusFactory.createTcpMaster(params, true);
+        master.init();
+        logger.info("连接池新建连接:" + ip + ":" + port + " " + created.get() + "/" + size);
+        return master;
+    }
+
+    public void setBorrowTimeout(long borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * 当前空闲的连接数
+     */
+    public int getIdle() {
+        return idle.size();
+    }
+}
@@ -0,0 +1,98 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.serotonin.modbus4j.ip.IpParameters;
+import com.serotonin.modbus4j.ip.tcp.TcpMaster;
+import com.serotonin.modbus4j.msg.ModbusMessage;
+import com.serotonin.modbus4j.msg.ModbusRequest;
+import com.serotonin.modbus4j.msg.ModbusResponse;
+import com.serotonin.modbus4j.msg.ReadCoilsRequest;
+import com.serotonin.modbus4j.msg.ReadDiscreteInputsRequest;
+import com.serotonin.modbus4j.msg.ReadHoldingRegistersRequest;
+import com.serotonin.modbus4j.msg.ReadInputRegistersRequest;
+import com.serotonin.modbus4j.msg.ReadResponse;
+import com.serotonin.modbus4j.sero.util.queue.ByteQueue;
+import com.study.modbus.metrics.ConnectionMetrics;
+
+/**
+ * 记录每个请求往返耗时和收发字节数的 TcpMaster
+ */
+public class MeteredTcpMaster extends TcpMaster {
+
+    /**
+     * MBAP 头中单元号之前的长度
+     */
+    private static final int MBAP_LENGTH = 6;
+
+    /**
+     * 读请求的帧长度：MBAP 头 + 单元号 + 功能码 + 起始地址 + 数量
+     */
+    private static final int READ_REQUEST_LENGTH = MBAP_LENGTH + 6;
+
+    private volatile ConnectionMetrics metrics;
+
+    public MeteredTcpMaster(IpParameters params, boolean keepAlive) {
+        super(params, keepAlive);
+    }
+
+    public void setMetrics(ConnectionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ModbusResponse sendImpl(ModbusRequest request) throws ModbusTransportException {
+        ConnectionMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return doSend(request);
+        }
+        int functionCode = request.getFunctionCode() & 0xFF;
+        metrics.requestSent(functionCode, requestLength(request));
+        long start = System.nanoTime();
+        ModbusResponse response;
+        try {
+            response = doSend(request);
+        } catch (ModbusTransportException e) {
+            metrics.requestFailed(functionCode, System.nanoTime() - start, ConnectionMetrics.isTimeout(e));
+            throw e;
+        }
+        long nanos = System.nanoTime() - start;
+        if (response == null) {
+            //modbus4j 对广播请求不等待应答
+            return null;
+        }
+        metrics.responseReceived(functionCode, nanos, responseLength(response), response.isException());
+        return response;
+    }
+
+    /**
+     * 实际发送请求
+     */
+    protected ModbusResponse doSend(ModbusRequest request) throws ModbusTransportException {
+        return super.sendImpl(request);
+    }
+
+    private static int requestLength(ModbusRequest request) {
+        if (request instanceof ReadHoldingRegistersRequest || request instanceof ReadInputRegistersRequest
+                || request instanceof ReadCoilsRequest || request instanceof ReadDiscreteInputsRequest) {
+            return READ_REQUEST_LENGTH;
+        }
+        return encodedLength(request);
+    }
+
+    private static int responseLength(ModbusResponse response) {
+        if (!response.isException() && response instanceof ReadResponse) {
+            //单元号 + 功能码 + 字节数 + 数据
+            return MBAP_LENGTH + 3 + ((ReadResponse) response).getData().length;
+        }
+        return encodedLength(response);
+    }
+
+    /**
+     * 写请求等不常用的报文按编码后的长度计算
+     */
+    private static int encodedLength(ModbusMessage message) {
+        ByteQueue queue = new ByteQueue(16);
+        message.write(queue);
+        return MBAP_LENGTH + queue.size();
+    }
+}
@@ -0,0 +1,292 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.BatchResults;
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.study.modbus.exception.SlaveErrorException;
+import com.study.modbus.image.RegisterImage;
+import com.study.modbus.metrics.ConnectionMetrics;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 流水线方式的 Modbus TCP 传输
+ * 一次批量读的所有请求块连续发出(最多 maxInFlight 个未应答),按 MBAP 事务号匹配响应,
+ * 一个轮询周期约等于一次往返加传输时间,而不是每个请求块一次往返
+ * 需要网关支持同一连接上多个未完成的事务
+ */
+public class PipelinedTcpTransport implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(PipelinedTcpTransport.class);
+
+    /**
+     * MBAP 报文头长度
+     */
+    private static final int MBAP_LENGTH = 7;
+
+    private final String host;
+
+    private final int port;
+
+    /**
+     * 读取响应超时时间(毫秒)
+     */
+    private final int timeout;
+
+    /**
+     * 同时未应答的最大请求数
+     */
+    private final int maxInFlight;
+
+    private Socket socket;
+
+    private DataInputStream in;
+
+    private OutputStream out;
+
+    /**
+     * 下一个事务号
+     */
+    private int nextTransactionId = 0;
+
+    /**
+     * 请求帧缓存,MBAP 头 + 功能码 + 起始地址 + 数量
+     */
+    private final byte[] frame = new byte[MBAP_LENGTH + 5];
+
+    /**
+     * 响应 PDU 缓存,Modbus 规定 PDU 最长 253 字节
+     */
+    private final byte[] pdu = new byte[253];
+
+    /**
+     * 每个请求的发送时间,用于计算往返耗时
+     */
+    private long[] sentTimes = new long[16];
+
+    private volatile ConnectionMetrics metrics;
+
+    /**
+     * 保护 socket 和缓存,不使用 synchronized,阻塞在 socket 上时不会固定虚拟线程的载体线程
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public PipelinedTcpTransport(String host, int port, int timeout, int maxInFlight) {
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * 流水线方式读取所有请求块
+     *
+     * @param blocks 请求块
+     * @return 所有点位的结果
+     * @throws ModbusTransportException 通信失败或 slave 返回异常响应
+     */
+    public <K> BatchResults<K> read(List<ReadBlock<K>> blocks) throws ModbusTransportException {
+        return read(blocks, null);
+    }
+
+    /**
+     * 流水线方式读取所有请求块,同时把响应数据写入寄存器镜像
+     *
+     * @param blocks 请求块
+     * @param image  寄存器镜像,为空时不写入
+     * @return 所有点位的结果
+     * @throws ModbusTransportException 通信失败或 slave 返回异常响应
+     */
+    public <K> BatchResults<K> read(List<ReadBlock<K>> blocks, RegisterImage image) throws ModbusTransportException {
+        BatchResults<K> results = new BatchResults<>();
+        read(blocks, image, results, null);
+        return results;
+    }
+
+    /**
+     * 流水线方式读取所有请求块,解析结果按 ReadBlock.getFirstSlot() 写入 values
+     *
+     * @param blocks  请求块
+     * @param image   寄存器镜像,为空时不写入
+     * @param results 解析结果,为空时不写入
+     * @param values  按下标保存的解析结果,为空时不写入
+     * @throws ModbusTransportException 通信失败或 slave 返回异常响应
+     */
+    public <K> void read(List<ReadBlock<K>> blocks, RegisterImage image, BatchResults<K> results, Object[] values) throws ModbusTransportException {
+        lock.lock();
+        try {
+            doRead(blocks, image, results, values);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <K> void doRead(List<ReadBlock<K>> blocks, RegisterImage image, BatchResults<K> results, Object[] values) throws ModbusTransportException {
+        int count = blocks.size();
+        if (count == 0) {
+            return;
+        }
+        int slaveId = blocks.get(0).getSlaveId();
+        int base = nextTransactionId;
+        nextTransactionId = (base + count) & 0xFFFF;
+        boolean[] done = new boolean[count];
+        ConnectionMetrics metrics = this.metrics;
+        if (sentTimes.length < count) {
+            sentTimes = new long[count];
+        }
+        SlaveErrorException error = null;
+        int sent = 0;
+        int received = 0;
+        try {
+            ensureOpen();
+            while (received < count) {
+                //没有出错时,窗口内的请求连续发出
+                if (error == null) {
+                    while (sent < count && sent - received < maxInFlight) {
+                        writeRequest(blocks.get(sent), (base + sent) & 0xFFFF);
+                        sentTimes[sent] = System.nanoTime();
+                        if (metrics != null) {
+                            metrics.requestSent(blocks.get(sent).getFunctionCode(), frame.length);
+                        }
+                        sent++;
+                    }
+                    out.flush();
+                } else if (received == sent) {
+                    break;
+                }
+
+                int transactionId = in.readUnsignedShort();
+                in.readUnsignedShort();
+                int length = in.readUnsignedShort();
+                in.readUnsignedByte();
+                int pduLength = length - 1;
+                if (pduLength <= 0 || pduLength > pdu.length) {
+                    throw new IOException("响应长度错误:" + length);
+                }
+                in.readFully(pdu, 0, pduLength);
+
+                int index = (transactionId - base) & 0xFFFF;
+                if (index >= sent || done[index]) {
+                    //上一次超时遗留的响应
+                    logger.debug("丢弃过期的响应,事务号:" + transactionId);
+                    continue;
+                }
+                done[index] = true;
+                received++;
+
+                ReadBlock<K> block = blocks.get(index);
+                int functionCode = pdu[0] & 0xFF;
+                if (metrics != null) {
+                    metrics.responseReceived(block.getFunctionCode(), System.nanoTime() - sentTimes[index],
+                            MBAP_LENGTH + pduLength, (functionCode & 0x80) != 0);
+                }
+                if ((functionCode & 0x80) != 0) {
+                    if (error == null) {
+                        error = new SlaveErrorException(block.getSlaveId(), functionCode & 0x7F, pdu[1] & 0xFF);
+                    }
+                    continue;
+                }
+                if (functionCode != block.getFunctionCode()) {
+                    throw new IOException("响应功能码不匹配:" + functionCode + " " + block);
+                }
+                int byteCount = pdu[1] & 0xFF;
+                if (byteCount > pduLength - 2) {
+                    throw new IOException("响应数据长度错误:" + byteCount + " " + block);
+                }
+                byte[] data = Arrays.copyOfRange(pdu, 2, 2 + byteCount);
+                if (image != null) {
+                    image.update(block.getSlaveId(), block.getFunctionCode(), block.getStartOffset(), block.getLength(), data, System.currentTimeMillis());
+                }
+                block.decode(data, results, values);
+            }
+        } catch (IOException e) {
+            if (metrics != null && received < sent) {
+                //记录第一个未应答的请求
+                int index = 0;
+                while (done[index]) {
+                    index++;
+                }
+                metrics.requestFailed(blocks.get(index).getFunctionCode(), System.nanoTime() - sentTimes[index],
+                        ConnectionMetrics.isTimeout(e));
+            }
+            close();
+            throw new ModbusTransportException(e, slaveId);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    public void setMetrics(ConnectionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private void writeRequest(ReadBlock<?> block, int transactionId) throws IOException {
+        byte[] frame = this.frame;
+        frame[0] = (byte) (transactionId >> 8);
+        frame[1] = (byte) transactionId;
+        //协议号固定为0
+        frame[2] = 0;
+        frame[3] = 0;
+        //后续字节数：单元号 + PDU
+        frame[4] = 0;
+        frame[5] = 6;
+        frame[6] = (byte) block.getSlaveId();
+        frame[7] = (byte) block.getFunctionCode();
+        frame[8] = (byte) (block.getStartOffset() >> 8);
+        frame[9] = (byte) block.getStartOffset();
+        frame[10] = (byte) (block.getLength() >> 8);
+        frame[11] = (byte) block.getLength();
+        out.write(frame);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (socket != null) {
+            return;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeout);
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            in = new DataInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        this.socket = socket;
+    }
+
+    /**
+     * 关闭连接,下一次读取时重新建立
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (socket == null) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.warn("关闭连接失败", e);
+            }
+            socket = null;
+            in = null;
+            out = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.exception.ModbusInitException;
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.serotonin.modbus4j.ip.IpParameters;
+import com.serotonin.modbus4j.ip.tcp.TcpMaster;
+import com.serotonin.modbus4j.msg.ModbusRequest;
+import com.serotonin.modbus4j.msg.ModbusResponse;
+
+/**
+ * 使用连接池的 TcpMaster
+ * 自身不持有连接,每个请求从 MasterPool 借出一个连接,应答后归还,
+ * 共用同一个 ip:port 的多个 master 可以在不同连接上并行通信
+ */
+public class PooledTcpMaster extends MeteredTcpMaster {
+
+    private final MasterPool pool;
+
+    private volatile boolean released = false;
+
+    public PooledTcpMaster(String ip, int port, int size) {
+        super(parameters(ip, port), false);
+        this.pool = MasterPool.acquire(ip, port, size);
+    }
+
+    /**
+     * 不建立自己的连接,借出一个池中的连接再归还,设备无法连接时抛出 ModbusInitException
+     */
+    @Override
+    public void init() throws ModbusInitException {
+        TcpMaster delegate;
+        try {
+            delegate = pool.borrow();
+        } catch (ModbusTransportException e) {
+            throw new ModbusInitException(e);
+        }
+        pool.giveBack(delegate, false);
+        super.init();
+    }
+
+    /**
+     * 不加锁,并发请求分摊到池中不同的连接上
+     */
+    @Override
+    protected ModbusResponse doSend(ModbusRequest request) throws ModbusTransportException {
+        TcpMaster delegate = pool.borrow();
+        boolean broken = true;
+        try {
+            delegate.setTimeout(getTimeout());
+            delegate.setRetries(getRetries());
+            ModbusResponse response = delegate.send(request);
+            broken = false;
+            return response;
+        } finally {
+            pool.giveBack(delegate, broken);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (!released) {
+            released = true;
+            pool.release();
+        }
+        super.destroy();
+    }
+
+    public MasterPool getPool() {
+        return pool;
+    }
+
+    private static IpParameters parameters(String ip, int port) {
+        IpParameters params = new IpParameters();
+        params.setHost(ip);
+        params.setPort(port);
+        return params;
+    }
+}
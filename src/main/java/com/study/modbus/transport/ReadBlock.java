@@ -0,0 +1,132 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.BatchRead;
+import com.serotonin.modbus4j.BatchResults;
+import com.serotonin.modbus4j.ModbusMaster;
+import com.serotonin.modbus4j.base.KeyedModbusLocator;
+import com.serotonin.modbus4j.base.ReadFunctionGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次读请求覆盖的连续地址块,以及从该块中解析的点位
+ * 功能码与 RegisterRange 一致：1 线圈,2 离散输入,3 保持寄存器,4 输入寄存器
+ */
+public class ReadBlock<K> {
+
+    private final int slaveId;
+
+    private final int functionCode;
+
+    /**
+     * 起始地址(从0开始)
+     */
+    private final int startOffset;
+
+    /**
+     * 读取的位数或寄存器数
+     */
+    private final int length;
+
+    private final List<KeyedModbusLocator<K>> locators;
+
+    /**
+     * 第一个点位在结果数组中的下标,同一次规划的块按顺序连续编号
+     */
+    private final int firstSlot;
+
+    public ReadBlock(int slaveId, int functionCode, int startOffset, int length, List<KeyedModbusLocator<K>> locators) {
+        this(slaveId, functionCode, startOffset, length, locators, 0);
+    }
+
+    public ReadBlock(int slaveId, int functionCode, int startOffset, int length, List<KeyedModbusLocator<K>> locators, int firstSlot) {
+        this.slaveId = slaveId;
+        this.functionCode = functionCode;
+        this.startOffset = startOffset;
+        this.length = length;
+        this.locators = locators;
+        this.firstSlot = firstSlot;
+    }
+
+    /**
+     * 按 modbus4j 的分组规则把 batchRead 拆分为读请求块
+     */
+    public static <K> List<ReadBlock<K>> of(BatchRead<K> batchRead, ModbusMaster master) {
+        List<ReadFunctionGroup<K>> groups = batchRead.getReadFunctionGroups(master);
+        List<ReadBlock<K>> blocks = new ArrayList<>(groups.size());
+        int slot = 0;
+        for (ReadFunctionGroup<K> group : groups) {
+            blocks.add(new ReadBlock<>(group.getSlaveAndRange().getSlaveId(), group.getSlaveAndRange().getRange(),
+                    group.getStartOffset(), group.getLength(), group.getLocators(), slot));
+            slot += group.getLocators().size();
+        }
+        return blocks;
+    }
+
+    /**
+     * 从响应数据中解析该块的所有点位
+     *
+     * @param data    响应中的数据部分(不含字节数)
+     * @param results 解析结果
+     */
+    public void decode(byte[] data, BatchResults<K> results) {
+        decode(data, results, null);
+    }
+
+    /**
+     * 从响应数据中解析该块的所有点位,第 i 个点位写入 values[firstSlot + i]
+     *
+     * @param data    响应中的数据部分(不含字节数)
+     * @param results 解析结果,为空时不写入
+     * @param values  按下标保存的解析结果,为空时不写入
+     */
+    public void decode(byte[] data, BatchResults<K> results, Object[] values) {
+        List<KeyedModbusLocator<K>> locators = this.locators;
+        for (int i = 0, size = locators.size(); i < size; i++) {
+            KeyedModbusLocator<K> locator = locators.get(i);
+            Object value = locator.bytesToValue(data, startOffset);
+            if (results != null) {
+                results.addResult(locator.getKey(), value);
+            }
+            if (values != null) {
+                values[firstSlot + i] = value;
+            }
+        }
+    }
+
+    public int getSlaveId() {
+        return slaveId;
+    }
+
+    public int getFunctionCode() {
+        return functionCode;
+    }
+
+    public int getStartOffset() {
+        return startOffset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public List<KeyedModbusLocator<K>> getLocators() {
+        return locators;
+    }
+
+    public int getFirstSlot() {
+        return firstSlot;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadBlock{" +
+                "slaveId=" + slaveId +
+                ", functionCode=" + functionCode +
+                ", startOffset=" + startOffset +
+                ", length=" + length +
+                ", locators=" + locators.size() +
+                '}';
+    }
+}
@@ -0,0 +1,148 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.BatchRead;
+import com.serotonin.modbus4j.ModbusMaster;
+import com.serotonin.modbus4j.base.KeyedModbusLocator;
+import com.serotonin.modbus4j.base.ReadFunctionGroup;
+import com.serotonin.modbus4j.code.RegisterRange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 读请求规划：把离散的点位合并成尽量少的 01/02/03/04 读请求
+ * 两个点位之间的空隙不超过 maxGap,且多读的字节数不超过一次往返的代价 roundTripBytes 时合并,
+ * 单个请求不超过协议上限 125 个寄存器或 2000 个线圈
+ */
+public class RequestPlanner {
+
+    /**
+     * 单次读取寄存器数上限
+     */
+    public static final int MAX_READ_REGISTERS = 125;
+
+    /**
+     * 单次读取线圈/离散输入数上限
+     */
+    public static final int MAX_READ_BITS = 2000;
+
+    /**
+     * 允许跨越的最大空隙(寄存器数或位数)
+     */
+    private final int maxGap;
+
+    /**
+     * 一次额外往返相当于多传输的字节数,用于权衡多读空隙与多发请求
+     */
+    private final int roundTripBytes;
+
+    /**
+     * 按 BatchRead 缓存规划结果,BatchRead 的点位变化后重新规划
+     */
+    private final Map<BatchRead<?>, Plan<?>> plans = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * @param maxGap         允许跨越的最大空隙(寄存器数或位数)
+     * @param roundTripBytes 一次往返相当于多传输的字节数,慢速链路应设置得更大
+     */
+    public RequestPlanner(int maxGap, int roundTripBytes) {
+        this.maxGap = maxGap;
+        this.roundTripBytes = roundTripBytes;
+    }
+
+    /**
+     * 规划 batchRead 的读请求,结果按 batchRead 缓存
+     */
+    @SuppressWarnings("unchecked")
+    public <K> List<ReadBlock<K>> plan(BatchRead<K> batchRead, ModbusMaster master) {
+        List<ReadFunctionGroup<K>> groups = batchRead.getReadFunctionGroups(master);
+        Plan<K> plan = (Plan<K>) plans.get(batchRead);
+        if (plan == null || plan.groups != groups) {
+            List<KeyedModbusLocator<K>> locators = new ArrayList<>();
+            for (ReadFunctionGroup<K> group : groups) {
+                locators.addAll(group.getLocators());
+            }
+            plan = new Plan<>(groups, plan(locators));
+            plans.put(batchRead, plan);
+        }
+        return plan.blocks;
+    }
+
+    /**
+     * 规划读请求,点位按请求块的顺序编号,见 ReadBlock.getFirstSlot()
+     */
+    public <K> List<ReadBlock<K>> plan(List<KeyedModbusLocator<K>> locators) {
+        List<KeyedModbusLocator<K>> sorted = new ArrayList<>(locators);
+        sorted.sort(Comparator.<KeyedModbusLocator<K>>comparingInt(l -> l.getSlaveAndRange().getSlaveId())
+                .thenComparingInt(l -> l.getSlaveAndRange().getRange())
+                .thenComparingInt(KeyedModbusLocator::getOffset));
+
+        List<ReadBlock<K>> blocks = new ArrayList<>();
+        List<KeyedModbusLocator<K>> current = null;
+        int slaveId = -1;
+        int range = -1;
+        int start = 0;
+        int end = 0;
+        int slot = 0;
+        for (KeyedModbusLocator<K> locator : sorted) {
+            int locatorSlaveId = locator.getSlaveAndRange().getSlaveId();
+            int locatorRange = locator.getSlaveAndRange().getRange();
+            int offset = locator.getOffset();
+            int endOffset = Math.max(offset, locator.getEndOffset());
+            if (current != null && locatorSlaveId == slaveId && locatorRange == range
+                    && canMerge(range, start, end, offset, endOffset)) {
+                current.add(locator);
+                end = Math.max(end, endOffset);
+                continue;
+            }
+            if (current != null) {
+                blocks.add(new ReadBlock<>(slaveId, range, start, end - start + 1, current, slot));
+                slot += current.size();
+            }
+            current = new ArrayList<>();
+            current.add(locator);
+            slaveId = locatorSlaveId;
+            range = locatorRange;
+            start = offset;
+            end = endOffset;
+        }
+        if (current != null) {
+            blocks.add(new ReadBlock<>(slaveId, range, start, end - start + 1, current, slot));
+        }
+        return blocks;
+    }
+
+    private boolean canMerge(int range, int start, int end, int offset, int endOffset) {
+        boolean bits = range == RegisterRange.COIL_STATUS || range == RegisterRange.INPUT_STATUS;
+        int length = Math.max(end, endOffset) - start + 1;
+        if (length > (bits ? MAX_READ_BITS : MAX_READ_REGISTERS)) {
+            return false;
+        }
+        int gap = offset - end - 1;
+        if (gap <= 0) {
+            return true;
+        }
+        if (gap > maxGap) {
+            return false;
+        }
+        //多读的字节数与一次往返的代价比较
+        int gapBytes = bits ? (gap + 7) / 8 : gap * 2;
+        return gapBytes <= roundTripBytes;
+    }
+
+    private static class Plan<K> {
+
+        private final List<ReadFunctionGroup<K>> groups;
+
+        private final List<ReadBlock<K>> blocks;
+
+        Plan(List<ReadFunctionGroup<K>> groups, List<ReadBlock<K>> blocks) {
+            this.groups = groups;
+            this.blocks = blocks;
+        }
+    }
+}
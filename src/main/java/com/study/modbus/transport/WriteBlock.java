@@ -0,0 +1,68 @@
+package com.study.modbus.transport;
+
+import com.study.modbus.entity.WriteBean;
+
+import java.util.List;
+
+/**
+ * 一次写请求覆盖的连续地址块
+ * 线圈使用 15 号功能码写入,寄存器使用 16 号功能码写入
+ */
+public class WriteBlock {
+
+    /**
+     * 起始地址(从0开始)
+     */
+    private final int startOffset;
+
+    /**
+     * 线圈值,写寄存器时为空
+     */
+    private final boolean[] coils;
+
+    /**
+     * 寄存器值,写线圈时为空
+     */
+    private final short[] registers;
+
+    /**
+     * 合并进该块的写入项
+     */
+    private final List<WriteBean> beans;
+
+    WriteBlock(int startOffset, boolean[] coils, short[] registers, List<WriteBean> beans) {
+        this.startOffset = startOffset;
+        this.coils = coils;
+        this.registers = registers;
+        this.beans = beans;
+    }
+
+    public boolean isCoil() {
+        return coils != null;
+    }
+
+    public int getStartOffset() {
+        return startOffset;
+    }
+
+    public boolean[] getCoils() {
+        return coils;
+    }
+
+    public short[] getRegisters() {
+        return registers;
+    }
+
+    public List<WriteBean> getBeans() {
+        return beans;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBlock{" +
+                "startOffset=" + startOffset +
+                ", " + (isCoil() ? "coils=" + coils.length : "registers=" + registers.length) +
+                ", beans=" + beans.size() +
+                '}';
+    }
+}
@@ -0,0 +1,166 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.study.modbus.entity.WriteBean;
+import com.study.modbus.tag.TagTable;
+import com.study.modbus.util.ModbusUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 写请求规划：按地址排序后把地址连续的线圈合并为 15 号功能码请求,寄存器合并为 16 号功能码请求
+ * 只合并严格连续的地址,跨越空隙会覆盖调用方没有要求写入的地址
+ * 单个请求不超过协议上限 1968 个线圈或 123 个寄存器
+ */
+public class WritePlanner {
+
+    /**
+     * 单次写入线圈数上限
+     */
+    public static final int MAX_WRITE_COILS = 1968;
+
+    /**
+     * 单次写入寄存器数上限
+     */
+    public static final int MAX_WRITE_REGISTERS = 123;
+
+    private WritePlanner() {
+    }
+
+    /**
+     * 规划写请求
+     *
+     * @param beans 写入项,地址格式如 00001、40001
+     * @return 写请求块,按地址顺序排列
+     * @throws IllegalArgumentException 地址或数据类型不支持
+     */
+    public static List<WriteBlock> plan(List<WriteBean> beans) {
+        return plan(beans, null);
+    }
+
+    /**
+     * 规划写请求,设置了句柄的写入项从 tags 中获取地址和数据类型
+     *
+     * @param beans 写入项
+     * @param tags  点位注册表,为空时只解析地址
+     * @return 写请求块,按地址顺序排列
+     * @throws IllegalArgumentException 地址或数据类型不支持
+     */
+    public static List<WriteBlock> plan(List<WriteBean> beans, TagTable tags) {
+        List<Item> items = new ArrayList<>(beans.size());
+        for (WriteBean bean : beans) {
+            items.add(parse(bean, tags));
+        }
+        //稳定排序,同一地址保持提交顺序
+        items.sort(Comparator.<Item>comparingInt(i -> i.coil ? 0 : 1).thenComparingInt(i -> i.offset));
+
+        List<WriteBlock> blocks = new ArrayList<>();
+        int from = 0;
+        for (int i = 1; i <= items.size(); i++) {
+            if (i < items.size()) {
+                Item first = items.get(from);
+                Item previous = items.get(i - 1);
+                Item item = items.get(i);
+                int end = previous.offset + previous.width;
+                int limit = item.coil ? MAX_WRITE_COILS : MAX_WRITE_REGISTERS;
+                if (item.coil == first.coil && item.offset == end && end + item.width - first.offset <= limit) {
+                    continue;
+                }
+            }
+            blocks.add(toBlock(items.subList(from, i)));
+            from = i;
+        }
+        return blocks;
+    }
+
+    private static WriteBlock toBlock(List<Item> items) {
+        Item first = items.get(0);
+        Item last = items.get(items.size() - 1);
+        int length = last.offset + last.width - first.offset;
+        List<WriteBean> beans = new ArrayList<>(items.size());
+        if (first.coil) {
+            boolean[] coils = new boolean[length];
+            for (Item item : items) {
+                coils[item.offset - first.offset] = item.coilValue;
+                beans.add(item.bean);
+            }
+            return new WriteBlock(first.offset, coils, null, beans);
+        }
+        short[] registers = new short[length];
+        for (Item item : items) {
+            System.arraycopy(item.registers, 0, registers, item.offset - first.offset, item.width);
+            beans.add(item.bean);
+        }
+        return new WriteBlock(first.offset, null, registers, beans);
+    }
+
+    /**
+     * 解析写入项的地址和数据,与逐个写入时的编码方式一致
+     */
+    private static Item parse(WriteBean bean, TagTable tags) {
+        int functionCode;
+        int offset;
+        int dataType;
+        if (tags != null && bean.getTag() >= 0) {
+            functionCode = tags.getFunctionCode(bean.getTag());
+            offset = tags.getOffset(bean.getTag());
+            dataType = tags.getDataType(bean.getTag());
+        } else {
+            String addr = bean.getAddr();
+            if (addr == null || addr.length() < 2) {
+                throw new IllegalArgumentException("地址格式错误:" + bean);
+            }
+            char type = addr.charAt(0);
+            functionCode = type == '0' ? RegisterRange.COIL_STATUS : type == '4' ? RegisterRange.HOLDING_REGISTER : -1;
+            if (functionCode < 0) {
+                throw new IllegalArgumentException("没有该写类型的functionId:" + type + ":" + bean.getDataType());
+            }
+            offset = Integer.parseInt(addr.substring(1)) - 1;
+            dataType = bean.getDataType();
+        }
+        switch (functionCode) {
+            case RegisterRange.COIL_STATUS:
+                return new Item(bean, true, offset, 1, (Boolean) bean.getData(), null);
+            case RegisterRange.HOLDING_REGISTER:
+                if (dataType == DataType.FOUR_BYTE_FLOAT) {
+                    short[] shorts = ModbusUtils.valueToShorts((Number) bean.getData());
+                    return new Item(bean, false, offset, shorts.length, false, shorts);
+                } else if (dataType == DataType.TWO_BYTE_INT_UNSIGNED || dataType == DataType.FOUR_BYTE_INT_SIGNED) {
+                    short[] shorts = new short[]{(short) ((Integer) bean.getData()).intValue()};
+                    return new Item(bean, false, offset, 1, false, shorts);
+                }
+            default:
+                throw new IllegalArgumentException("没有该写类型的functionId:" + functionCode + ":" + dataType);
+        }
+    }
+
+    private static class Item {
+
+        private final WriteBean bean;
+
+        private final boolean coil;
+
+        private final int offset;
+
+        /**
+         * 占用的线圈数或寄存器数
+         */
+        private final int width;
+
+        private final boolean coilValue;
+
+        private final short[] registers;
+
+        Item(WriteBean bean, boolean coil, int offset, int width, boolean coilValue, short[] registers) {
+            this.bean = bean;
+            this.coil = coil;
+            this.offset = offset;
+            this.width = width;
+            this.coilValue = coilValue;
+            this.registers = registers;
+        }
+    }
+}
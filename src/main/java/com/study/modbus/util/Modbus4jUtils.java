@@ -25,7 +25,10 @@ public class Modbus4jUtils {
 
     /**
      * 管理所有ModbusMaster,通过设备编号管理--deviceCode
+     *
+     * @deprecated 非线程安全且不能关闭连接,使用 {@link com.study.modbus.DeviceRegistry}
      */
+    @Deprecated
     public static HashMap<String, ModbusConnection> modbusMap = new HashMap<>();
 
     /**
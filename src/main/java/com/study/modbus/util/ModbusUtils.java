@@ -1,15 +1,25 @@
 package com.study.modbus.util;
 
+import com.serotonin.modbus4j.BatchResults;
 import com.serotonin.modbus4j.ModbusFactory;
 import com.serotonin.modbus4j.ModbusMaster;
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
 import com.serotonin.modbus4j.exception.ErrorResponseException;
 import com.serotonin.modbus4j.exception.ModbusInitException;
 import com.serotonin.modbus4j.exception.ModbusTransportException;
 import com.serotonin.modbus4j.ip.IpParameters;
 import com.serotonin.modbus4j.locator.BaseLocator;
 import com.serotonin.modbus4j.msg.*;
+import com.study.modbus.image.RegisterImage;
+import com.study.modbus.transport.MeteredTcpMaster;
+import com.study.modbus.transport.PooledTcpMaster;
+import com.study.modbus.transport.ReadBlock;
+import com.study.modbus.transport.WriteBlock;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * modbus通讯工具类,采用modbus4j实现
@@ -27,6 +37,17 @@ public class ModbusUtils {
      * @throws ModbusInitException
      */
     public static ModbusMaster getMaster(String ip, int port) throws ModbusInitException {
+        return getMaster(ip, port, false);
+    }
+
+    /**
+     * 获取master
+     *
+     * @param keepAlive 是否保持连接,为 true 时 init() 建立连接,连接失败抛出 ModbusInitException
+     * @return
+     * @throws ModbusInitException
+     */
+    public static ModbusMaster getMaster(String ip, int port, boolean keepAlive) throws ModbusInitException {
         IpParameters params = new IpParameters();
         params.setHost(ip);
         params.setPort(port);
@@ -34,9 +55,34 @@ public class ModbusUtils {
         // modbusFactory.createRtuMaster(wapper); //RTU 协议
         // modbusFactory.createUdpMaster(params);//UDP 协议
         // modbusFactory.createAsciiMaster(wrapper);//ASCII 协议
-        ModbusMaster master = modbusFactory.createTcpMaster(params, false);// TCP 协议
-        master.init();
+        ModbusMaster master = new MeteredTcpMaster(params, keepAlive);// TCP 协议,记录通信指标
+        try {
+            master.init();
+        } catch (ModbusInitException e) {
+            master.destroy();
+            throw e;
+        }
+
+        return master;
+    }
 
+    /**
+     * 获取使用连接池的master,同一个 ip:port 的master共用最多 size 个连接
+     * init() 从连接池借出一个连接再归还,连接失败抛出 ModbusInitException
+     *
+     * @param size 连接池大小,只在第一次创建该 ip:port 的连接池时有效
+     * @return
+     * @throws ModbusInitException
+     */
+    public static ModbusMaster getPooledMaster(String ip, int port, int size) throws ModbusInitException {
+        ModbusMaster master = new PooledTcpMaster(ip, port, size);
+        try {
+            master.init();
+        } catch (ModbusInitException e) {
+            //释放对连接池的引用
+            master.destroy();
+            throw e;
+        }
         return master;
     }
 
@@ -148,15 +194,61 @@ public class ModbusUtils {
      * @throws ErrorResponseException
      */
     public static float[] readHoldingRegisters(ModbusMaster master, int slaveId, int start, int len) throws ModbusTransportException, ErrorResponseException {
+        float[] floats = new float[len / 2];
+        readHoldingRegisters(master, slaveId, start, len, DataType.FOUR_BYTE_FLOAT, floats);
+        return floats;
+    }
 
-        ReadHoldingRegistersRequest request = new ReadHoldingRegistersRequest(slaveId, start, len);
-        ReadHoldingRegistersResponse response = (ReadHoldingRegistersResponse) master.send(request);
-        float[] floats = bytesToFloat(response.getData());
-//        float[] floats = shortsToFloat(response.getShortData());
-        if (response.isException())
-            throw new ErrorResponseException(request, response);
+    /**
+     * 批量读取保持寄存器,按数据类型解码到 dst 中,dst 可以在每次读取时重复使用
+     *
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType
+     * @param dst      解码结果
+     * @return 解码的个数
+     * @throws ModbusTransportException
+     * @throws ErrorResponseException
+     */
+    public static int readHoldingRegisters(ModbusMaster master, int slaveId, int start, int len, int dataType, float[] dst) throws ModbusTransportException, ErrorResponseException {
+        byte[] data = readHoldingRegistersGetByte(master, slaveId, start, len);
+        return RegisterCodec.decodeFloats(ByteBuffer.wrap(data), dataType, dst, 0, count(data, dataType, dst.length));
+    }
 
-        return floats;
+    /**
+     * 批量读取保持寄存器,按数据类型解码为 int,适用于2字节整数、4字节有符号整数、BCD 和 FOUR_BYTE_MOD_10K
+     *
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType
+     * @param dst      解码结果
+     * @return 解码的个数
+     * @throws IllegalArgumentException 数据类型超出 int 的范围
+     */
+    public static int readHoldingRegisters(ModbusMaster master, int slaveId, int start, int len, int dataType, int[] dst) throws ModbusTransportException, ErrorResponseException {
+        byte[] data = readHoldingRegistersGetByte(master, slaveId, start, len);
+        return RegisterCodec.decodeInts(ByteBuffer.wrap(data), dataType, dst, 0, count(data, dataType, dst.length));
+    }
+
+    /**
+     * 批量读取保持寄存器,按数据类型解码为 long,适用于所有整数类型
+     *
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType
+     * @param dst      解码结果
+     * @return 解码的个数
+     * @throws IllegalArgumentException 浮点类型
+     */
+    public static int readHoldingRegisters(ModbusMaster master, int slaveId, int start, int len, int dataType, long[] dst) throws ModbusTransportException, ErrorResponseException {
+        byte[] data = readHoldingRegistersGetByte(master, slaveId, start, len);
+        return RegisterCodec.decodeLongs(ByteBuffer.wrap(data), dataType, dst, 0, count(data, dataType, dst.length));
+    }
+
+    /**
+     * 批量读取保持寄存器,按数据类型解码为 double,适用于所有数值类型
+     *
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType
+     * @param dst      解码结果
+     * @return 解码的个数
+     */
+    public static int readHoldingRegisters(ModbusMaster master, int slaveId, int start, int len, int dataType, double[] dst) throws ModbusTransportException, ErrorResponseException {
+        byte[] data = readHoldingRegistersGetByte(master, slaveId, start, len);
+        return RegisterCodec.decodeDoubles(ByteBuffer.wrap(data), dataType, dst, 0, count(data, dataType, dst.length));
     }
 
     /**
@@ -192,14 +284,85 @@ public class ModbusUtils {
      * @throws ErrorResponseException
      */
     public static float[] readInputRegistersRange(ModbusMaster master, int slaveId, int start, int len) throws ModbusTransportException, ErrorResponseException {
+        float[] floats = new float[len / 2];
+        readInputRegistersRange(master, slaveId, start, len, DataType.FOUR_BYTE_FLOAT, floats);
+        return floats;
+    }
+
+    /**
+     * 批量读取输入寄存器,按数据类型解码到 dst 中,dst 可以在每次读取时重复使用
+     *
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType
+     * @param dst      解码结果
+     * @return 解码的个数
+     * @throws ModbusTransportException
+     * @throws ErrorResponseException
+     */
+    public static int readInputRegistersRange(ModbusMaster master, int slaveId, int start, int len, int dataType, float[] dst) throws ModbusTransportException, ErrorResponseException {
+        byte[] data = readInputRegistersGetByte(master, slaveId, start, len);
+        return RegisterCodec.decodeFloats(ByteBuffer.wrap(data), dataType, dst, 0, count(data, dataType, dst.length));
+    }
+
+    /**
+     * 批量读取输入寄存器,按数据类型解码为 int,适用于2字节整数、4字节有符号整数、BCD 和 FOUR_BYTE_MOD_10K
+     *
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType
+     * @param dst      解码结果
+     * @return 解码的个数
+     * @throws IllegalArgumentException 数据类型超出 int 的范围
+     */
+    public static int readInputRegistersRange(ModbusMaster master, int slaveId, int start, int len, int dataType, int[] dst) throws ModbusTransportException, ErrorResponseException {
+        byte[] data = readInputRegistersGetByte(master, slaveId, start, len);
+        return RegisterCodec.decodeInts(ByteBuffer.wrap(data), dataType, dst, 0, count(data, dataType, dst.length));
+    }
+
+    /**
+     * 批量读取输入寄存器,按数据类型解码为 long,适用于所有整数类型
+     *
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType
+     * @param dst      解码结果
+     * @return 解码的个数
+     * @throws IllegalArgumentException 浮点类型
+     */
+    public static int readInputRegistersRange(ModbusMaster master, int slaveId, int start, int len, int dataType, long[] dst) throws ModbusTransportException, ErrorResponseException {
+        byte[] data = readInputRegistersGetByte(master, slaveId, start, len);
+        return RegisterCodec.decodeLongs(ByteBuffer.wrap(data), dataType, dst, 0, count(data, dataType, dst.length));
+    }
+
+    /**
+     * 批量读取输入寄存器,按数据类型解码为 double,适用于所有数值类型
+     *
+     * @param dataType 数据类型,来自com.serotonin.modbus4j.code.DataType
+     * @param dst      解码结果
+     * @return 解码的个数
+     */
+    public static int readInputRegistersRange(ModbusMaster master, int slaveId, int start, int len, int dataType, double[] dst) throws ModbusTransportException, ErrorResponseException {
+        byte[] data = readInputRegistersGetByte(master, slaveId, start, len);
+        return RegisterCodec.decodeDoubles(ByteBuffer.wrap(data), dataType, dst, 0, count(data, dataType, dst.length));
+    }
+
+    /**
+     * 读取输入寄存器的原始数据
+     */
+    private static byte[] readInputRegistersGetByte(ModbusMaster master, int slaveId, int start, int len) throws ModbusTransportException, ErrorResponseException {
         ReadInputRegistersRequest request = new ReadInputRegistersRequest(slaveId, start, len);
         ReadInputRegistersResponse response = (ReadInputRegistersResponse) master.send(request);
-        float[] floats = bytesToFloat(response.getData());
-//        float[] floats = shortsToFloat(response.getShortData());
         if (response.isException())
             throw new ErrorResponseException(request, response);
+        return response.getData();
+    }
 
-        return floats;
+    /**
+     * 应答数据可以解码的个数
+     *
+     * @throws IllegalArgumentException 不支持的数据类型或 dst 放不下
+     */
+    private static int count(byte[] data, int dataType, int capacity) {
+        int count = data.length / RegisterCodec.byteLength(dataType);
+        if (count > capacity) {
+            throw new IllegalArgumentException("dst 长度不足:" + capacity + " < " + count);
+        }
+        return count;
     }
 
 
@@ -221,6 +384,86 @@ public class ModbusUtils {
         return value;
     }
 
+    /**
+     * 逐个发送读请求块并解析结果,请求块通常由 RequestPlanner 规划
+     *
+     * @param master
+     * @param blocks
+     * @return
+     * @throws ModbusTransportException
+     * @throws ErrorResponseException
+     */
+    public static <K> BatchResults<K> readBlocks(ModbusMaster master, List<ReadBlock<K>> blocks) throws ModbusTransportException, ErrorResponseException {
+        return readBlocks(master, blocks, null);
+    }
+
+    /**
+     * 逐个发送读请求块并解析结果,同时把响应数据写入寄存器镜像
+     *
+     * @param image 寄存器镜像,为空时不写入
+     * @return
+     * @throws ModbusTransportException
+     * @throws ErrorResponseException
+     */
+    public static <K> BatchResults<K> readBlocks(ModbusMaster master, List<ReadBlock<K>> blocks, RegisterImage image) throws ModbusTransportException, ErrorResponseException {
+        BatchResults<K> results = new BatchResults<>();
+        readBlocks(master, blocks, image, results, null);
+        return results;
+    }
+
+    /**
+     * 逐个发送读请求块,解析结果按 ReadBlock.getFirstSlot() 写入 values,不做 key 的 hash 查找
+     *
+     * @param image   寄存器镜像,为空时不写入
+     * @param results 解析结果,为空时不写入
+     * @param values  按下标保存的解析结果,为空时不写入
+     * @throws ModbusTransportException
+     * @throws ErrorResponseException
+     */
+    public static <K> void readBlocks(ModbusMaster master, List<ReadBlock<K>> blocks, RegisterImage image, BatchResults<K> results, Object[] values) throws ModbusTransportException, ErrorResponseException {
+        for (ReadBlock<K> block : blocks) {
+            byte[] data = readBlock(master, block);
+            if (image != null) {
+                image.update(block.getSlaveId(), block.getFunctionCode(), block.getStartOffset(), block.getLength(), data, System.currentTimeMillis());
+            }
+            block.decode(data, results, values);
+        }
+    }
+
+    /**
+     * 读取一个请求块,返回响应中的数据部分
+     *
+     * @param master
+     * @param block
+     * @return
+     * @throws ModbusTransportException
+     * @throws ErrorResponseException
+     */
+    public static byte[] readBlock(ModbusMaster master, ReadBlock<?> block) throws ModbusTransportException, ErrorResponseException {
+        int slaveId = block.getSlaveId();
+        ModbusRequest request;
+        switch (block.getFunctionCode()) {
+            case RegisterRange.COIL_STATUS:
+                request = new ReadCoilsRequest(slaveId, block.getStartOffset(), block.getLength());
+                break;
+            case RegisterRange.INPUT_STATUS:
+                request = new ReadDiscreteInputsRequest(slaveId, block.getStartOffset(), block.getLength());
+                break;
+            case RegisterRange.HOLDING_REGISTER:
+                request = new ReadHoldingRegistersRequest(slaveId, block.getStartOffset(), block.getLength());
+                break;
+            case RegisterRange.INPUT_REGISTER:
+                request = new ReadInputRegistersRequest(slaveId, block.getStartOffset(), block.getLength());
+                break;
+            default:
+                throw new ModbusTransportException("不支持的功能码:" + block.getFunctionCode(), slaveId);
+        }
+        ReadResponse response = (ReadResponse) master.send(request);
+        if (response.isException())
+            throw new ErrorResponseException(request, response);
+        return response.getData();
+    }
+
     /**
      * 写 [5 WRITE  Coil Status]类型 模拟量数据
      *
@@ -293,6 +536,27 @@ public class ModbusUtils {
 
     }
 
+    /**
+     * 写入一个写请求块,线圈使用 15 号功能码,多个寄存器使用 16 号功能码,单个寄存器使用 6 号功能码
+     *
+     * @param master
+     * @param slaveId
+     * @param block   由 WritePlanner 规划的写请求块
+     * @return
+     * @throws ModbusTransportException
+     * @throws ErrorResponseException
+     */
+    public static boolean writeBlock(ModbusMaster master, int slaveId, WriteBlock block) throws ModbusTransportException, ErrorResponseException {
+        if (block.isCoil()) {
+            return writeCoils(master, slaveId, block.getStartOffset(), block.getCoils());
+        }
+        short[] registers = block.getRegisters();
+        if (registers.length == 1) {
+            return writeRegister(master, slaveId, block.getStartOffset(), registers[0]);
+        }
+        return writeRegisters(master, slaveId, block.getStartOffset(), registers);
+    }
+
     /**
      * 不知道如何使用
      *
@@ -332,11 +596,9 @@ public class ModbusUtils {
      * @return
      */
     public static float[] shortsToFloat(short[] shorts) {
-        float[] floats = new float[shorts.length / 2];
-        for (int i = 0; i < shorts.length; i += 2) {
-            floats[i / 2] = Float.intBitsToFloat((shorts[i] & 65535) << 16 | (shorts[i + 1] & 65535));
-        }
-        return floats;
+        ByteBuffer buffer = ByteBuffer.allocate(shorts.length * 2);
+        buffer.asShortBuffer().put(shorts);
+        return bytesToFloat(buffer.array());
     }
 
     /**
@@ -347,12 +609,21 @@ public class ModbusUtils {
      */
     public static float[] bytesToFloat(byte[] data) {
         float[] floats = new float[data.length / 4];
-        for (int i = 0, index = 0; i < data.length; i += 4, index++) {
-            floats[index] = Float.intBitsToFloat((data[i] & 255) << 24 | (data[i + 1] & 255) << 16 | (data[i + 2] & 255) << 8 | data[i + 3] & 255);
-        }
+        bytesToFloat(data, floats);
         return floats;
     }
 
+    /**
+     * 将byte 装换成float,结果写入 dst
+     *
+     * @param data
+     * @param dst
+     * @return 转换的个数
+     */
+    public static int bytesToFloat(byte[] data, float[] dst) {
+        return RegisterCodec.decodeFloats(ByteBuffer.wrap(data), DataType.FOUR_BYTE_FLOAT, dst, 0, data.length / 4);
+    }
+
     /**
      * 将byte 装换成 boolean
      *
@@ -361,13 +632,22 @@ public class ModbusUtils {
      * @return
      */
     public static boolean[] bytesToBoolean(byte[] data, int len) {
-
         boolean[] result = new boolean[len];
-        for (int i = 0; i < len; i++) {
-            result[i] = (data[i / 8] >> (i % 8) & 1) == 1;
-        }
+        bytesToBoolean(data, len, result);
         return result;
     }
 
+    /**
+     * 将byte 装换成 boolean,结果写入 dst
+     *
+     * @param data
+     * @param len  需要的长度
+     * @param dst
+     * @return 转换的个数
+     */
+    public static int bytesToBoolean(byte[] data, int len, boolean[] dst) {
+        return RegisterCodec.decodeBits(ByteBuffer.wrap(data), dst, 0, len);
+    }
+
 
 }
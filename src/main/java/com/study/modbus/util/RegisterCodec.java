@@ -0,0 +1,313 @@
+package com.study.modbus.util;
+
+import com.serotonin.modbus4j.code.DataType;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * 寄存器数据解码,与 modbus4j NumericLocator 的解码规则一致
+ * 直接读取 ByteBuffer 中的数据,从 position 开始按数据类型的宽度连续解码到调用方提供的数组中,
+ * 不修改 position,不分配对象,数组可以在每次轮询中重复使用
+ * 字符串类型(CHAR/VARCHAR)和寄存器位(BINARY)不在此处理
+ */
+public class RegisterCodec {
+
+    private RegisterCodec() {
+    }
+
+    /**
+     * 数据类型占用的字节数
+     *
+     * @throws IllegalArgumentException 不支持的数据类型
+     */
+    public static int byteLength(int dataType) {
+        switch (dataType) {
+            case DataType.TWO_BYTE_INT_UNSIGNED:
+            case DataType.TWO_BYTE_INT_SIGNED:
+            case DataType.TWO_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.TWO_BYTE_INT_SIGNED_SWAPPED:
+            case DataType.TWO_BYTE_BCD:
+                return 2;
+            case DataType.FOUR_BYTE_INT_UNSIGNED:
+            case DataType.FOUR_BYTE_INT_SIGNED:
+            case DataType.FOUR_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.FOUR_BYTE_INT_SIGNED_SWAPPED:
+            case DataType.FOUR_BYTE_FLOAT:
+            case DataType.FOUR_BYTE_FLOAT_SWAPPED:
+            case DataType.FOUR_BYTE_BCD:
+            case DataType.FOUR_BYTE_BCD_SWAPPED:
+            case DataType.FOUR_BYTE_MOD_10K:
+            case DataType.FOUR_BYTE_MOD_10K_SWAPPED:
+                return 4;
+            case DataType.SIX_BYTE_MOD_10K:
+                return 6;
+            case DataType.EIGHT_BYTE_INT_UNSIGNED:
+            case DataType.EIGHT_BYTE_INT_SIGNED:
+            case DataType.EIGHT_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.EIGHT_BYTE_INT_SIGNED_SWAPPED:
+            case DataType.EIGHT_BYTE_FLOAT:
+            case DataType.EIGHT_BYTE_FLOAT_SWAPPED:
+            case DataType.EIGHT_BYTE_MOD_10K:
+                return 8;
+            default:
+                throw new IllegalArgumentException("不支持的数据类型:" + dataType);
+        }
+    }
+
+    /**
+     * 解码为 int,适用于2字节整数、4字节有符号整数、BCD 和 FOUR_BYTE_MOD_10K
+     *
+     * @return 解码的个数
+     * @throws IllegalArgumentException 数据类型超出 int 的范围
+     */
+    public static int decodeInts(ByteBuffer data, int dataType, int[] dst, int dstOffset, int count) {
+        switch (dataType) {
+            case DataType.FOUR_BYTE_INT_UNSIGNED:
+            case DataType.FOUR_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.FOUR_BYTE_FLOAT:
+            case DataType.FOUR_BYTE_FLOAT_SWAPPED:
+            case DataType.SIX_BYTE_MOD_10K:
+            case DataType.EIGHT_BYTE_INT_UNSIGNED:
+            case DataType.EIGHT_BYTE_INT_SIGNED:
+            case DataType.EIGHT_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.EIGHT_BYTE_INT_SIGNED_SWAPPED:
+            case DataType.EIGHT_BYTE_FLOAT:
+            case DataType.EIGHT_BYTE_FLOAT_SWAPPED:
+            case DataType.EIGHT_BYTE_MOD_10K:
+                throw new IllegalArgumentException("数据类型不能解码为int:" + dataType);
+            default:
+        }
+        int width = byteLength(dataType);
+        int position = data.position();
+        for (int i = 0; i < count; i++, position += width) {
+            dst[dstOffset + i] = (int) decodeLong(data, position, dataType);
+        }
+        return count;
+    }
+
+    /**
+     * 解码为 long,适用于所有整数类型,EIGHT_BYTE_INT_UNSIGNED 按无符号解释
+     *
+     * @return 解码的个数
+     * @throws IllegalArgumentException 浮点类型
+     */
+    public static int decodeLongs(ByteBuffer data, int dataType, long[] dst, int dstOffset, int count) {
+        if (isFloat(dataType)) {
+            throw new IllegalArgumentException("数据类型不能解码为long:" + dataType);
+        }
+        int width = byteLength(dataType);
+        int position = data.position();
+        for (int i = 0; i < count; i++, position += width) {
+            dst[dstOffset + i] = decodeLong(data, position, dataType);
+        }
+        return count;
+    }
+
+    /**
+     * 解码为 float,适用于所有数值类型,非4字节浮点类型可能损失精度
+     *
+     * @return 解码的个数
+     */
+    public static int decodeFloats(ByteBuffer data, int dataType, float[] dst, int dstOffset, int count) {
+        int width = byteLength(dataType);
+        int position = data.position();
+        for (int i = 0; i < count; i++, position += width) {
+            switch (dataType) {
+                case DataType.FOUR_BYTE_FLOAT:
+                    dst[dstOffset + i] = Float.intBitsToFloat(data.getInt(position));
+                    break;
+                case DataType.FOUR_BYTE_FLOAT_SWAPPED:
+                    dst[dstOffset + i] = Float.intBitsToFloat(swapWords(data.getInt(position)));
+                    break;
+                default:
+                    dst[dstOffset + i] = (float) decodeDouble(data, position, dataType);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 解码为 double,适用于所有数值类型
+     *
+     * @return 解码的个数
+     */
+    public static int decodeDoubles(ByteBuffer data, int dataType, double[] dst, int dstOffset, int count) {
+        int width = byteLength(dataType);
+        int position = data.position();
+        for (int i = 0; i < count; i++, position += width) {
+            dst[dstOffset + i] = decodeDouble(data, position, dataType);
+        }
+        return count;
+    }
+
+    /**
+     * 解码线圈或离散输入,每个字节从低位开始
+     *
+     * @return 解码的个数
+     */
+    public static int decodeBits(ByteBuffer data, boolean[] dst, int dstOffset, int count) {
+        int position = data.position();
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = (data.get(position + (i >> 3)) >> (i & 7) & 1) == 1;
+        }
+        return count;
+    }
+
+    /**
+     * 解码一个数值
+     *
+     * @param position 绝对位置
+     */
+    public static double decodeDouble(ByteBuffer data, int position, int dataType) {
+        switch (dataType) {
+            case DataType.FOUR_BYTE_FLOAT:
+                return Float.intBitsToFloat(data.getInt(position));
+            case DataType.FOUR_BYTE_FLOAT_SWAPPED:
+                return Float.intBitsToFloat(swapWords(data.getInt(position)));
+            case DataType.EIGHT_BYTE_FLOAT:
+                return Double.longBitsToDouble(data.getLong(position));
+            case DataType.EIGHT_BYTE_FLOAT_SWAPPED:
+                return Double.longBitsToDouble(swapWords(data.getLong(position)));
+            case DataType.EIGHT_BYTE_INT_UNSIGNED:
+            case DataType.EIGHT_BYTE_INT_UNSIGNED_SWAPPED:
+                long value = decodeLong(data, position, dataType);
+                return value >= 0 ? value : (double) (value >>> 1) * 2 + (value & 1);
+            default:
+                return decodeLong(data, position, dataType);
+        }
+    }
+
+    /**
+     * 解码一个整数
+     *
+     * @param position 绝对位置
+     * @throws IllegalArgumentException 浮点类型或不支持的数据类型
+     */
+    public static long decodeLong(ByteBuffer data, int position, int dataType) {
+        switch (dataType) {
+            case DataType.TWO_BYTE_INT_UNSIGNED:
+                return data.getShort(position) & 0xFFFF;
+            case DataType.TWO_BYTE_INT_SIGNED:
+                return data.getShort(position);
+            case DataType.TWO_BYTE_INT_UNSIGNED_SWAPPED:
+                return Short.reverseBytes(data.getShort(position)) & 0xFFFF;
+            case DataType.TWO_BYTE_INT_SIGNED_SWAPPED:
+                return Short.reverseBytes(data.getShort(position));
+            case DataType.FOUR_BYTE_INT_UNSIGNED:
+                return data.getInt(position) & 0xFFFFFFFFL;
+            case DataType.FOUR_BYTE_INT_SIGNED:
+                return data.getInt(position);
+            case DataType.FOUR_BYTE_INT_UNSIGNED_SWAPPED:
+                return swapWords(data.getInt(position)) & 0xFFFFFFFFL;
+            case DataType.FOUR_BYTE_INT_SIGNED_SWAPPED:
+                return swapWords(data.getInt(position));
+            case DataType.EIGHT_BYTE_INT_UNSIGNED:
+            case DataType.EIGHT_BYTE_INT_SIGNED:
+                return data.getLong(position);
+            case DataType.EIGHT_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.EIGHT_BYTE_INT_SIGNED_SWAPPED:
+                return swapWords(data.getLong(position));
+            case DataType.TWO_BYTE_BCD:
+                return bcd(data, position, 2);
+            case DataType.FOUR_BYTE_BCD:
+                return bcd(data, position, 4);
+            case DataType.FOUR_BYTE_BCD_SWAPPED:
+                return bcd(data, position + 2, 2) * 10000 + bcd(data, position, 2);
+            case DataType.FOUR_BYTE_MOD_10K:
+                return register(data, position) * 10000L + register(data, position + 2);
+            case DataType.FOUR_BYTE_MOD_10K_SWAPPED:
+                return register(data, position + 2) * 10000L + register(data, position);
+            case DataType.SIX_BYTE_MOD_10K:
+                return (register(data, position) * 10000L + register(data, position + 2)) * 10000L
+                        + register(data, position + 4);
+            case DataType.EIGHT_BYTE_MOD_10K:
+                return ((register(data, position) * 10000L + register(data, position + 2)) * 10000L
+                        + register(data, position + 4)) * 10000L + register(data, position + 6);
+            default:
+                throw new IllegalArgumentException("数据类型不能解码为整数:" + dataType);
+        }
+    }
+
+    /**
+     * 解码一个数值,装箱类型与 modbus4j NumericLocator 一致：
+     * 2字节无符号为 Integer、有符号和 TWO_BYTE_BCD 为 Short,4字节无符号为 Long、有符号和 FOUR_BYTE_BCD 为 Integer,
+     * 8字节有符号为 Long,8字节无符号和 MOD_10K 为 BigInteger,浮点为 Float/Double
+     *
+     * @param position 绝对位置
+     * @throws IllegalArgumentException 不支持的数据类型
+     */
+    public static Number decodeNumber(ByteBuffer data, int position, int dataType) {
+        switch (dataType) {
+            case DataType.TWO_BYTE_INT_UNSIGNED:
+            case DataType.TWO_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.FOUR_BYTE_INT_SIGNED:
+            case DataType.FOUR_BYTE_INT_SIGNED_SWAPPED:
+            case DataType.FOUR_BYTE_BCD:
+            case DataType.FOUR_BYTE_BCD_SWAPPED:
+                return (int) decodeLong(data, position, dataType);
+            case DataType.TWO_BYTE_INT_SIGNED:
+            case DataType.TWO_BYTE_INT_SIGNED_SWAPPED:
+            case DataType.TWO_BYTE_BCD:
+                return (short) decodeLong(data, position, dataType);
+            case DataType.FOUR_BYTE_INT_UNSIGNED:
+            case DataType.FOUR_BYTE_INT_UNSIGNED_SWAPPED:
+            case DataType.EIGHT_BYTE_INT_SIGNED:
+            case DataType.EIGHT_BYTE_INT_SIGNED_SWAPPED:
+                return decodeLong(data, position, dataType);
+            case DataType.EIGHT_BYTE_INT_UNSIGNED:
+            case DataType.EIGHT_BYTE_INT_UNSIGNED_SWAPPED:
+                long value = decodeLong(data, position, dataType);
+                return value >= 0 ? BigInteger.valueOf(value)
+                        : BigInteger.valueOf(value >>> 1).shiftLeft(1).or(BigInteger.valueOf(value & 1));
+            case DataType.FOUR_BYTE_MOD_10K:
+            case DataType.FOUR_BYTE_MOD_10K_SWAPPED:
+            case DataType.SIX_BYTE_MOD_10K:
+            case DataType.EIGHT_BYTE_MOD_10K:
+                return BigInteger.valueOf(decodeLong(data, position, dataType));
+            case DataType.FOUR_BYTE_FLOAT:
+            case DataType.FOUR_BYTE_FLOAT_SWAPPED:
+                return (float) decodeDouble(data, position, dataType);
+            case DataType.EIGHT_BYTE_FLOAT:
+            case DataType.EIGHT_BYTE_FLOAT_SWAPPED:
+                return decodeDouble(data, position, dataType);
+            default:
+                throw new IllegalArgumentException("不支持的数据类型:" + dataType);
+        }
+    }
+
+    private static boolean isFloat(int dataType) {
+        return dataType == DataType.FOUR_BYTE_FLOAT || dataType == DataType.FOUR_BYTE_FLOAT_SWAPPED
+                || dataType == DataType.EIGHT_BYTE_FLOAT || dataType == DataType.EIGHT_BYTE_FLOAT_SWAPPED;
+    }
+
+    private static int register(ByteBuffer data, int position) {
+        return data.getShort(position) & 0xFFFF;
+    }
+
+    /**
+     * 每4位一个十进制数字,高位在前
+     */
+    private static long bcd(ByteBuffer data, int position, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int b = data.get(position + i);
+            value = value * 100 + ((b >> 4) & 0xF) * 10 + (b & 0xF);
+        }
+        return value;
+    }
+
+    /**
+     * 交换两个寄存器的顺序
+     */
+    private static int swapWords(int value) {
+        return (value << 16) | (value >>> 16);
+    }
+
+    /**
+     * 反转四个寄存器的顺序
+     */
+    private static long swapWords(long value) {
+        return ((long) swapWords((int) value) << 32) | (swapWords((int) (value >>> 32)) & 0xFFFFFFFFL);
+    }
+}
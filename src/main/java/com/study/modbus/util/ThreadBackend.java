@@ -0,0 +1,178 @@
+package com.study.modbus.util;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程后端：默认使用平台线程,JDK 21 及以上可以开启虚拟线程
+ * 开启后没有使用 PollEngine 的连接,每台设备的轮询循环和每个阻塞命令都在虚拟线程上执行,
+ * 内存占用与正在进行的通信成正比,不再是每个线程 1MB 的栈
+ * 通过反射调用 Thread.ofVirtual(),仍然使用 Java 8 编译和运行
+ * 开启方式：启动参数 -Dmodbus.virtualThreads=true,或在创建连接前调用 useVirtualThreads(true)
+ * 注意：modbus4j 的 TcpMaster.sendImpl 是 synchronized 方法,JDK 24 之前在其中阻塞会固定载体线程,
+ * 需要大量设备并发通信时应通过 -Djdk.virtualThreadScheduler.parallelism 增加载体线程或升级 JDK
+ */
+public final class ThreadBackend {
+
+    private static final Logger logger = Logger.getLogger(ThreadBackend.class);
+
+    /**
+     * Thread.ofVirtual(),不支持时为空
+     */
+    private static final Method OF_VIRTUAL;
+
+    private static final Method BUILDER_NAME;
+
+    private static final Method BUILDER_PREFIX;
+
+    private static final Method BUILDER_UNSTARTED;
+
+    private static final Method BUILDER_FACTORY;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    private static volatile boolean virtual;
+
+    /**
+     * 平台线程的命令执行线程池
+     */
+    private static volatile ExecutorService platformExecutor;
+
+    /**
+     * 虚拟线程的命令执行器,每个任务一个虚拟线程
+     */
+    private static volatile ExecutorService virtualExecutor;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method prefix = null;
+        Method unstarted = null;
+        Method factory = null;
+        Method perTask = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            prefix = builder.getMethod("name", String.class, long.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+            factory = builder.getMethod("factory");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_PREFIX = prefix;
+        BUILDER_UNSTARTED = unstarted;
+        BUILDER_FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = perTask;
+        if (Boolean.getBoolean("modbus.virtualThreads")) {
+            if (OF_VIRTUAL != null) {
+                virtual = true;
+            } else {
+                logger.warn("当前 JDK 不支持虚拟线程,使用平台线程");
+            }
+        }
+    }
+
+    private ThreadBackend() {
+    }
+
+    /**
+     * 当前 JDK 是否支持虚拟线程
+     */
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 是否使用虚拟线程
+     */
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * 开启或关闭虚拟线程,只影响之后创建的线程
+     *
+     * @throws UnsupportedOperationException 当前 JDK 不支持虚拟线程
+     */
+    public static void useVirtualThreads(boolean enable) {
+        if (enable && OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("当前 JDK 不支持虚拟线程");
+        }
+        virtual = enable;
+    }
+
+    /**
+     * 创建未启动的线程,虚拟线程总是守护线程
+     */
+    public static Thread newThread(String name, Runnable runnable) {
+        if (virtual) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) BUILDER_UNSTARTED.invoke(builder, runnable);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("创建虚拟线程失败", e);
+            }
+        }
+        return new Thread(runnable, name);
+    }
+
+    /**
+     * 执行阻塞命令的线程池
+     */
+    public static ExecutorService commandExecutor() {
+        if (virtual) {
+            ExecutorService executor = virtualExecutor;
+            if (executor == null) {
+                synchronized (ThreadBackend.class) {
+                    executor = virtualExecutor;
+                    if (executor == null) {
+                        try {
+                            executor = (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory("modbus-command-"));
+                        } catch (ReflectiveOperationException e) {
+                            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+                        }
+                        virtualExecutor = executor;
+                    }
+                }
+            }
+            return executor;
+        }
+        ExecutorService executor = platformExecutor;
+        if (executor == null) {
+            synchronized (ThreadBackend.class) {
+                executor = platformExecutor;
+                if (executor == null) {
+                    AtomicInteger index = new AtomicInteger();
+                    executor = Executors.newCachedThreadPool(r -> {
+                        Thread thread = new Thread(r, "modbus-command-" + index.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    platformExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 虚拟线程工厂,线程名为 prefix 加序号
+     */
+    private static ThreadFactory factory(String prefix) {
+        try {
+            Object builder = BUILDER_PREFIX.invoke(OF_VIRTUAL.invoke(null), prefix, 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程失败", e);
+        }
+    }
+}
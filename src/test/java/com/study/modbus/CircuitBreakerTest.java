@@ -0,0 +1,79 @@
+package com.study.modbus;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 熔断器状态转换
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000L);
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.isClosed());
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isClosed());
+        assertFalse(breaker.allowRequest());
+        long remaining = breaker.remaining();
+        assertTrue(remaining > 0L && remaining <= 60000L);
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000L);
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        assertTrue(breaker.isClosed());
+        assertEquals(0L, breaker.remaining());
+    }
+
+    @Test
+    public void probeAfterOpenTimeoutClosesOnSuccess() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50L);
+        breaker.onFailure();
+        assertFalse(breaker.allowRequest());
+        Thread.sleep(80L);
+        assertEquals(0L, breaker.remaining());
+        //只允许一次探测
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        //探测期间读写命令仍然直接失败
+        assertFalse(breaker.isClosed());
+        breaker.onSuccess();
+        assertTrue(breaker.isClosed());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbeReopens() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(5, 50L);
+        for (int i = 0; i < 5; i++) {
+            breaker.onFailure();
+        }
+        Thread.sleep(80L);
+        assertTrue(breaker.allowRequest());
+        //半开状态下一次失败就重新打开,重新计时
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.remaining() > 0L);
+    }
+
+    @Test
+    public void thresholdIsAtLeastOne() {
+        CircuitBreaker breaker = new CircuitBreaker(0, 60000L);
+        assertTrue(breaker.isClosed());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,128 @@
+package com.study.modbus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 移除、替换和批量关闭时关闭旧连接
+ */
+public class DeviceRegistryTest {
+
+    private final PollEngine pollEngine = PollEngine.manual();
+
+    private final DeviceRegistry registry = new DeviceRegistry(4);
+
+    private ServerSocket server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        registry.shutdownAll();
+        server.close();
+    }
+
+    @Test
+    public void duplicateDeviceCodeIsRejected() {
+        ModbusConnection first = newConnection("a");
+        ModbusConnection second = newConnection("a");
+        registry.add(first);
+        try {
+            registry.add(second);
+            fail();
+        } catch (IllegalStateException e) {
+            //已有的连接不受影响
+            assertSame(first, registry.get("a"));
+            assertTrue(first.isRunning());
+        } finally {
+            second.close();
+        }
+    }
+
+    @Test
+    public void replaceClosesOldConnection() {
+        ModbusConnection old = newConnection("a");
+        registry.add(old);
+        ModbusConnection replacement = newConnection("a");
+        assertSame(old, registry.replace(replacement));
+        assertFalse(old.isRunning());
+        assertTrue(replacement.isRunning());
+        assertSame(replacement, registry.get("a"));
+        //替换为同一个连接时不关闭
+        assertSame(replacement, registry.replace(replacement));
+        assertTrue(replacement.isRunning());
+    }
+
+    @Test
+    public void removeClosesConnection() {
+        ModbusConnection connection = newConnection("a");
+        registry.add(connection);
+        assertSame(connection, registry.remove("a"));
+        assertFalse(connection.isRunning());
+        assertFalse(registry.contains("a"));
+        assertNull(registry.remove("a"));
+    }
+
+    @Test
+    public void startAllSkipsFailuresAndDuplicates() throws Exception {
+        List<ModbusConnection> duplicates = new ArrayList<>();
+        List<Supplier<ModbusConnection>> factories = new ArrayList<>();
+        factories.add(() -> newConnection("a"));
+        factories.add(() -> newConnection("b"));
+        factories.add(() -> {
+            throw new IllegalArgumentException("配置错误");
+        });
+        registry.add(newConnection("c"));
+        factories.add(() -> {
+            ModbusConnection connection = newConnection("c");
+            duplicates.add(connection);
+            return connection;
+        });
+
+        List<ModbusConnection> started = registry.startAll(factories);
+        assertEquals(2, started.size());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), registry.getDeviceCodes());
+        //重复的连接创建后被关闭
+        assertEquals(1, duplicates.size());
+        assertFalse(duplicates.get(0).isRunning());
+    }
+
+    @Test
+    public void shutdownAllClosesEveryConnection() throws Exception {
+        List<ModbusConnection> all = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ModbusConnection connection = newConnection("device-" + i);
+            registry.add(connection);
+            all.add(connection);
+        }
+        registry.shutdownAll();
+        assertEquals(0, registry.size());
+        for (ModbusConnection connection : all) {
+            assertFalse(connection.isRunning());
+        }
+    }
+
+    private ModbusConnection newConnection(String deviceCode) {
+        return new ModbusConnection(1, deviceCode, "127.0.0.1", server.getLocalPort(), null, 100L, 0, null, null, pollEngine);
+    }
+}
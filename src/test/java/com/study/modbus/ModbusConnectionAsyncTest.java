@@ -0,0 +1,86 @@
+package com.study.modbus;
+
+import com.serotonin.modbus4j.BatchRead;
+import com.serotonin.modbus4j.BatchResults;
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.transport.FakeSlave;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 异步读命令经过 pipeline 读取，超时后 future 以 TimeoutException 结束
+ */
+public class ModbusConnectionAsyncTest {
+
+    private FakeSlave slave;
+
+    private ModbusConnection connection;
+
+    @Before
+    public void setUp() throws IOException {
+        slave = new FakeSlave();
+        connection = new ModbusConnection(1, "async", "127.0.0.1", slave.getPort(), null, 100L, -1, null, null, PollEngine.manual());
+        assertNotNull(connection.getMaster());
+        connection.enablePipeline(4, 5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        connection.close();
+        slave.close();
+    }
+
+    @Test(timeout = 20000L)
+    public void asyncReadCompletesWithValues() throws Exception {
+        BatchResults<String> results = connection.readDataAsync(batchRead(), 5000L).get(5, TimeUnit.SECONDS);
+        assertEquals(2, results.getValue("40003"));
+        assertEquals(true, results.getValue("00002"));
+        //读取结果同时写入寄存器镜像
+        assertEquals(2, connection.getRegisterImage().getRegister(1, 3, 2));
+    }
+
+    @Test(timeout = 20000L)
+    public void slowReadTimesOut() throws Exception {
+        slave.setDelay(1000L);
+        CompletableFuture<BatchResults<String>> future = connection.readDataAsync(batchRead(), 200L);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test(timeout = 20000L)
+    public void blockingReadReportsTimeoutAsTransportError() throws Exception {
+        connection.setCommandTimeout(200L);
+        slave.setDelay(1000L);
+        try {
+            connection.readData(batchRead());
+            fail();
+        } catch (ModbusTransportException e) {
+            //与同步接口原来的异常类型一致
+        }
+    }
+
+    private static BatchRead<String> batchRead() {
+        BatchRead<String> batchRead = new BatchRead<>();
+        batchRead.addLocator("40003", BaseLocator.holdingRegister(1, 2, DataType.TWO_BYTE_INT_UNSIGNED));
+        batchRead.addLocator("00002", BaseLocator.coilStatus(1, 1));
+        return batchRead;
+    }
+}
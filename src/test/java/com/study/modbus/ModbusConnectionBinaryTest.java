@@ -0,0 +1,164 @@
+package com.study.modbus;
+
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.journal.JournalPublisher;
+import com.study.modbus.publish.AsyncDispatcher;
+import com.study.modbus.publish.BinaryMsgListener;
+import com.study.modbus.publish.BinaryPayloadDecoder;
+import com.study.modbus.publish.OverloadPolicy;
+import com.study.modbus.transport.FakeSlave;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 二进制推送与 JSON 走同一条路径，阻塞的 BinaryMsgListener 不影响轮询
+ */
+public class ModbusConnectionBinaryTest {
+
+    private final PollEngine pollEngine = PollEngine.manual();
+
+    private FakeSlave slave;
+
+    private ModbusConnection connection;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<ByteBuffer> messages = new CopyOnWriteArrayList<>();
+
+    /**
+     * 第一条消息阻塞推送线程，直到 release
+     */
+    private final BinaryMsgListener binaryListener = new BinaryMsgListener() {
+        @Override
+        public void dealSchema(ByteBuffer schema) {
+            receive(schema);
+        }
+
+        @Override
+        public void dealFrame(ByteBuffer frame) {
+            receive(frame);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        slave = new FakeSlave();
+        connection = new ModbusConnection(1, "binary", "127.0.0.1", slave.getPort(), null, 100L, -1, null, null, pollEngine);
+        connection.enablePipeline(4, 1000);
+        connection.addLocator("40003", BaseLocator.holdingRegister(1, 2, DataType.TWO_BYTE_INT_UNSIGNED), 10L);
+        connection.setBinaryListener(binaryListener);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        connection.close();
+        slave.close();
+    }
+
+    @Test(timeout = 20000L)
+    public void blockingListenerDoesNotDelayPollWithDispatcher() throws Exception {
+        AsyncDispatcher dispatcher = new AsyncDispatcher(1, 1, OverloadPolicy.DROP_OLDEST);
+        try {
+            connection.useDispatcher(dispatcher);
+            pollWhileBlocked();
+            //阻塞期间的结果被丢弃，丢弃后重新发送 schema
+            release.countDown();
+            pollUntilDecoded();
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test(timeout = 20000L)
+    public void blockingListenerDoesNotDelayPollWithJournal() throws Exception {
+        File file = File.createTempFile("journal", ".dat");
+        file.delete();
+        JournalPublisher publisher = new JournalPublisher(1);
+        try {
+            connection.enableJournal(file, 1 << 16, publisher);
+            pollWhileBlocked();
+            assertTrue(connection.getJournal().pending() > 0);
+            //日志中的 schema 和 frame 按顺序推送
+            release.countDown();
+            pollUntilDecoded();
+        } finally {
+            connection.disableJournal();
+            publisher.shutdown();
+            file.delete();
+        }
+    }
+
+    /**
+     * listener 阻塞期间继续轮询，每次轮询不等待 listener
+     */
+    private void pollWhileBlocked() throws Exception {
+        poll();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        int requests = slave.getRequests();
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(15L);
+            long begin = System.nanoTime();
+            poll();
+            assertTrue(System.nanoTime() - begin < TimeUnit.MILLISECONDS.toNanos(500L));
+        }
+        assertTrue(slave.getRequests() > requests);
+    }
+
+    private void pollUntilDecoded() throws Exception {
+        BinaryPayloadDecoder decoder = new BinaryPayloadDecoder();
+        long deadline = System.currentTimeMillis() + 5000L;
+        int index = 0;
+        Map<String, Object> values = null;
+        while (values == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(15L);
+            poll();
+            for (; index < messages.size(); index++) {
+                BinaryPayloadDecoder.Frame frame;
+                try {
+                    frame = decoder.decode(messages.get(index));
+                } catch (IllegalArgumentException e) {
+                    //schema 之前的帧
+                    continue;
+                }
+                if (frame != null) {
+                    values = frame.getValues();
+                }
+            }
+        }
+        assertEquals(2, ((Number) values.get("40003")).intValue());
+    }
+
+    private void poll() {
+        pollEngine.poll(connection);
+    }
+
+    private void receive(ByteBuffer message) {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message.duplicate());
+        copy.flip();
+        messages.add(copy);
+    }
+}
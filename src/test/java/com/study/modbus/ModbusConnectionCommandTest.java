@@ -0,0 +1,100 @@
+package com.study.modbus;
+
+import com.serotonin.modbus4j.BatchRead;
+import com.serotonin.modbus4j.code.DataType;
+import com.study.modbus.constant.Constants;
+import com.study.modbus.entity.Response;
+import com.study.modbus.entity.WriteBean;
+import com.study.modbus.exception.OfflineException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModbusConnectionCommandTest {
+
+    private ServerSocket server;
+
+    private ModbusConnection connection;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        connection = new ModbusConnection(1, "test", "127.0.0.1", server.getLocalPort(), null, 100L, -1, null, null, PollEngine.manual());
+        assertNotNull(connection.getMaster());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        connection.close();
+        server.close();
+    }
+
+    @Test
+    public void invalidDataTypeWithMaxAgeReturnsErrorResponse() throws Exception {
+        //不支持的数据类型不能抛出到调用方，future 以错误的 Response 结束
+        CompletableFuture<Response> future = connection.executeCommandAsync(true, 3, 0, null, 999, 1000L, 5000L);
+        Response response = future.get(5, TimeUnit.SECONDS);
+        assertEquals(Constants.ERROR_RESPONSE, response.getStatus());
+    }
+
+    @Test
+    public void cachedReadDecodesFromImage() throws Exception {
+        //40001~40004：1.5f、-2、0x00010002
+        int bits = Float.floatToIntBits(1.5f);
+        byte[] data = {(byte) (bits >> 24), (byte) (bits >> 16), (byte) (bits >> 8), (byte) bits,
+                (byte) 0xFF, (byte) 0xFE, 0x00, 0x01, 0x00, 0x02};
+        connection.getRegisterImage().update(1, 3, 0, 5, data, System.currentTimeMillis());
+
+        assertEquals(1.5f, cached(3, 0, DataType.FOUR_BYTE_FLOAT));
+        assertEquals((short) -2, cached(3, 2, DataType.TWO_BYTE_INT_SIGNED));
+        assertEquals(0xFFFE, cached(3, 2, DataType.TWO_BYTE_INT_UNSIGNED));
+        assertEquals(0x00010002L, cached(3, 3, DataType.FOUR_BYTE_INT_UNSIGNED));
+    }
+
+    private Number cached(int functionType, int offset, int dataType) throws Exception {
+        Response response = connection.executeCommandAsync(true, functionType, offset, null, dataType, 1000L, 60000L)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(Constants.SUCCESS_RESPONSE, response.getStatus());
+        return response.getResult();
+    }
+
+    @Test
+    public void asyncCommandsFailWithoutMaster() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        //端口没有监听且不重连，master 为空
+        ModbusConnection disconnected = new ModbusConnection(1, "offline", "127.0.0.1", port, null, 100L, 0, null, null, PollEngine.manual());
+        try {
+            assertNull(disconnected.getMaster());
+            assertOffline(disconnected.readDataAsync(new BatchRead<>(), 1000L));
+            assertOffline(disconnected.writeDataAsync(Collections.<WriteBean>emptyList(), 1000L));
+        } finally {
+            disconnected.close();
+        }
+    }
+
+    private static void assertOffline(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OfflineException);
+        }
+    }
+}
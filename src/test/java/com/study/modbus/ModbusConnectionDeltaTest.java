@@ -0,0 +1,102 @@
+package com.study.modbus;
+
+import com.serotonin.modbus4j.BatchRead;
+import com.study.modbus.publish.Deadband;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 变化推送的设置，端口没有监听且不重连，不访问设备
+ */
+public class ModbusConnectionDeltaTest {
+
+    private ModbusConnection connection;
+
+    @Before
+    public void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        connection = new ModbusConnection(1, "delta", "127.0.0.1", port, null, 100L, 0, null, null, PollEngine.manual());
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Test
+    public void deadbandDoesNotEnableDelta() {
+        ScanGroup group = connection.addScanGroup(100L, new BatchRead<>());
+        connection.setDeadband("40001", Deadband.absolute(1));
+        assertNull(group.getDeltaTracker());
+        assertEquals(1, connection.getDeadbands().size());
+
+        //开启后使用已保存的死区
+        connection.enableDelta(0L);
+        assertNotNull(group.getDeltaTracker());
+        connection.setDeadband("40001", null);
+        assertEquals(0, connection.getDeadbands().size());
+        assertNotNull(group.getDeltaTracker());
+    }
+
+    @Test
+    public void scanGroupsFollowDeltaMode() {
+        connection.enableDelta(1000L);
+        ScanGroup enabled = connection.addScanGroup(100L, new BatchRead<>());
+        assertNotNull(enabled.getDeltaTracker());
+
+        connection.disableDelta();
+        assertNull(enabled.getDeltaTracker());
+        ScanGroup disabled = connection.addScanGroup(200L, new BatchRead<>());
+        assertNull(disabled.getDeltaTracker());
+    }
+
+    @Test
+    public void concurrentChangesLeaveConsistentState() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread toggler = new Thread(() -> {
+            await(start);
+            for (int i = 0; i < 2000; i++) {
+                connection.enableDelta(0L);
+                connection.disableDelta();
+            }
+        });
+        Thread adder = new Thread(() -> {
+            await(start);
+            for (int i = 0; i < 200; i++) {
+                connection.addScanGroup(i + 1, new BatchRead<>());
+                connection.setDeadband("k" + i, Deadband.absolute(1));
+            }
+        });
+        toggler.start();
+        adder.start();
+        start.countDown();
+        toggler.join();
+        adder.join();
+
+        //最后一次是 disableDelta，所有扫描组都不能留下 DeltaTracker
+        for (ScanGroup group : connection.getScanGroups()) {
+            assertNull(group.getDeltaTracker());
+        }
+        assertEquals(200, connection.getDeadbands().size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
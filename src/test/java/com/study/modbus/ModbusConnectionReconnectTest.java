@@ -0,0 +1,97 @@
+package com.study.modbus;
+
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 断线后经过 ReconnectManager 重连
+ */
+public class ModbusConnectionReconnectTest {
+
+    private final PollEngine pollEngine = PollEngine.manual();
+
+    private ModbusConnection connection;
+
+    private ServerSocket server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (connection != null) {
+            connection.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void startupFailureReconnectsWhenPortOpens() throws Exception {
+        int port = freePort();
+        connection = newConnection(port);
+        assertNull(connection.getMaster());
+        assertTrue(connection.getReconnectManager().isReconnecting(connection));
+
+        server = listen(port);
+        long deadline = System.currentTimeMillis() + 10000L;
+        //连接成功后重连任务才从 ReconnectManager 中移除
+        while ((connection.getMaster() == null || connection.getReconnectManager().isReconnecting(connection))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+        }
+        assertNotNull(connection.getMaster());
+        assertFalse(connection.getReconnectManager().isReconnecting(connection));
+    }
+
+    @Test
+    public void droppedLinkGoesThroughReconnectManager() throws Exception {
+        int port = freePort();
+        server = listen(port);
+        connection = newConnection(port);
+        assertNotNull(connection.getMaster());
+        assertFalse(connection.getReconnectManager().isReconnecting(connection));
+
+        connection.setCircuitBreaker(new CircuitBreaker(1, 60000L));
+        connection.addLocator("40001", BaseLocator.holdingRegister(1, 0, DataType.TWO_BYTE_INT_UNSIGNED), 100L);
+        connection.getRegisterImage().update(1, 3, 0, 1, new byte[]{0, 1}, System.currentTimeMillis());
+        server.close();
+        server = null;
+
+        pollEngine.poll(connection);
+        assertFalse(connection.getCircuitBreaker().isClosed());
+        //离线后不保留轮询结果
+        assertEquals(-1, connection.getRegisterImage().getRegister(1, 3, 0));
+        assertTrue(connection.getReconnectManager().isReconnecting(connection));
+    }
+
+    /**
+     * 使用手动驱动的轮询引擎，由测试调用 poll()
+     */
+    private ModbusConnection newConnection(int port) {
+        return new ModbusConnection(1, "test-" + port, "127.0.0.1", port, null, 100L, -1, null, null, pollEngine);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static ServerSocket listen(int port) throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress("127.0.0.1", port));
+        return socket;
+    }
+}
@@ -0,0 +1,55 @@
+package com.study.modbus;
+
+import com.serotonin.modbus4j.code.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 按地址注册点位，端口没有监听且不重连，不访问设备
+ */
+public class ModbusConnectionTagTest {
+
+    private ModbusConnection connection;
+
+    @Before
+    public void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        connection = new ModbusConnection(1, "tag", "127.0.0.1", port, null, 100L, 0, null, null, PollEngine.manual());
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Test
+    public void sameAddressReturnsSameHandle() {
+        int handle = connection.addTag("40001", DataType.FOUR_BYTE_FLOAT, 100L);
+        assertEquals(handle, connection.addTag("40001", DataType.FOUR_BYTE_FLOAT, 200L));
+        assertEquals(1, connection.getTagTable().size());
+        //只加入第一次的扫描组
+        assertEquals(1, connection.getScanGroups().size());
+        assertEquals(1, connection.getScanGroups().get(0).getBatchRead().getReadFunctionGroups(null).get(0).getLocators().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sameAddressWithOtherDataTypeIsRejected() {
+        connection.addTag("40001", DataType.FOUR_BYTE_FLOAT, 100L);
+        connection.addTag("40001", DataType.TWO_BYTE_INT_UNSIGNED, 100L);
+    }
+
+    @Test
+    public void bitAddressIgnoresDataType() {
+        int handle = connection.addTag("00001", DataType.BINARY, 100L);
+        assertEquals(handle, connection.addTag("00001", DataType.TWO_BYTE_INT_UNSIGNED, 100L));
+    }
+}
@@ -0,0 +1,137 @@
+package com.study.modbus;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 连接的 pollOnce 被替换为计数，不访问设备
+ */
+public class PollEngineTest {
+
+    private PollEngine engine;
+
+    private final List<CountingConnection> connections = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (CountingConnection connection : connections) {
+            connection.close();
+        }
+        engine.shutdown();
+    }
+
+    @Test
+    public void pollsUntilUnregistered() throws Exception {
+        engine = new PollEngine(2);
+        CountingConnection connection = newConnection(5L);
+        assertEquals(1, engine.size());
+        waitFor(connection, 5);
+        assertFalse(connection.overlapped.get());
+
+        connection.close();
+        assertEquals(0, engine.size());
+        //正在执行的那一次轮询会执行完
+        Thread.sleep(50L);
+        int polls = connection.polls.get();
+        Thread.sleep(100L);
+        assertEquals(polls, connection.polls.get());
+    }
+
+    @Test
+    public void threadsDoNotGrowWithConnections() throws Exception {
+        engine = new PollEngine(2);
+        for (int i = 0; i < 20; i++) {
+            newConnection(1L);
+        }
+        for (CountingConnection connection : connections) {
+            waitFor(connection, 3);
+            assertFalse(connection.overlapped.get());
+        }
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        for (CountingConnection connection : connections) {
+            threads.addAll(connection.threads);
+        }
+        assertTrue(threads.toString(), threads.size() <= 2);
+    }
+
+    @Test
+    public void failedPollIsRescheduled() throws Exception {
+        engine = new PollEngine(1);
+        CountingConnection connection = newConnection(1L);
+        connection.fail.set(true);
+        waitFor(connection, 2);
+    }
+
+    private CountingConnection newConnection(long delay) throws IOException {
+        CountingConnection connection = new CountingConnection(engine, closedPort(), delay);
+        connections.add(connection);
+        return connection;
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitFor(CountingConnection connection, int polls) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (connection.polls.get() < polls && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertTrue("polls:" + connection.polls.get(), connection.polls.get() >= polls);
+    }
+
+    /**
+     * 端口没有监听且不重连，只验证调度
+     */
+    private static class CountingConnection extends ModbusConnection {
+
+        private final long delay;
+
+        private final AtomicInteger polls = new AtomicInteger();
+
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final AtomicBoolean overlapped = new AtomicBoolean();
+
+        private final AtomicBoolean fail = new AtomicBoolean();
+
+        private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        CountingConnection(PollEngine engine, int port, long delay) {
+            super(1, "poll-" + port, "127.0.0.1", port, null, 100L, 0, null, null, engine);
+            this.delay = delay;
+        }
+
+        @Override
+        long pollOnce() {
+            if (active.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            try {
+                threads.add(Thread.currentThread().getName());
+                polls.incrementAndGet();
+                if (fail.getAndSet(false)) {
+                    throw new IllegalStateException("轮询失败");
+                }
+                return delay;
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
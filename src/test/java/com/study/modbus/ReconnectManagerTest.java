@@ -0,0 +1,116 @@
+package com.study.modbus;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectManagerTest {
+
+    private final ReconnectManager manager = new ReconnectManager(2, 1000L);
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void backoffStaysWithinBounds() {
+        for (int attempt = 0; attempt < 64; attempt++) {
+            long ceiling = Math.min(1000L, attempt >= 31 ? Long.MAX_VALUE : 10L << attempt);
+            for (int i = 0; i < 100; i++) {
+                long delay = manager.backoff(10L, attempt);
+                assertTrue(attempt + ":" + delay, delay >= 0 && delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void backoffReachesCeiling() {
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            max = Math.max(max, manager.backoff(10L, 20));
+        }
+        //随机抖动覆盖 0~maxDelay
+        assertTrue(String.valueOf(max), max > 500L && max <= 1000L);
+    }
+
+    @Test
+    public void retriesUntilConnected() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(1);
+        manager.reconnect("a", "a", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                return false;
+            }
+            connected.countDown();
+            return true;
+        }, -1, 1L);
+        assertTrue(connected.await(5, TimeUnit.SECONDS));
+        waitUntilIdle("a");
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void stopsAfterMaxAttempts() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        manager.reconnect("b", "b", () -> {
+            attempts.incrementAndGet();
+            return false;
+        }, 2, 1L);
+        waitUntilIdle("b");
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void oneTaskPerKey() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        manager.reconnect("c", "c", () -> {
+            attempts.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, -1, 1L);
+        manager.reconnect("c", "c", () -> {
+            attempts.incrementAndGet();
+            return true;
+        }, -1, 1L);
+        assertEquals(1, manager.size());
+        release.countDown();
+        waitUntilIdle("c");
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void cancelStopsRetrying() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        manager.reconnect("d", "d", () -> {
+            attempts.incrementAndGet();
+            return false;
+        }, -1, 1L);
+        manager.cancel("d");
+        assertFalse(manager.isReconnecting("d"));
+        Thread.sleep(50L);
+        int seen = attempts.get();
+        Thread.sleep(100L);
+        assertEquals(seen, attempts.get());
+    }
+
+    private void waitUntilIdle(Object key) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (manager.isReconnecting(key) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertFalse(manager.isReconnecting(key));
+    }
+}
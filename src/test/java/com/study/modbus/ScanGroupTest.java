@@ -0,0 +1,126 @@
+package com.study.modbus;
+
+import com.serotonin.modbus4j.BatchRead;
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.transport.ReadBlock;
+import com.study.modbus.transport.RequestPlanner;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 扫描组的点位规划、截止时间和按扫描周期分组
+ */
+public class ScanGroupTest {
+
+    @Test
+    public void keysFollowPlannedBlocks() {
+        BatchRead<String> batchRead = new BatchRead<>();
+        batchRead.addLocator("b", BaseLocator.holdingRegister(1, 5, DataType.FOUR_BYTE_FLOAT));
+        batchRead.addLocator("coil", BaseLocator.coilStatus(1, 0));
+        batchRead.addLocator("a", BaseLocator.holdingRegister(1, 0, DataType.TWO_BYTE_INT_UNSIGNED));
+        ScanGroup group = new ScanGroup(100L, batchRead);
+
+        List<ReadBlock<String>> blocks = group.blocks(null, new RequestPlanner(10, 20));
+        //规划后按 slaveId、功能码、地址排序
+        assertEquals(Arrays.asList("coil", "a", "b"), group.getKeys());
+        assertEquals(DataType.FOUR_BYTE_FLOAT, group.getDataTypes()[2]);
+        assertEquals(3, group.getValues().length);
+        int slot = 0;
+        for (ReadBlock<String> block : blocks) {
+            assertEquals(slot, block.getFirstSlot());
+            slot += block.getLocators().size();
+        }
+        assertEquals(1, group.slotOf("a"));
+        assertEquals(-1, group.slotOf("missing"));
+        assertEquals(-1, group.slotOf(null));
+    }
+
+    @Test
+    public void plannedBlocksAreCached() {
+        BatchRead<String> batchRead = new BatchRead<>();
+        batchRead.addLocator("a", BaseLocator.holdingRegister(1, 0, DataType.TWO_BYTE_INT_UNSIGNED));
+        ScanGroup group = new ScanGroup(100L, batchRead);
+        RequestPlanner planner = new RequestPlanner(10, 20);
+
+        List<ReadBlock<String>> blocks = group.blocks(null, planner);
+        List<String> keys = group.getKeys();
+        Object[] values = group.getValues();
+        assertSame(blocks, group.blocks(null, planner));
+        assertSame(keys, group.getKeys());
+        assertSame(values, group.getValues());
+
+        //更换 planner 后重新规划,点位列表变化使变化推送和序列化重新同步
+        group.blocks(null, null);
+        assertNotSame(keys, group.getKeys());
+        assertEquals(Arrays.asList("a"), group.getKeys());
+    }
+
+    @Test
+    public void nextTimeFollowsDeadline() {
+        ScanGroup group = new ScanGroup(100L, new BatchRead<>());
+        group.scheduleNext(1000L);
+        assertEquals(1000L, group.getNextTime());
+        //轮询晚了一点,仍按截止时间计算,不累积漂移
+        group.scheduleNext(1030L);
+        assertEquals(1100L, group.getNextTime());
+        group.scheduleNext(1120L);
+        assertEquals(1200L, group.getNextTime());
+    }
+
+    @Test
+    public void lateGroupRestartsFromNow() {
+        ScanGroup group = new ScanGroup(100L, new BatchRead<>());
+        group.scheduleNext(1000L);
+        //落后多个周期时不集中补读
+        group.scheduleNext(1550L);
+        assertEquals(1550L, group.getNextTime());
+        group.scheduleNext(1560L);
+        assertEquals(1650L, group.getNextTime());
+    }
+
+    @Test
+    public void postponeOverridesDeadline() {
+        ScanGroup group = new ScanGroup(100L, new BatchRead<>());
+        group.scheduleNext(1000L);
+        group.postpone(1010L, 1000L);
+        assertEquals(2010L, group.getNextTime());
+        group.scheduleNext(2010L);
+        assertEquals(2110L, group.getNextTime());
+    }
+
+    @Test
+    public void locatorsAreGroupedByScanRate() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ModbusConnection connection = new ModbusConnection(1, "test-" + port, "127.0.0.1", port, null, 100L, -1,
+                null, null, PollEngine.manual());
+        try {
+            connection.addLocator("a", BaseLocator.holdingRegister(1, 0, DataType.TWO_BYTE_INT_UNSIGNED), 100L);
+            connection.addLocator("b", BaseLocator.holdingRegister(1, 1, DataType.TWO_BYTE_INT_UNSIGNED), 1000L);
+            connection.addLocator("c", BaseLocator.holdingRegister(1, 2, DataType.TWO_BYTE_INT_UNSIGNED), 100L);
+
+            List<ScanGroup> groups = connection.getScanGroups();
+            assertEquals(2, groups.size());
+            assertEquals(100L, groups.get(0).getPeriod());
+            assertEquals(1000L, groups.get(1).getPeriod());
+            RequestPlanner planner = new RequestPlanner(10, 20);
+            groups.get(0).blocks(null, planner);
+            groups.get(1).blocks(null, planner);
+            assertEquals(Arrays.asList("a", "c"), groups.get(0).getKeys());
+            assertEquals(Arrays.asList("b"), groups.get(1).getKeys());
+        } finally {
+            connection.close();
+        }
+    }
+}
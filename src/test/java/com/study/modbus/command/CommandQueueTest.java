@@ -0,0 +1,148 @@
+package com.study.modbus.command;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommandQueueTest {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final CommandQueue queue = new CommandQueue(lock, tasks::add);
+
+    @Test
+    public void idleLockRunsThroughExecutor() {
+        CompletableFuture<Integer> future = queue.submit(CommandPriority.READ, () -> 1, 0L);
+        assertEquals(1, tasks.size());
+        runTasks();
+        assertEquals(Integer.valueOf(1), future.getNow(null));
+    }
+
+    @Test
+    public void holderDrainsAfterUnlock() throws Exception {
+        Holder holder = new Holder();
+        holder.start();
+        holder.locked.await();
+        CompletableFuture<Integer> future = queue.submit(CommandPriority.READ, () -> 1, 0L);
+        //锁被占用时不提交给 executor
+        assertTrue(tasks.isEmpty());
+
+        holder.release.countDown();
+        holder.join();
+        assertEquals(Integer.valueOf(1), future.getNow(null));
+    }
+
+    @Test
+    public void writeRunsBeforeRead() {
+        List<String> order = new ArrayList<>();
+        lock.lock();
+        try {
+            queue.submit(CommandPriority.READ, () -> order.add("read"), 0L);
+            queue.submit(CommandPriority.WRITE, () -> order.add("write"), 0L);
+            queue.runPending();
+        } finally {
+            lock.unlock();
+        }
+        assertEquals("write", order.get(0));
+        assertEquals("read", order.get(1));
+    }
+
+    @Test
+    public void timeoutCompletesFuture() throws Exception {
+        CompletableFuture<Integer> future = queue.submit(CommandPriority.READ, () -> 1, 50L);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        //超时后不再执行
+        runTasks();
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void failAllCompletesPending() {
+        CompletableFuture<Integer> future = queue.submit(CommandPriority.READ, () -> 1, 0L);
+        queue.failAll(new IllegalStateException("closed"));
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void withIoLockRunsQueuedCommandsAfterUnlock() {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        queue.withIoLock(() -> {
+            futures.add(queue.submit(CommandPriority.READ, () -> 1, 0L));
+            assertTrue(lock.isHeldByCurrentThread());
+            assertTrue(tasks.isEmpty());
+            assertFalse(futures.get(0).isDone());
+        });
+        assertFalse(lock.isLocked());
+        assertEquals(Integer.valueOf(1), futures.get(0).getNow(null));
+    }
+
+    @Test
+    public void callWithIoLockDrainsWhenBodyFails() {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        try {
+            queue.callWithIoLock(() -> {
+                futures.add(queue.submit(CommandPriority.READ, () -> 1, 0L));
+                throw new java.io.IOException("read failed");
+            });
+            fail();
+        } catch (Exception e) {
+            assertTrue(e instanceof java.io.IOException);
+        }
+        assertFalse(lock.isLocked());
+        assertEquals(Integer.valueOf(1), futures.get(0).getNow(null));
+    }
+
+    @Test
+    public void callWithIoLockReturnsResult() throws Exception {
+        assertEquals("ok", queue.callWithIoLock(() -> "ok"));
+    }
+
+    private void runTasks() {
+        List<Runnable> pending = new ArrayList<>(tasks);
+        tasks.clear();
+        for (Runnable task : pending) {
+            task.run();
+        }
+    }
+
+    /**
+     * 在其他线程持有 ioLock，模拟正在进行的轮询，释放锁后 drain
+     */
+    private class Holder extends Thread {
+
+        private final CountDownLatch locked = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            queue.withIoLock(() -> {
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+}
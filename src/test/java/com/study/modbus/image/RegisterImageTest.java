@@ -0,0 +1,112 @@
+package com.study.modbus.image;
+
+import com.serotonin.modbus4j.code.RegisterRange;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RegisterImageTest {
+
+    private static final int HOLDING = RegisterRange.HOLDING_REGISTER;
+
+    private final RegisterImage image = new RegisterImage();
+
+    @Test
+    public void readsWithinOneBlock() {
+        image.update(1, HOLDING, 10, 3, registers(1, 2, 3), 100L);
+        short[] dst = new short[3];
+        assertEquals(100L, image.readRegisters(1, HOLDING, 10, dst, 0, 3));
+        assertArrayEquals(new short[]{1, 2, 3}, dst);
+        assertEquals(2, image.getRegister(1, HOLDING, 11));
+        //超出块的范围
+        assertEquals(0L, image.getTimestamp(1, HOLDING, 9, 2));
+        assertEquals(-1, image.getRegister(1, HOLDING, 13));
+        assertEquals(0L, image.getTimestamp(2, HOLDING, 10, 1));
+    }
+
+    @Test
+    public void overlappingUpdateTrimsOlderBlock() {
+        image.update(1, HOLDING, 0, 10, registers(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), 100L);
+        image.update(1, HOLDING, 4, 2, registers(40, 50), 200L);
+
+        //新块覆盖的地址属于最近一次更新
+        assertEquals(200L, image.getTimestamp(1, HOLDING, 4, 2));
+        assertEquals(200L, image.getTimestamp(1, HOLDING, 5, 1));
+        //旧块两侧保留原来的时间
+        assertEquals(100L, image.getTimestamp(1, HOLDING, 0, 4));
+        assertEquals(100L, image.getTimestamp(1, HOLDING, 6, 4));
+        //跨越两次更新的范围不能保证来自同一次更新
+        assertEquals(0L, image.getTimestamp(1, HOLDING, 3, 2));
+        assertEquals(0L, image.getTimestamp(1, HOLDING, 0, 10));
+    }
+
+    @Test
+    public void largerUpdateReplacesContainedBlocks() {
+        image.update(1, HOLDING, 2, 2, registers(1, 1), 100L);
+        image.update(1, HOLDING, 6, 2, registers(2, 2), 100L);
+        image.update(1, HOLDING, 0, 10, new byte[20], 200L);
+        assertEquals(200L, image.getTimestamp(1, HOLDING, 2, 2));
+        assertEquals(200L, image.getTimestamp(1, HOLDING, 0, 10));
+    }
+
+    @Test
+    public void repeatedUpdatesRefreshTime() {
+        for (long time = 1; time <= 1000; time++) {
+            image.update(1, HOLDING, 0, 2, registers(1, 2), time);
+            image.update(1, HOLDING, 1, 2, registers(3, 4), time);
+        }
+        assertEquals(1000L, image.getTimestamp(1, HOLDING, 1, 2));
+        assertEquals(1000L, image.getTimestamp(1, HOLDING, 0, 1));
+        assertEquals(3, image.getRegister(1, HOLDING, 1));
+    }
+
+    @Test
+    public void blockCountIsCapped() {
+        for (int i = 0; i < 1000; i++) {
+            image.update(1, HOLDING, i, 1, registers(i), i + 1);
+        }
+        //最早的块被淘汰
+        assertEquals(0L, image.getTimestamp(1, HOLDING, 0, 1));
+        assertEquals(-1, image.getRegister(1, HOLDING, 0));
+        assertEquals(1000L, image.getTimestamp(1, HOLDING, 999, 1));
+        assertEquals(999, image.getRegister(1, HOLDING, 999));
+    }
+
+    @Test
+    public void bitsStartFromLowestBit() {
+        image.update(1, RegisterRange.COIL_STATUS, 3, 10, new byte[]{0x05, 0x02}, 100L);
+        boolean[] dst = new boolean[10];
+        assertEquals(100L, image.readBits(1, RegisterRange.COIL_STATUS, 3, dst, 0, 10));
+        assertArrayEquals(new boolean[]{true, false, true, false, false, false, false, false, false, true}, dst);
+        assertEquals(1, image.getBit(1, RegisterRange.COIL_STATUS, 12));
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        image.update(1, HOLDING, 0, 1, registers(1), 100L);
+        image.clear();
+        assertEquals(-1, image.getRegister(1, HOLDING, 0));
+    }
+
+    @Test
+    public void clearSlaveKeepsOtherSlaves() {
+        image.update(1, HOLDING, 0, 1, registers(1), 100L);
+        image.update(2, HOLDING, 0, 1, registers(2), 100L);
+        image.clear(1);
+        assertEquals(-1, image.getRegister(1, HOLDING, 0));
+        assertEquals(2, image.getRegister(2, HOLDING, 0));
+        //清空后可以重新写入
+        image.update(1, HOLDING, 0, 1, registers(3), 200L);
+        assertEquals(3, image.getRegister(1, HOLDING, 0));
+    }
+
+    private static byte[] registers(int... values) {
+        byte[] data = new byte[values.length * 2];
+        for (int i = 0; i < values.length; i++) {
+            data[i * 2] = (byte) (values[i] >> 8);
+            data[i * 2 + 1] = (byte) values[i];
+        }
+        return data;
+    }
+}
@@ -0,0 +1,138 @@
+package com.study.modbus.journal;
+
+import cn.tzauto.isecs.api.MsgListener;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalPublisherTest {
+
+    private JournalPublisher publisher;
+
+    private final List<SampleJournal> journals = new ArrayList<>();
+
+    private final List<File> files = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        publisher.shutdown();
+        for (SampleJournal journal : journals) {
+            journal.close();
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void journalsShareBoundedThreads() throws Exception {
+        publisher = new JournalPublisher(2);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        List<String> received = new CopyOnWriteArrayList<>();
+        MsgListener listener = listener(s -> {
+            threads.add(Thread.currentThread().getName());
+            received.add(s);
+        });
+        for (int i = 0; i < 10; i++) {
+            SampleJournal journal = newJournal();
+            publisher.start(journal, listener, "device-" + i);
+            for (int j = 0; j < 5; j++) {
+                journal.append(j, i + "-" + j);
+            }
+        }
+        waitFor(() -> received.size() == 50);
+        assertTrue(threads.toString(), threads.size() <= 2);
+        for (SampleJournal journal : journals) {
+            waitFor(() -> journal.pending() == 0);
+        }
+    }
+
+    @Test
+    public void recordsAlreadyInJournalArePublished() throws Exception {
+        publisher = new JournalPublisher(1);
+        SampleJournal journal = newJournal();
+        journal.append(1L, "a");
+        journal.append(2L, "b");
+        List<String> received = new CopyOnWriteArrayList<>();
+        publisher.start(journal, listener(received::add), "device");
+        waitFor(() -> received.size() == 2);
+        assertEquals("a", received.get(0));
+        assertEquals("b", received.get(1));
+    }
+
+    @Test
+    public void failedRecordIsRetriedInOrder() throws Exception {
+        publisher = new JournalPublisher(1);
+        SampleJournal journal = newJournal();
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> received = new CopyOnWriteArrayList<>();
+        JournalPublisher.Drain drain = publisher.start(journal, listener(s -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("下游不可用");
+            }
+            received.add(s);
+        }), "device");
+        journal.append(1L, "a");
+        journal.append(2L, "b");
+        waitFor(() -> received.size() == 2);
+        assertEquals("a", received.get(0));
+        assertEquals(1L, drain.getFailures());
+        assertEquals(2L, drain.getPublished());
+    }
+
+    @Test
+    public void stoppedDrainLeavesRecords() throws Exception {
+        publisher = new JournalPublisher(1);
+        SampleJournal journal = newJournal();
+        List<String> received = new CopyOnWriteArrayList<>();
+        JournalPublisher.Drain drain = publisher.start(journal, listener(received::add), "device");
+        drain.stop();
+        journal.append(1L, "a");
+        Thread.sleep(100L);
+        assertEquals(0, received.size());
+        assertTrue(journal.pending() > 0);
+    }
+
+    private SampleJournal newJournal() throws IOException {
+        File file = File.createTempFile("journal", ".dat");
+        file.delete();
+        files.add(file);
+        SampleJournal journal = new SampleJournal(file, 4096);
+        journals.add(journal);
+        return journal;
+    }
+
+    private static MsgListener listener(Consumer<String> consumer) {
+        return new MsgListener() {
+            @Override
+            public void dealMultMsg(String s) {
+                consumer.accept(s);
+            }
+
+            @Override
+            public void other() {
+            }
+        };
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
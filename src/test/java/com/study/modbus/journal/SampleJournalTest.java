@@ -0,0 +1,216 @@
+package com.study.modbus.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 记录头24字节，16字节内容的记录占40字节
+ */
+public class SampleJournalTest {
+
+    private File file;
+
+    private SampleJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("journal", ".dat");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        file.delete();
+    }
+
+    @Test
+    public void capacityIsAligned() throws IOException {
+        journal = new SampleJournal(file, 100);
+        assertEquals(104, journal.getCapacity());
+        journal.close();
+        journal = new SampleJournal(file, 1);
+        //至少能放下两个记录头
+        assertEquals(48, journal.getCapacity());
+    }
+
+    @Test
+    public void appendNextAck() throws Exception {
+        journal = new SampleJournal(file, 128);
+        assertTrue(journal.append(1L, "a"));
+        assertTrue(journal.append(2L, "bb"));
+        //"a" 对齐到32字节，"bb" 对齐到32字节
+        assertEquals(64L, journal.pending());
+
+        SampleJournal.Record record = journal.next(0L);
+        assertEquals(0L, record.getPosition());
+        assertEquals(0L, record.getSequence());
+        assertEquals(1L, record.getTimestamp());
+        assertEquals("a", record.getPayloadString());
+        //未确认时重复返回同一条
+        assertEquals(0L, journal.next(0L).getPosition());
+
+        journal.ack(record);
+        record = journal.next(0L);
+        assertEquals(32L, record.getPosition());
+        assertEquals(1L, record.getSequence());
+        assertEquals("bb", record.getPayloadString());
+        journal.ack(record);
+        //重复确认被忽略
+        journal.ack(record);
+
+        assertEquals(0L, journal.pending());
+        assertNull(journal.next(0L));
+        assertFalse(journal.takeLost());
+    }
+
+    @Test
+    public void wrapEvictsOldestAndPads() throws Exception {
+        journal = new SampleJournal(file, 128);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(journal.append(i, payload(i)));
+        }
+        assertEquals(120L, journal.pending());
+        assertEquals(0L, journal.getEvicted());
+
+        //末尾剩余8字节放不下，需要8字节填充加40字节，淘汰最早的一条
+        assertTrue(journal.append(3L, payload(3)));
+        assertEquals(1L, journal.getEvicted());
+        assertTrue(journal.takeLost());
+        assertFalse(journal.takeLost());
+        assertEquals(128L, journal.pending());
+
+        SampleJournal.Record record = journal.next(0L);
+        assertEquals(40L, record.getPosition());
+        assertEquals(1L, record.getSequence());
+        journal.ack(record);
+        record = journal.next(0L);
+        assertEquals(80L, record.getPosition());
+        journal.ack(record);
+
+        //跳过填充，从第二圈开头读取
+        record = journal.next(0L);
+        assertEquals(128L, record.getPosition());
+        assertEquals(3L, record.getSequence());
+        assertEquals(new String(payload(3).array(), "UTF-8"), record.getPayloadString());
+        journal.ack(record);
+        assertEquals(0L, journal.pending());
+    }
+
+    @Test
+    public void wrapWhenEmptyDoesNotEvict() throws Exception {
+        journal = new SampleJournal(file, 128);
+        journal.append(0L, payload(0));
+        journal.append(1L, payload(1));
+        journal.ack(journal.next(0L));
+        journal.ack(journal.next(0L));
+
+        //位置80剩余48字节，56字节的记录放到第二圈开头，空的日志不写填充
+        assertTrue(journal.append(2L, ByteBuffer.wrap(new byte[32])));
+        assertEquals(56L, journal.pending());
+        assertEquals(0L, journal.getEvicted());
+        assertFalse(journal.takeLost());
+        assertEquals(128L, journal.next(0L).getPosition());
+    }
+
+    @Test
+    public void oversizedRecordIsRejected() throws Exception {
+        journal = new SampleJournal(file, 128);
+        assertTrue(journal.append(0L, ByteBuffer.wrap(new byte[104])));
+        journal.ack(journal.next(0L));
+        assertFalse(journal.append(1L, ByteBuffer.wrap(new byte[105])));
+        assertEquals(1L, journal.getRejected());
+        assertTrue(journal.takeLost());
+        assertEquals(0L, journal.pending());
+    }
+
+    @Test
+    public void reopenContinuesFromHead() throws Exception {
+        journal = new SampleJournal(file, 128);
+        for (int i = 0; i < 4; i++) {
+            journal.append(i, payload(i));
+        }
+        journal.ack(journal.next(0L));
+        long pending = journal.pending();
+        journal.close();
+
+        journal = new SampleJournal(file, 128);
+        assertEquals(pending, journal.pending());
+        SampleJournal.Record record = journal.next(0L);
+        assertEquals(2L, record.getSequence());
+        journal.ack(journal.next(0L));
+        journal.ack(journal.next(0L));
+        journal.append(9L, payload(9));
+        //序号在重新打开后继续递增
+        assertEquals(4L, journal.next(0L).getSequence());
+    }
+
+    @Test
+    public void recordKindIsKept() throws Exception {
+        journal = new SampleJournal(file, 256);
+        journal.append(1L, "text");
+        journal.append(2L, SampleJournal.KIND_BINARY, ByteBuffer.wrap(new byte[]{2, 1}));
+        SampleJournal.Record record = journal.next(0L);
+        assertEquals(SampleJournal.KIND_TEXT, record.getKind());
+        journal.ack(record);
+        record = journal.next(0L);
+        assertEquals(SampleJournal.KIND_BINARY, record.getKind());
+        assertEquals(2, record.getPayload().length);
+    }
+
+    @Test
+    public void closeWaitsForAppendsAndRejectsLater() throws Exception {
+        journal = new SampleJournal(file, 1 << 20);
+        AtomicInteger appended = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread appender = new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                if (!journal.append(i, payload(i))) {
+                    return;
+                }
+                appended.incrementAndGet();
+                started.countDown();
+            }
+        });
+        appender.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        journal.close();
+        appender.join();
+
+        assertTrue(journal.isClosed());
+        assertFalse(journal.append(0L, payload(0)));
+        assertNull(journal.next(0L));
+        journal.force();
+        journal.close();
+
+        //关闭前完成的追加都已写入文件头
+        journal = new SampleJournal(file, 1 << 20);
+        assertEquals(appended.get() * 40L, journal.pending());
+    }
+
+    /**
+     * 16字节内容，记录占40字节
+     */
+    private static ByteBuffer payload(int i) {
+        byte[] bytes = new byte[16];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = (byte) ('a' + (i + j) % 26);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,67 @@
+package com.study.modbus.metrics;
+
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionMetricsTest {
+
+    @Test
+    public void timeoutMatchesConcreteTypes() {
+        assertTrue(ConnectionMetrics.isTimeout(new SocketTimeoutException("read timed out")));
+        assertTrue(ConnectionMetrics.isTimeout(new TimeoutException()));
+        assertTrue(ConnectionMetrics.isTimeout(new ModbusTransportException(
+                new com.serotonin.modbus4j.sero.messaging.TimeoutException("request=1"))));
+        assertTrue(ConnectionMetrics.isTimeout(new ModbusTransportException(new SocketTimeoutException())));
+    }
+
+    @Test
+    public void timeoutIgnoresOtherFailures() {
+        assertFalse(ConnectionMetrics.isTimeout(new ModbusTransportException(new IOException("Connection reset"))));
+        //名称里带 Timeout 但不是超时
+        assertFalse(ConnectionMetrics.isTimeout(new TimeoutSettingException()));
+        assertFalse(ConnectionMetrics.isTimeout(null));
+    }
+
+    @Test
+    public void failedCyclesAreRecorded() {
+        ConnectionMetrics metrics = new ConnectionMetrics("test", null);
+        metrics.cycleCompleted(2000000L);
+        metrics.cycleFailed(500000000L);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getCycleTime().getCount());
+        assertEquals(1, snapshot.getFailedCycles());
+        assertEquals(500000L, snapshot.getCycleTime().getMax());
+    }
+
+    @Test
+    public void requestCounters() {
+        ConnectionMetrics metrics = new ConnectionMetrics("test", null);
+        metrics.requestSent(3, 12);
+        metrics.responseReceived(3, 1000000L, 11, false);
+        metrics.requestSent(3, 12);
+        metrics.requestFailed(3, 1000000L, true);
+        metrics.requestSent(3, 12);
+        metrics.responseReceived(3, 1000000L, 9, true);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getRequests());
+        assertEquals(1, snapshot.getTimeouts());
+        assertEquals(0, snapshot.getFailures());
+        assertEquals(1, snapshot.getExceptionResponses());
+        assertEquals(36, snapshot.getBytesSent());
+        assertEquals(20, snapshot.getBytesReceived());
+        assertEquals(2, snapshot.getRequestTime().getCount());
+    }
+
+    private static class TimeoutSettingException extends RuntimeException {
+    }
+}
@@ -0,0 +1,42 @@
+package com.study.modbus.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBoundsContainValue() {
+        for (long micros = 0; micros < 1000000L; micros = micros * 3 / 2 + 1) {
+            int index = LatencyHistogram.index(micros);
+            assertTrue(micros + " > " + LatencyHistogram.upperBound(index), micros <= LatencyHistogram.upperBound(index));
+            if (index > 0) {
+                assertTrue(micros > LatencyHistogram.upperBound(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesWithinOneBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100000L, snapshot.getMax());
+        assertEquals(50500.0, snapshot.getMean(), 0.001);
+        long p50 = snapshot.getPercentile(50);
+        assertTrue(String.valueOf(p50), p50 >= 50000L && p50 <= 50000L * 5 / 4);
+        assertEquals(100000L, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void emptySnapshot() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0L, snapshot.getPercentile(99));
+    }
+}
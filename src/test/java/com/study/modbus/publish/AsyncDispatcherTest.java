@@ -0,0 +1,205 @@
+package com.study.modbus.publish;
+
+import cn.tzauto.isecs.api.MsgListener;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncDispatcherTest {
+
+    private AsyncDispatcher dispatcher;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    /**
+     * 第一条消息阻塞推送线程，直到 release
+     */
+    private final MsgListener listener = new MsgListener() {
+        @Override
+        public void dealMultMsg(String s) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(s);
+        }
+
+        @Override
+        public void other() {
+        }
+    };
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void dropOldestMarksDropped() throws Exception {
+        dispatcher = new AsyncDispatcher(1, 2, OverloadPolicy.DROP_OLDEST);
+        AsyncDispatcher.Lane lane = dispatcher.lane(listener, "test");
+        lane.offer("0");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        lane.offer("1");
+        lane.offer("2");
+        assertFalse(lane.takeDropped());
+        lane.offer("3");
+        assertEquals(1L, lane.getDropped());
+        assertTrue(lane.takeDropped());
+        assertFalse(lane.takeDropped());
+
+        release.countDown();
+        waitFor(3);
+        assertEquals("[0, 2, 3]", received.toString());
+    }
+
+    @Test
+    public void conflateKeepsLatest() throws Exception {
+        dispatcher = new AsyncDispatcher(1, 10, OverloadPolicy.CONFLATE);
+        AsyncDispatcher.Lane lane = dispatcher.lane(listener, "test");
+        lane.offer("0");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        lane.offer("1");
+        lane.offer("2");
+        lane.offer("3");
+        assertEquals(1, lane.getDepth());
+        release.countDown();
+        waitFor(2);
+        assertEquals("[0, 3]", received.toString());
+    }
+
+    @Test
+    public void closeWakesBlockedOffer() throws Exception {
+        dispatcher = new AsyncDispatcher(1, 1, OverloadPolicy.BLOCK);
+        AsyncDispatcher.Lane lane = dispatcher.lane(listener, "test");
+        lane.offer("0");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        lane.offer("1");
+
+        AtomicReference<Object> result = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                result.set(lane.offer("2"));
+            } catch (InterruptedException e) {
+                result.set(e);
+            }
+        });
+        producer.start();
+        waitForState(producer, Thread.State.WAITING);
+        lane.close();
+        producer.join(5000L);
+        assertEquals(Boolean.FALSE, result.get());
+        assertEquals(0, lane.getDepth());
+    }
+
+    @Test
+    public void interruptDuringBlockedOffer() throws Exception {
+        dispatcher = new AsyncDispatcher(1, 1, OverloadPolicy.BLOCK);
+        AsyncDispatcher.Lane lane = dispatcher.lane(listener, "test");
+        lane.offer("0");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        lane.offer("1");
+
+        AtomicReference<Object> result = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                result.set(lane.offer("2"));
+            } catch (InterruptedException e) {
+                result.set(e);
+            }
+        });
+        producer.start();
+        waitForState(producer, Thread.State.WAITING);
+        producer.interrupt();
+        producer.join(5000L);
+        assertTrue(result.get() instanceof InterruptedException);
+    }
+
+    @Test
+    public void cycleIsConflatedAsOneMessage() throws Exception {
+        dispatcher = new AsyncDispatcher(1, 10, OverloadPolicy.CONFLATE);
+        List<String> binary = new CopyOnWriteArrayList<>();
+        AsyncDispatcher.Lane lane = dispatcher.lane(listener, new BinaryMsgListener() {
+            @Override
+            public void dealSchema(ByteBuffer schema) {
+                binary.add("schema" + schema.get(1));
+            }
+
+            @Override
+            public void dealFrame(ByteBuffer frame) {
+                binary.add("frame" + frame.get(1));
+            }
+        }, "test");
+        lane.offer("0");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        //同一周期的 JSON、schema 和 frame 作为一条，不会互相替换
+        lane.offer("1", new byte[]{BinaryPayloadEncoder.MSG_SCHEMA, 1}, new byte[]{BinaryPayloadEncoder.MSG_FRAME, 1});
+        assertEquals(1, lane.getDepth());
+        assertFalse(lane.takeDropped());
+        release.countDown();
+        waitFor(2);
+        assertEquals("[0, 1]", received.toString());
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (binary.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals("[schema1, frame1]", binary.toString());
+    }
+
+    @Test
+    public void binaryFailureRequestsResync() throws Exception {
+        dispatcher = new AsyncDispatcher(1, 10, OverloadPolicy.DROP_OLDEST);
+        CountDownLatch failed = new CountDownLatch(1);
+        AsyncDispatcher.Lane lane = dispatcher.lane(null, new BinaryMsgListener() {
+            @Override
+            public void dealSchema(ByteBuffer schema) {
+                failed.countDown();
+                throw new IllegalStateException("下游不可用");
+            }
+
+            @Override
+            public void dealFrame(ByteBuffer frame) {
+            }
+        }, "test");
+        lane.offer(null, new byte[]{BinaryPayloadEncoder.MSG_SCHEMA}, new byte[]{BinaryPayloadEncoder.MSG_FRAME});
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000L;
+        boolean dropped = false;
+        while (!dropped && System.currentTimeMillis() < deadline) {
+            dropped = lane.takeDropped();
+            Thread.sleep(10L);
+        }
+        assertTrue(dropped);
+    }
+
+    private void waitFor(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private static void waitForState(Thread thread, Thread.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (thread.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+}
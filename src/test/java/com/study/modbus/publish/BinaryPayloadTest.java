@@ -0,0 +1,119 @@
+package com.study.modbus.publish;
+
+import com.serotonin.modbus4j.code.DataType;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryPayloadTest {
+
+    private final BinaryPayloadEncoder encoder = new BinaryPayloadEncoder();
+
+    private final BinaryPayloadDecoder decoder = new BinaryPayloadDecoder();
+
+    @Test
+    public void roundTrip() {
+        List<String> keys = Arrays.asList("coil", "int", "long", "float", "double", "text");
+        int[] dataTypes = {DataType.BINARY, DataType.TWO_BYTE_INT_SIGNED, DataType.EIGHT_BYTE_INT_SIGNED,
+                DataType.FOUR_BYTE_FLOAT, DataType.EIGHT_BYTE_FLOAT, DataType.VARCHAR};
+        Object[] results = {true, (short) -7, Long.MAX_VALUE, 1.5f, -2.25d, "温度"};
+
+        assertTrue(encoder.needsSchema(keys));
+        assertNull(decoder.decode(copy(encoder.writeSchema(keys, dataTypes))));
+        assertFalse(encoder.needsSchema(keys));
+
+        BinaryPayloadDecoder.Frame frame = decoder.decode(copy(encoder.writeFrame(keys, results, null, 1234L)));
+        assertEquals(1234L, frame.getTimestamp());
+        Map<String, Object> values = frame.getValues();
+        assertEquals(Arrays.asList("coil", "int", "long", "float", "double", "text"), new ArrayList<>(values.keySet()));
+        assertEquals(true, values.get("coil"));
+        assertEquals(-7, values.get("int"));
+        assertEquals(Long.MAX_VALUE, values.get("long"));
+        assertEquals(1.5f, values.get("float"));
+        assertEquals(-2.25d, values.get("double"));
+        assertEquals("温度", values.get("text"));
+    }
+
+    @Test
+    public void maskAndMissingValuesAreSkipped() {
+        List<String> keys = Arrays.asList("a", "b", "c");
+        int[] dataTypes = {DataType.TWO_BYTE_INT_UNSIGNED, DataType.TWO_BYTE_INT_UNSIGNED, DataType.TWO_BYTE_INT_UNSIGNED};
+        Object[] results = {1, null, 3};
+        decoder.decode(copy(encoder.writeSchema(keys, dataTypes)));
+
+        Map<String, Object> values = decoder.decode(copy(encoder.writeFrame(keys, results, null, 0L))).getValues();
+        assertEquals(2, values.size());
+        assertEquals(3, values.get("c"));
+
+        values = decoder.decode(copy(encoder.writeFrame(keys, results, new boolean[]{false, true, true}, 0L))).getValues();
+        assertEquals(1, values.size());
+        assertEquals(3, values.get("c"));
+    }
+
+    @Test
+    public void resetResendsSchema() {
+        List<String> keys = Arrays.asList("a");
+        int[] dataTypes = {DataType.TWO_BYTE_INT_UNSIGNED};
+        int first = decodeSchemaId(keys, dataTypes);
+        encoder.reset();
+        assertTrue(encoder.needsSchema(keys));
+        try {
+            encoder.writeFrame(keys, new Object[1], null, 0L);
+            fail();
+        } catch (IllegalStateException e) {
+            //需要先发送 schema
+        }
+        int second = decodeSchemaId(keys, dataTypes);
+        assertTrue(second != first);
+    }
+
+    @Test
+    public void bufferGrowsForLargeSchema() {
+        List<String> keys = new ArrayList<>();
+        Object[] results = new Object[2000];
+        for (int i = 0; i < 2000; i++) {
+            keys.add("point-" + i);
+            results[i] = i;
+        }
+        int[] dataTypes = new int[keys.size()];
+        Arrays.fill(dataTypes, DataType.FOUR_BYTE_INT_SIGNED);
+        decoder.decode(copy(encoder.writeSchema(keys, dataTypes)));
+        Map<String, Object> values = decoder.decode(copy(encoder.writeFrame(keys, results, null, 0L))).getValues();
+        assertEquals(2000, values.size());
+        assertEquals(1999, values.get("point-1999"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void frameWithoutSchemaIsRejected() {
+        List<String> keys = Arrays.asList("a");
+        encoder.writeSchema(keys, new int[]{DataType.TWO_BYTE_INT_UNSIGNED});
+        Object[] results = {1};
+        new BinaryPayloadDecoder().decode(copy(encoder.writeFrame(keys, results, null, 0L)));
+    }
+
+    private int decodeSchemaId(List<String> keys, int[] dataTypes) {
+        decoder.decode(copy(encoder.writeSchema(keys, dataTypes)));
+        Object[] results = {1};
+        return decoder.decode(copy(encoder.writeFrame(keys, results, null, 0L))).getSchemaId();
+    }
+
+    /**
+     * 编码结果在下一次编码前有效，与 BinaryMsgListener 的使用方式相同先复制
+     */
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+}
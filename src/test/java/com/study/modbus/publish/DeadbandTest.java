@@ -0,0 +1,62 @@
+package com.study.modbus.publish;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeadbandTest {
+
+    @Test
+    public void firstValueIsReported() {
+        assertTrue(Deadband.absolute(10).report(null, 1.0, 0L));
+    }
+
+    @Test
+    public void absoluteThreshold() {
+        Deadband deadband = Deadband.absolute(0.5);
+        assertFalse(deadband.report(10.0, 10.5, 1000L));
+        assertTrue(deadband.report(10.0, 10.6, 1000L));
+        assertTrue(deadband.report(10.0, 9.4, 1000L));
+    }
+
+    @Test
+    public void percentOfLastReportedValue() {
+        Deadband deadband = Deadband.percent(10);
+        assertFalse(deadband.report(200, 219, 1000L));
+        assertTrue(deadband.report(200, 221, 1000L));
+        //上一次为0时任何变化都推送
+        assertTrue(deadband.report(0, 1, 1000L));
+    }
+
+    @Test
+    public void largerThresholdWins() {
+        Deadband deadband = new Deadband(5, 1, 0L, 0L);
+        assertFalse(deadband.report(100.0, 104.0, 1000L));
+        assertTrue(deadband.report(1000.0, 1011.0, 1000L));
+        assertFalse(deadband.report(1000.0, 1009.0, 1000L));
+    }
+
+    @Test
+    public void intervals() {
+        Deadband deadband = new Deadband(0, 0, 100L, 1000L);
+        assertFalse(deadband.report(1, 2, 50L));
+        assertTrue(deadband.report(1, 2, 100L));
+        assertFalse(deadband.report(1, 1, 999L));
+        assertTrue(deadband.report(1, 1, 1000L));
+    }
+
+    @Test
+    public void nanAndNonNumeric() {
+        Deadband deadband = Deadband.absolute(1);
+        assertTrue(deadband.report(1.0, Double.NaN, 1000L));
+        assertFalse(deadband.report(Double.NaN, Double.NaN, 1000L));
+        assertFalse(deadband.report(Boolean.TRUE, Boolean.TRUE, 1000L));
+        assertTrue(deadband.report(Boolean.TRUE, Boolean.FALSE, 1000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDeadbandRejected() {
+        Deadband.absolute(-1);
+    }
+}
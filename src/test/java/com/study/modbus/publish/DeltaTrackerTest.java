@@ -0,0 +1,97 @@
+package com.study.modbus.publish;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 变化掩码、强制全量推送和死区
+ */
+public class DeltaTrackerTest {
+
+    private final List<String> keys = Arrays.asList("a", "b", "c");
+
+    @Test
+    public void firstCycleIsFull() {
+        DeltaTracker tracker = new DeltaTracker(0L);
+        assertEquals(3, tracker.delta(keys, new Object[]{1, 2, 3}, 0L));
+        assertMask(tracker, true, true, true);
+    }
+
+    @Test
+    public void onlyChangedPointsAreReported() {
+        DeltaTracker tracker = new DeltaTracker(0L);
+        tracker.delta(keys, new Object[]{1, 2, 3}, 0L);
+        assertEquals(0, tracker.delta(keys, new Object[]{1, 2, 3}, 100L));
+        assertMask(tracker, false, false, false);
+        assertEquals(1, tracker.delta(keys, new Object[]{1, 5, 3}, 200L));
+        assertMask(tracker, false, true, false);
+    }
+
+    @Test
+    public void missingValueIsNotReported() {
+        DeltaTracker tracker = new DeltaTracker(0L);
+        assertEquals(2, tracker.delta(keys, new Object[]{1, null, 3}, 0L));
+        assertMask(tracker, true, false, true);
+        //之后读到的值与空值比较，视为变化
+        assertEquals(1, tracker.delta(keys, new Object[]{1, 2, 3}, 100L));
+        assertMask(tracker, false, true, false);
+    }
+
+    @Test
+    public void fullIntervalForcesFullPush() {
+        DeltaTracker tracker = new DeltaTracker(1000L);
+        tracker.delta(keys, new Object[]{1, 2, 3}, 0L);
+        assertEquals(0, tracker.delta(keys, new Object[]{1, 2, 3}, 999L));
+        assertEquals(3, tracker.delta(keys, new Object[]{1, 2, 3}, 1000L));
+        assertEquals(0, tracker.delta(keys, new Object[]{1, 2, 3}, 1500L));
+    }
+
+    @Test
+    public void resetForcesFullPush() {
+        DeltaTracker tracker = new DeltaTracker(0L);
+        tracker.delta(keys, new Object[]{1, 2, 3}, 0L);
+        tracker.reset();
+        assertEquals(3, tracker.delta(keys, new Object[]{1, 2, 3}, 100L));
+    }
+
+    @Test
+    public void newKeyListForcesFullPush() {
+        DeltaTracker tracker = new DeltaTracker(0L);
+        tracker.delta(keys, new Object[]{1, 2, 3}, 0L);
+        //点位列表按引用比较，重新规划后是新的列表
+        assertEquals(3, tracker.delta(new ArrayList<>(keys), new Object[]{1, 2, 3}, 100L));
+    }
+
+    @Test
+    public void deadbandComparesWithLastReportedValue() {
+        DeltaTracker tracker = new DeltaTracker(0L);
+        tracker.setDeadbands(Collections.singletonMap("a", Deadband.absolute(1)));
+        tracker.delta(keys, new Object[]{10.0, 2, 3}, 0L);
+        assertEquals(0, tracker.delta(keys, new Object[]{10.6, 2, 3}, 100L));
+        //缓慢漂移累计超过死区后推送
+        assertEquals(1, tracker.delta(keys, new Object[]{11.2, 2, 3}, 200L));
+        assertMask(tracker, true, false, false);
+        assertEquals(0, tracker.delta(keys, new Object[]{11.9, 2, 3}, 300L));
+    }
+
+    @Test
+    public void deadbandsCanBeReplaced() {
+        DeltaTracker tracker = new DeltaTracker(0L);
+        tracker.setDeadbands(Collections.singletonMap("a", Deadband.absolute(100)));
+        tracker.delta(keys, new Object[]{10.0, 2, 3}, 0L);
+        assertEquals(0, tracker.delta(keys, new Object[]{20.0, 2, 3}, 100L));
+        tracker.setDeadbands(Collections.emptyMap());
+        assertEquals(1, tracker.delta(keys, new Object[]{20.0, 2, 3}, 200L));
+    }
+
+    private static void assertMask(DeltaTracker tracker, boolean... expected) {
+        assertArrayEquals(expected, tracker.getMask());
+    }
+}
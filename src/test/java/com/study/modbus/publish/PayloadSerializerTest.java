@@ -0,0 +1,84 @@
+package com.study.modbus.publish;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 输出与 gson 相同的 JSON 格式
+ */
+public class PayloadSerializerTest {
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void matchesGson() {
+        List<String> keys = Arrays.asList("40001", "40003", "00001", "40005", "40007");
+        Object[] values = {123, 45.5f, true, 70000L, 0.1d};
+        PayloadSerializer serializer = new PayloadSerializer();
+        assertEquals(5, serializer.write(keys, values, null));
+        assertEquals(gson.toJson(wrap(keys, values)), serializer.toString());
+    }
+
+    @Test
+    public void keysAndStringsAreEscapedLikeGson() {
+        List<String> keys = Arrays.asList("a\"b", "c\\d", "<tag>&'=", "line\n\t\u0001");
+        Object[] values = {"x\"y", "<v>", " ", "plain"};
+        PayloadSerializer serializer = new PayloadSerializer();
+        serializer.write(keys, values, null);
+        assertEquals(gson.toJson(wrap(keys, values)), serializer.toString());
+    }
+
+    @Test
+    public void missingAndMaskedPointsAreSkipped() {
+        List<String> keys = Arrays.asList("a", "b", "c", "d");
+        PayloadSerializer serializer = new PayloadSerializer();
+        assertEquals(1, serializer.write(keys, new Object[]{1, null, 3, 4}, new boolean[]{false, true, true, false}));
+        assertEquals("{\"data\":{\"c\":3}}", serializer.toString());
+        assertEquals(0, serializer.write(keys, new Object[]{1, 2, 3, 4}, new boolean[4]));
+        assertEquals("{\"data\":{}}", serializer.toString());
+    }
+
+    @Test
+    public void nonFiniteNumbersAreWrittenAsNull() {
+        List<String> keys = Arrays.asList("a", "b", "c");
+        PayloadSerializer serializer = new PayloadSerializer();
+        serializer.write(keys, new Object[]{Float.NaN, Double.POSITIVE_INFINITY, 1.0d}, null);
+        assertEquals("{\"data\":{\"a\":null,\"b\":null,\"c\":1.0}}", serializer.toString());
+    }
+
+    @Test
+    public void bufferIsReused() {
+        List<String> keys = Collections.singletonList("a");
+        PayloadSerializer serializer = new PayloadSerializer();
+        serializer.write(keys, new Object[]{1}, null);
+        CharSequence buffer = serializer.buffer();
+        serializer.write(keys, new Object[]{2}, null);
+        assertSame(buffer, serializer.buffer());
+        assertEquals("{\"data\":{\"a\":2}}", buffer.toString());
+    }
+
+    @Test
+    public void countSkipsMissingValues() {
+        assertEquals(2, PayloadSerializer.count(new Object[]{1, null, "x", null}));
+        assertEquals(0, PayloadSerializer.count(new Object[0]));
+    }
+
+    private static Map<String, Object> wrap(List<String> keys, Object[] values) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (values[i] != null) {
+                data.put(keys.get(i), values[i]);
+            }
+        }
+        return Collections.singletonMap("data", data);
+    }
+}
@@ -0,0 +1,101 @@
+package com.study.modbus.tag;
+
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.image.RegisterImage;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 地址编译为句柄,按句柄从寄存器镜像读取
+ */
+public class TagTableTest {
+
+    private final TagTable table = new TagTable();
+
+    @Test
+    public void addressIsCompiledOnce() {
+        int handle = table.register("40011", 2, DataType.FOUR_BYTE_FLOAT);
+        assertEquals(handle, table.register("40011", 2, DataType.FOUR_BYTE_FLOAT));
+        assertEquals(handle, table.find("40011", 2, DataType.FOUR_BYTE_FLOAT));
+        assertEquals(RegisterRange.HOLDING_REGISTER, table.getFunctionCode(handle));
+        assertEquals(10, table.getOffset(handle));
+        assertEquals(2, table.getWidth(handle));
+        assertEquals(2, table.getSlaveId(handle));
+        assertEquals("40011", table.getKey(handle));
+        //slaveId 或数据类型不同时是不同的点位
+        assertNotEquals(handle, table.register("40011", 1, DataType.FOUR_BYTE_FLOAT));
+        assertNotEquals(handle, table.register("40011", 2, DataType.TWO_BYTE_INT_UNSIGNED));
+        assertEquals(-1, table.find("40012", 2, DataType.FOUR_BYTE_FLOAT));
+    }
+
+    @Test
+    public void bitAddressesUseOneBit() {
+        int coil = table.register("00005", 1, DataType.BINARY);
+        int input = table.register("10001", 1, DataType.BINARY);
+        assertEquals(RegisterRange.COIL_STATUS, table.getFunctionCode(coil));
+        assertEquals(RegisterRange.INPUT_STATUS, table.getFunctionCode(input));
+        assertEquals(1, table.getWidth(coil));
+        assertEquals(DataType.BINARY, table.getDataType(input));
+        BaseLocator<?> locator = table.locator(coil);
+        assertEquals(RegisterRange.COIL_STATUS, locator.getRange());
+        assertEquals(4, locator.getOffset());
+    }
+
+    @Test
+    public void tableGrowsPastInitialCapacity() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, table.register("3" + (1001 + i), 1, DataType.TWO_BYTE_INT_UNSIGNED));
+        }
+        assertEquals(100, table.size());
+        assertEquals(1099, table.getOffset(99));
+        assertEquals(RegisterRange.INPUT_REGISTER, table.locator(99).getRange());
+    }
+
+    @Test
+    public void invalidAddressIsRejected() {
+        for (String addr : new String[]{null, "4", "50001", "4x001"}) {
+            try {
+                table.register(addr, 1, DataType.TWO_BYTE_INT_UNSIGNED);
+                fail(addr);
+            } catch (IllegalArgumentException e) {
+                //NumberFormatException 也是 IllegalArgumentException
+            }
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void unknownHandleIsRejected() {
+        table.register("40001", 1, DataType.TWO_BYTE_INT_UNSIGNED);
+        try {
+            table.getOffset(1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //只能使用 register 返回的句柄
+        }
+    }
+
+    @Test
+    public void readsFromRegisterImage() {
+        RegisterImage image = new RegisterImage();
+        int value = table.register("40001", 1, DataType.FOUR_BYTE_FLOAT);
+        int signed = table.register("40003", 1, DataType.TWO_BYTE_INT_SIGNED);
+        int coil = table.register("00004", 1, DataType.BINARY);
+        assertEquals(Double.NaN, table.read(image, value), 0.0);
+        assertEquals(0L, table.getTimestamp(image, value));
+
+        int bits = Float.floatToIntBits(2.5f);
+        image.update(1, RegisterRange.HOLDING_REGISTER, 0, 3,
+                new byte[]{(byte) (bits >> 24), (byte) (bits >> 16), (byte) (bits >> 8), (byte) bits, (byte) 0xFF, (byte) 0xF6}, 100L);
+        image.update(1, RegisterRange.COIL_STATUS, 0, 8, new byte[]{0x08}, 100L);
+        assertEquals(2.5, table.read(image, value), 0.0);
+        assertEquals(-10.0, table.read(image, signed), 0.0);
+        assertEquals(1.0, table.read(image, coil), 0.0);
+        assertEquals(100L, table.getTimestamp(image, value));
+    }
+}
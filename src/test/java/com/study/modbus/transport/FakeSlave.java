@@ -0,0 +1,159 @@
+package com.study.modbus.transport;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的 Modbus TCP slave,监听本机随机端口
+ * 保持寄存器和输入寄存器的值等于地址,线圈和离散输入的值为地址是否为奇数；
+ * 同一连接上的请求默认按顺序逐个应答,可以设置异常码、应答延迟,或攒够一批请求后倒序应答
+ */
+public class FakeSlave implements Closeable {
+
+    private final ServerSocket server;
+
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * 不为0时以该异常码应答所有请求
+     */
+    private volatile int exceptionCode;
+
+    /**
+     * 每个应答前等待的毫秒数
+     */
+    private volatile long delay;
+
+    /**
+     * 大于1时攒够该数量的请求后倒序应答,用于验证按事务号匹配响应
+     */
+    private volatile int reverseBatch;
+
+    public FakeSlave() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(this::accept, "fake-slave-" + server.getLocalPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * 已收到的请求数
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public void setExceptionCode(int exceptionCode) {
+        this.exceptionCode = exceptionCode;
+    }
+
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    public void setReverseBatch(int reverseBatch) {
+        this.reverseBatch = reverseBatch;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                sockets.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "fake-slave-connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException e) {
+            //close()
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            Deque<byte[]> pending = new ArrayDeque<>();
+            while (true) {
+                int transactionId = in.readUnsignedShort();
+                in.readUnsignedShort();
+                int length = in.readUnsignedShort();
+                int unitId = in.readUnsignedByte();
+                byte[] pdu = new byte[length - 1];
+                in.readFully(pdu);
+                requests.incrementAndGet();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                byte[] response = respond(pdu);
+                ByteBuffer frame = ByteBuffer.allocate(7 + response.length);
+                frame.putShort((short) transactionId).putShort((short) 0).putShort((short) (response.length + 1))
+                        .put((byte) unitId).put(response);
+                pending.push(frame.array());
+                if (pending.size() >= reverseBatch) {
+                    while (!pending.isEmpty()) {
+                        out.write(pending.pop());
+                    }
+                    out.flush();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            //连接关闭
+        }
+    }
+
+    private byte[] respond(byte[] pdu) {
+        int functionCode = pdu[0] & 0xFF;
+        int start = ((pdu[1] & 0xFF) << 8) | (pdu[2] & 0xFF);
+        int quantity = ((pdu[3] & 0xFF) << 8) | (pdu[4] & 0xFF);
+        if (exceptionCode != 0 || functionCode < 1 || functionCode > 4) {
+            return new byte[]{(byte) (functionCode | 0x80), (byte) (exceptionCode != 0 ? exceptionCode : 1)};
+        }
+        byte[] data;
+        if (functionCode <= 2) {
+            data = new byte[(quantity + 7) / 8];
+            for (int i = 0; i < quantity; i++) {
+                if ((start + i) % 2 == 1) {
+                    data[i / 8] |= (byte) (1 << (i % 8));
+                }
+            }
+        } else {
+            data = new byte[quantity * 2];
+            for (int i = 0; i < quantity; i++) {
+                int value = (start + i) & 0xFFFF;
+                data[i * 2] = (byte) (value >> 8);
+                data[i * 2 + 1] = (byte) value;
+            }
+        }
+        byte[] response = new byte[data.length + 2];
+        response[0] = (byte) functionCode;
+        response[1] = (byte) data.length;
+        System.arraycopy(data, 0, response, 2, data.length);
+        return response;
+    }
+}
@@ -0,0 +1,111 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.exception.ModbusInitException;
+import com.serotonin.modbus4j.ip.IpParameters;
+import com.serotonin.modbus4j.ip.tcp.TcpMaster;
+import com.study.modbus.util.ModbusUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MasterPoolTest {
+
+    @Test
+    public void lastReleaseRemovesPool() {
+        MasterPool first = MasterPool.acquire("127.0.0.1", 10001, 2);
+        MasterPool second = MasterPool.acquire("127.0.0.1", 10001, 2);
+        assertSame(first, second);
+
+        first.release();
+        MasterPool third = MasterPool.acquire("127.0.0.1", 10001, 2);
+        assertSame(first, third);
+
+        second.release();
+        third.release();
+        MasterPool fresh = MasterPool.acquire("127.0.0.1", 10001, 2);
+        assertNotSame(first, fresh);
+        fresh.release();
+    }
+
+    @Test
+    public void giveBackAfterReleaseDestroysMaster() {
+        MasterPool pool = MasterPool.acquire("127.0.0.1", 10002, 2);
+        CountingMaster kept = new CountingMaster();
+        pool.giveBack(kept, false);
+        assertEquals(1, pool.getIdle());
+        assertFalse(kept.destroyed);
+
+        pool.release();
+        assertTrue(kept.destroyed);
+        assertEquals(0, pool.getIdle());
+
+        //释放时仍在使用中的连接，归还时关闭
+        CountingMaster borrowed = new CountingMaster();
+        pool.giveBack(borrowed, false);
+        assertTrue(borrowed.destroyed);
+        assertEquals(0, pool.getIdle());
+    }
+
+    @Test
+    public void brokenMasterIsDestroyed() {
+        MasterPool pool = MasterPool.acquire("127.0.0.1", 10003, 2);
+        CountingMaster broken = new CountingMaster();
+        pool.giveBack(broken, true);
+        assertTrue(broken.destroyed);
+        assertEquals(0, pool.getIdle());
+        pool.release();
+    }
+
+    @Test
+    public void pooledInitConnects() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            PooledTcpMaster master = (PooledTcpMaster) ModbusUtils.getPooledMaster("127.0.0.1", server.getLocalPort(), 2);
+            //init 借出的连接已归还
+            assertEquals(1, master.getPool().getIdle());
+            master.destroy();
+        }
+    }
+
+    @Test
+    public void pooledInitFailsWhenPortClosed() throws Exception {
+        int port = closedPort();
+        try {
+            ModbusUtils.getPooledMaster("127.0.0.1", port, 2);
+            fail();
+        } catch (ModbusInitException e) {
+            //失败的 master 已释放连接池
+            MasterPool pool = MasterPool.acquire("127.0.0.1", port, 3);
+            assertEquals(3, pool.getSize());
+            pool.release();
+        }
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class CountingMaster extends TcpMaster {
+
+        private boolean destroyed;
+
+        CountingMaster() {
+            super(new IpParameters(), true);
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+            super.destroy();
+        }
+    }
+}
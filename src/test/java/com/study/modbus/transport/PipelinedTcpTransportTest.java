@@ -0,0 +1,130 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.BatchResults;
+import com.serotonin.modbus4j.base.KeyedModbusLocator;
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.study.modbus.exception.SlaveErrorException;
+import com.study.modbus.image.RegisterImage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * 寄存器的值等于地址，见 FakeSlave
+ */
+public class PipelinedTcpTransportTest {
+
+    private FakeSlave slave;
+
+    private PipelinedTcpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        slave = new FakeSlave();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (transport != null) {
+            transport.close();
+        }
+        slave.close();
+    }
+
+    @Test
+    public void responsesAreMatchedByTransactionId() throws Exception {
+        //4个请求全部发出后 slave 才倒序应答，逐个等待应答的实现会超时
+        slave.setReverseBatch(4);
+        transport = new PipelinedTcpTransport("127.0.0.1", slave.getPort(), 2000, 4);
+        BatchResults<String> results = transport.read(blocks(0, 10, 20, 30));
+        assertEquals(0, results.getValue("r0"));
+        assertEquals(10, results.getValue("r10"));
+        assertEquals(20, results.getValue("r20"));
+        assertEquals(30, results.getValue("r30"));
+        assertEquals(4, slave.getRequests());
+    }
+
+    @Test
+    public void inFlightRequestsAreLimited() throws Exception {
+        //窗口为2时每次最多2个未应答的请求
+        slave.setReverseBatch(2);
+        transport = new PipelinedTcpTransport("127.0.0.1", slave.getPort(), 2000, 2);
+        BatchResults<String> results = transport.read(blocks(1, 2, 3, 4, 5, 6));
+        for (int i = 1; i <= 6; i++) {
+            assertEquals(i, results.getValue("r" + i));
+        }
+    }
+
+    @Test
+    public void valuesAreWrittenBySlot() throws Exception {
+        transport = new PipelinedTcpTransport("127.0.0.1", slave.getPort(), 2000, 4);
+        List<ReadBlock<String>> blocks = new RequestPlanner(0, 0).plan(locators(7, 3, 100));
+        Object[] values = new Object[3];
+        RegisterImage image = new RegisterImage();
+        transport.read(blocks, image, null, values);
+        //按地址排序后编号
+        assertArrayEquals(new Object[]{3, 7, 100}, values);
+        assertEquals(100, image.getRegister(1, RegisterRange.HOLDING_REGISTER, 100));
+    }
+
+    @Test
+    public void exceptionResponseFailsRead() throws Exception {
+        transport = new PipelinedTcpTransport("127.0.0.1", slave.getPort(), 2000, 4);
+        slave.setExceptionCode(2);
+        try {
+            transport.read(blocks(0, 10));
+            fail();
+        } catch (SlaveErrorException e) {
+            assertEquals(RegisterRange.HOLDING_REGISTER, e.getFunctionCode());
+            assertEquals(2, e.getExceptionCode());
+        }
+        //异常响应不影响连接
+        slave.setExceptionCode(0);
+        assertEquals(10, transport.read(blocks(10)).getValue("r10"));
+    }
+
+    @Test
+    public void timeoutReconnectsOnNextRead() throws Exception {
+        transport = new PipelinedTcpTransport("127.0.0.1", slave.getPort(), 200, 4);
+        slave.setDelay(1000L);
+        try {
+            transport.read(blocks(0));
+            fail();
+        } catch (ModbusTransportException e) {
+            assertFalse(e instanceof SlaveErrorException);
+        }
+        slave.setDelay(0L);
+        assertEquals(5, transport.read(blocks(5)).getValue("r5"));
+    }
+
+    /**
+     * 每个地址一个请求块
+     */
+    private static List<ReadBlock<String>> blocks(int... offsets) {
+        List<ReadBlock<String>> blocks = new ArrayList<>();
+        for (int offset : offsets) {
+            blocks.add(new ReadBlock<>(1, RegisterRange.HOLDING_REGISTER, offset, 1, locators(offset)));
+        }
+        return blocks;
+    }
+
+    private static List<KeyedModbusLocator<String>> locators(int... offsets) {
+        List<KeyedModbusLocator<String>> locators = new ArrayList<>();
+        for (int offset : offsets) {
+            locators.add(new KeyedModbusLocator<>("r" + offset, BaseLocator.holdingRegister(1, offset, DataType.TWO_BYTE_INT_UNSIGNED)));
+        }
+        return locators;
+    }
+}
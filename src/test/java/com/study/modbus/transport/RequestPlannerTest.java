@@ -0,0 +1,134 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.base.KeyedModbusLocator;
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RequestPlannerTest {
+
+    @Test
+    public void smallGapIsMerged() {
+        RequestPlanner planner = new RequestPlanner(10, 20);
+        List<ReadBlock<String>> blocks = planner.plan(Arrays.asList(
+                holding("a", 0, DataType.TWO_BYTE_INT_UNSIGNED),
+                holding("b", 5, DataType.FOUR_BYTE_FLOAT)));
+        assertEquals(1, blocks.size());
+        assertBlock(blocks.get(0), RegisterRange.HOLDING_REGISTER, 0, 7, 2);
+    }
+
+    @Test
+    public void gapLargerThanMaxGapIsSplit() {
+        RequestPlanner planner = new RequestPlanner(10, 100);
+        List<ReadBlock<String>> blocks = planner.plan(Arrays.asList(
+                holding("a", 0, DataType.TWO_BYTE_INT_UNSIGNED),
+                holding("b", 12, DataType.TWO_BYTE_INT_UNSIGNED)));
+        assertEquals(2, blocks.size());
+        assertBlock(blocks.get(0), RegisterRange.HOLDING_REGISTER, 0, 1, 1);
+        assertBlock(blocks.get(1), RegisterRange.HOLDING_REGISTER, 12, 1, 1);
+    }
+
+    @Test
+    public void gapCostlierThanRoundTripIsSplit() {
+        //空隙8个寄存器为16字节,超过一次往返的代价
+        RequestPlanner planner = new RequestPlanner(100, 15);
+        List<ReadBlock<String>> blocks = planner.plan(Arrays.asList(
+                holding("a", 0, DataType.TWO_BYTE_INT_UNSIGNED),
+                holding("b", 9, DataType.TWO_BYTE_INT_UNSIGNED)));
+        assertEquals(2, blocks.size());
+
+        planner = new RequestPlanner(100, 16);
+        blocks = planner.plan(Arrays.asList(
+                holding("a", 0, DataType.TWO_BYTE_INT_UNSIGNED),
+                holding("b", 9, DataType.TWO_BYTE_INT_UNSIGNED)));
+        assertEquals(1, blocks.size());
+        assertBlock(blocks.get(0), RegisterRange.HOLDING_REGISTER, 0, 10, 2);
+    }
+
+    @Test
+    public void bitGapIsCountedInBytes() {
+        //空隙15位为2字节
+        RequestPlanner planner = new RequestPlanner(100, 2);
+        List<ReadBlock<String>> blocks = planner.plan(Arrays.asList(
+                new KeyedModbusLocator<>("a", BaseLocator.coilStatus(1, 0)),
+                new KeyedModbusLocator<>("b", BaseLocator.coilStatus(1, 16))));
+        assertEquals(1, blocks.size());
+        assertBlock(blocks.get(0), RegisterRange.COIL_STATUS, 0, 17, 2);
+    }
+
+    @Test
+    public void registerLimitIsRespected() {
+        RequestPlanner planner = new RequestPlanner(0, 0);
+        List<KeyedModbusLocator<String>> locators = new ArrayList<>();
+        for (int i = 0; i < 130; i++) {
+            locators.add(holding("r" + i, i, DataType.TWO_BYTE_INT_UNSIGNED));
+        }
+        List<ReadBlock<String>> blocks = planner.plan(locators);
+        assertEquals(2, blocks.size());
+        assertBlock(blocks.get(0), RegisterRange.HOLDING_REGISTER, 0, RequestPlanner.MAX_READ_REGISTERS, RequestPlanner.MAX_READ_REGISTERS);
+        assertBlock(blocks.get(1), RegisterRange.HOLDING_REGISTER, 125, 5, 5);
+    }
+
+    @Test
+    public void slavesAndRangesAreNotMerged() {
+        RequestPlanner planner = new RequestPlanner(100, 100);
+        List<ReadBlock<String>> blocks = planner.plan(Arrays.asList(
+                holding("h2", 1, DataType.TWO_BYTE_INT_UNSIGNED),
+                new KeyedModbusLocator<>("i1", BaseLocator.inputRegister(1, 1, DataType.TWO_BYTE_INT_UNSIGNED)),
+                new KeyedModbusLocator<>("h1-other", BaseLocator.holdingRegister(2, 0, DataType.TWO_BYTE_INT_UNSIGNED)),
+                holding("h1", 0, DataType.TWO_BYTE_INT_UNSIGNED)));
+        assertEquals(3, blocks.size());
+        //按 slaveId、功能码、地址排序
+        assertBlock(blocks.get(0), RegisterRange.HOLDING_REGISTER, 0, 2, 2);
+        assertEquals(1, blocks.get(0).getSlaveId());
+        assertBlock(blocks.get(1), RegisterRange.INPUT_REGISTER, 1, 1, 1);
+        assertEquals(2, blocks.get(2).getSlaveId());
+    }
+
+    @Test
+    public void overlappingLocatorsShareBlock() {
+        RequestPlanner planner = new RequestPlanner(0, 0);
+        List<ReadBlock<String>> blocks = planner.plan(Arrays.asList(
+                holding("float", 10, DataType.FOUR_BYTE_FLOAT),
+                holding("high", 10, DataType.TWO_BYTE_INT_UNSIGNED),
+                holding("low", 11, DataType.TWO_BYTE_INT_UNSIGNED)));
+        assertEquals(1, blocks.size());
+        assertBlock(blocks.get(0), RegisterRange.HOLDING_REGISTER, 10, 2, 3);
+    }
+
+    @Test
+    public void slotsFollowBlockOrder() {
+        RequestPlanner planner = new RequestPlanner(0, 0);
+        List<ReadBlock<String>> blocks = planner.plan(Arrays.asList(
+                holding("c", 20, DataType.TWO_BYTE_INT_UNSIGNED),
+                holding("a", 0, DataType.TWO_BYTE_INT_UNSIGNED),
+                holding("b", 1, DataType.TWO_BYTE_INT_UNSIGNED)));
+        assertEquals(2, blocks.size());
+        assertEquals(0, blocks.get(0).getFirstSlot());
+        assertEquals(2, blocks.get(1).getFirstSlot());
+
+        Object[] values = new Object[3];
+        blocks.get(0).decode(new byte[]{0, 1, 0, 2}, null, values);
+        blocks.get(1).decode(new byte[]{0, 3}, null, values);
+        assertArrayEquals(new Object[]{1, 2, 3}, values);
+    }
+
+    private static KeyedModbusLocator<String> holding(String key, int offset, int dataType) {
+        return new KeyedModbusLocator<>(key, BaseLocator.holdingRegister(1, offset, dataType));
+    }
+
+    private static void assertBlock(ReadBlock<String> block, int functionCode, int start, int length, int locators) {
+        assertEquals(functionCode, block.getFunctionCode());
+        assertEquals(start, block.getStartOffset());
+        assertEquals(length, block.getLength());
+        assertEquals(locators, block.getLocators().size());
+    }
+}
@@ -0,0 +1,108 @@
+package com.study.modbus.transport;
+
+import com.serotonin.modbus4j.code.DataType;
+import com.study.modbus.entity.WriteBean;
+import com.study.modbus.tag.TagTable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WritePlannerTest {
+
+    @Test
+    public void contiguousCoilsAreMerged() {
+        List<WriteBlock> blocks = WritePlanner.plan(Arrays.asList(
+                bean("00003", DataType.BINARY, true),
+                bean("00001", DataType.BINARY, true),
+                bean("00002", DataType.BINARY, false)));
+        assertEquals(1, blocks.size());
+        WriteBlock block = blocks.get(0);
+        assertTrue(block.isCoil());
+        assertEquals(0, block.getStartOffset());
+        assertArrayEquals(new boolean[]{true, false, true}, block.getCoils());
+        assertEquals(3, block.getBeans().size());
+    }
+
+    @Test
+    public void gapSplitsRequest() {
+        List<WriteBlock> blocks = WritePlanner.plan(Arrays.asList(
+                bean("40001", DataType.TWO_BYTE_INT_UNSIGNED, 1),
+                bean("40003", DataType.TWO_BYTE_INT_UNSIGNED, 3)));
+        //不覆盖没有要求写入的地址
+        assertEquals(2, blocks.size());
+        assertEquals(0, blocks.get(0).getStartOffset());
+        assertEquals(2, blocks.get(1).getStartOffset());
+    }
+
+    @Test
+    public void floatTakesTwoRegisters() {
+        List<WriteBlock> blocks = WritePlanner.plan(Arrays.asList(
+                bean("40001", DataType.FOUR_BYTE_FLOAT, 1.5f),
+                bean("40003", DataType.TWO_BYTE_INT_UNSIGNED, 7)));
+        assertEquals(1, blocks.size());
+        WriteBlock block = blocks.get(0);
+        assertFalse(block.isCoil());
+        int bits = Float.floatToIntBits(1.5f);
+        assertArrayEquals(new short[]{(short) (bits >> 16), (short) bits, 7}, block.getRegisters());
+    }
+
+    @Test
+    public void coilsAndRegistersAreSeparate() {
+        List<WriteBlock> blocks = WritePlanner.plan(Arrays.asList(
+                bean("40001", DataType.TWO_BYTE_INT_UNSIGNED, 1),
+                bean("00001", DataType.BINARY, true)));
+        assertEquals(2, blocks.size());
+        assertTrue(blocks.get(0).isCoil());
+        assertFalse(blocks.get(1).isCoil());
+    }
+
+    @Test
+    public void registerLimitIsRespected() {
+        List<WriteBean> beans = new ArrayList<>();
+        for (int i = 0; i < WritePlanner.MAX_WRITE_REGISTERS + 2; i++) {
+            beans.add(bean(String.format("4%04d", i + 1), DataType.TWO_BYTE_INT_UNSIGNED, i));
+        }
+        List<WriteBlock> blocks = WritePlanner.plan(beans);
+        assertEquals(2, blocks.size());
+        assertEquals(WritePlanner.MAX_WRITE_REGISTERS, blocks.get(0).getRegisters().length);
+        assertEquals(WritePlanner.MAX_WRITE_REGISTERS, blocks.get(1).getStartOffset());
+        assertEquals(2, blocks.get(1).getRegisters().length);
+    }
+
+    @Test
+    public void tagHandleOverridesAddress() {
+        TagTable tags = new TagTable();
+        int handle = tags.register("40010", 1, DataType.TWO_BYTE_INT_UNSIGNED);
+        WriteBean bean = bean("invalid", 0, 5);
+        bean.setTag(handle);
+        List<WriteBlock> blocks = WritePlanner.plan(Arrays.asList(bean), tags);
+        assertEquals(1, blocks.size());
+        assertEquals(9, blocks.get(0).getStartOffset());
+        assertArrayEquals(new short[]{5}, blocks.get(0).getRegisters());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void inputRegisterCannotBeWritten() {
+        WritePlanner.plan(Arrays.asList(bean("30001", DataType.TWO_BYTE_INT_UNSIGNED, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedDataTypeIsRejected() {
+        WritePlanner.plan(Arrays.asList(bean("40001", DataType.EIGHT_BYTE_FLOAT, 1d)));
+    }
+
+    private static WriteBean bean(String addr, int dataType, Object data) {
+        WriteBean bean = new WriteBean();
+        bean.setAddr(addr);
+        bean.setDataType(dataType);
+        bean.setData(data);
+        return bean;
+    }
+}
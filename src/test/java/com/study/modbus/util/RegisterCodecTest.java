@@ -0,0 +1,163 @@
+package com.study.modbus.util;
+
+import com.serotonin.modbus4j.code.DataType;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 期望值按 modbus4j NumericLocator 的解码规则计算
+ */
+public class RegisterCodecTest {
+
+    @Test
+    public void twoByteIntegers() {
+        ByteBuffer data = bytes(0xFF, 0xFE);
+        assertEquals(0xFFFEL, RegisterCodec.decodeLong(data, 0, DataType.TWO_BYTE_INT_UNSIGNED));
+        assertEquals(-2L, RegisterCodec.decodeLong(data, 0, DataType.TWO_BYTE_INT_SIGNED));
+        assertEquals(0xFEFFL, RegisterCodec.decodeLong(data, 0, DataType.TWO_BYTE_INT_UNSIGNED_SWAPPED));
+        assertEquals(-257L, RegisterCodec.decodeLong(data, 0, DataType.TWO_BYTE_INT_SIGNED_SWAPPED));
+    }
+
+    @Test
+    public void fourByteIntegers() {
+        ByteBuffer data = bytes(0x00, 0x01, 0xFF, 0xFF);
+        assertEquals(0x0001FFFFL, RegisterCodec.decodeLong(data, 0, DataType.FOUR_BYTE_INT_SIGNED));
+        assertEquals(0x0001FFFFL, RegisterCodec.decodeLong(data, 0, DataType.FOUR_BYTE_INT_UNSIGNED));
+        //寄存器顺序交换
+        assertEquals(0xFFFF0001L, RegisterCodec.decodeLong(data, 0, DataType.FOUR_BYTE_INT_UNSIGNED_SWAPPED));
+        assertEquals((long) 0xFFFF0001, RegisterCodec.decodeLong(data, 0, DataType.FOUR_BYTE_INT_SIGNED_SWAPPED));
+    }
+
+    @Test
+    public void eightByteIntegers() {
+        ByteBuffer data = bytes(0x00, 0x01, 0x00, 0x02, 0x00, 0x03, 0x00, 0x04);
+        assertEquals(0x0001000200030004L, RegisterCodec.decodeLong(data, 0, DataType.EIGHT_BYTE_INT_SIGNED));
+        assertEquals(0x0004000300020001L, RegisterCodec.decodeLong(data, 0, DataType.EIGHT_BYTE_INT_SIGNED_SWAPPED));
+
+        ByteBuffer max = bytes(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF);
+        assertEquals(-1L, RegisterCodec.decodeLong(max, 0, DataType.EIGHT_BYTE_INT_UNSIGNED));
+        //无符号按 double 解释为 2^64-1
+        assertEquals(18446744073709551615d, RegisterCodec.decodeDouble(max, 0, DataType.EIGHT_BYTE_INT_UNSIGNED), 0d);
+    }
+
+    @Test
+    public void floats() {
+        ByteBuffer data = bytes(0x3F, 0xC0, 0x00, 0x00);
+        assertEquals(1.5d, RegisterCodec.decodeDouble(data, 0, DataType.FOUR_BYTE_FLOAT), 0d);
+        ByteBuffer swapped = bytes(0x00, 0x00, 0x3F, 0xC0);
+        assertEquals(1.5d, RegisterCodec.decodeDouble(swapped, 0, DataType.FOUR_BYTE_FLOAT_SWAPPED), 0d);
+
+        long bits = Double.doubleToLongBits(-2.25d);
+        ByteBuffer eight = ByteBuffer.allocate(8).putLong(0, bits);
+        assertEquals(-2.25d, RegisterCodec.decodeDouble(eight, 0, DataType.EIGHT_BYTE_FLOAT), 0d);
+        ByteBuffer eightSwapped = ByteBuffer.allocate(8);
+        for (int i = 0; i < 4; i++) {
+            eightSwapped.putShort(i * 2, (short) (bits >>> (i * 16)));
+        }
+        assertEquals(-2.25d, RegisterCodec.decodeDouble(eightSwapped, 0, DataType.EIGHT_BYTE_FLOAT_SWAPPED), 0d);
+    }
+
+    @Test
+    public void bcdAndMod10k() {
+        assertEquals(1234L, RegisterCodec.decodeLong(bytes(0x12, 0x34), 0, DataType.TWO_BYTE_BCD));
+        ByteBuffer bcd = bytes(0x12, 0x34, 0x56, 0x78);
+        assertEquals(12345678L, RegisterCodec.decodeLong(bcd, 0, DataType.FOUR_BYTE_BCD));
+        assertEquals(56781234L, RegisterCodec.decodeLong(bcd, 0, DataType.FOUR_BYTE_BCD_SWAPPED));
+
+        //寄存器值 1, 2, 3, 4
+        ByteBuffer mod = bytes(0x00, 0x01, 0x00, 0x02, 0x00, 0x03, 0x00, 0x04);
+        assertEquals(10002L, RegisterCodec.decodeLong(mod, 0, DataType.FOUR_BYTE_MOD_10K));
+        assertEquals(20001L, RegisterCodec.decodeLong(mod, 0, DataType.FOUR_BYTE_MOD_10K_SWAPPED));
+        assertEquals(100020003L, RegisterCodec.decodeLong(mod, 0, DataType.SIX_BYTE_MOD_10K));
+        assertEquals(1000200030004L, RegisterCodec.decodeLong(mod, 0, DataType.EIGHT_BYTE_MOD_10K));
+    }
+
+    @Test
+    public void bulkDecodeStartsAtPosition() {
+        ByteBuffer data = bytes(0xAA, 0x00, 0x01, 0xFF, 0xFF, 0x00, 0x03);
+        data.position(1);
+        int[] ints = new int[4];
+        assertEquals(3, RegisterCodec.decodeInts(data, DataType.TWO_BYTE_INT_SIGNED, ints, 1, 3));
+        assertArrayEquals(new int[]{0, 1, -1, 3}, ints);
+        //不修改 position
+        assertEquals(1, data.position());
+
+        long[] longs = new long[3];
+        RegisterCodec.decodeLongs(data, DataType.TWO_BYTE_INT_UNSIGNED, longs, 0, 3);
+        assertArrayEquals(new long[]{1, 0xFFFF, 3}, longs);
+
+        double[] doubles = new double[3];
+        RegisterCodec.decodeDoubles(data, DataType.TWO_BYTE_INT_SIGNED, doubles, 0, 3);
+        assertArrayEquals(new double[]{1, -1, 3}, doubles, 0d);
+
+        ByteBuffer floatData = bytes(0x3F, 0xC0, 0x00, 0x00, 0x00, 0x00, 0x3F, 0xC0);
+        float[] floats = new float[2];
+        RegisterCodec.decodeFloats(floatData, DataType.FOUR_BYTE_FLOAT, floats, 0, 1);
+        floatData.position(4);
+        RegisterCodec.decodeFloats(floatData, DataType.FOUR_BYTE_FLOAT_SWAPPED, floats, 1, 1);
+        assertArrayEquals(new float[]{1.5f, 1.5f}, floats, 0f);
+    }
+
+    @Test
+    public void bitsStartFromLowestBit() {
+        boolean[] bits = new boolean[10];
+        RegisterCodec.decodeBits(bytes(0x05, 0x02), bits, 0, 10);
+        assertArrayEquals(new boolean[]{true, false, true, false, false, false, false, false, false, true}, bits);
+    }
+
+    @Test
+    public void byteLength() {
+        assertEquals(2, RegisterCodec.byteLength(DataType.TWO_BYTE_BCD));
+        assertEquals(4, RegisterCodec.byteLength(DataType.FOUR_BYTE_MOD_10K_SWAPPED));
+        assertEquals(6, RegisterCodec.byteLength(DataType.SIX_BYTE_MOD_10K));
+        assertEquals(8, RegisterCodec.byteLength(DataType.EIGHT_BYTE_FLOAT_SWAPPED));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void floatCannotDecodeToLong() {
+        RegisterCodec.decodeLongs(bytes(0, 0, 0, 0), DataType.FOUR_BYTE_FLOAT, new long[1], 0, 1);
+    }
+
+    @Test
+    public void numberTypesMatchModbus4j() {
+        ByteBuffer data = bytes(0xFF, 0xFE, 0x00, 0x01, 0x00, 0x02, 0x00, 0x03);
+        assertEquals(0xFFFE, RegisterCodec.decodeNumber(data, 0, DataType.TWO_BYTE_INT_UNSIGNED));
+        assertEquals((short) -2, RegisterCodec.decodeNumber(data, 0, DataType.TWO_BYTE_INT_SIGNED));
+        assertEquals(0xFFFE0001L, RegisterCodec.decodeNumber(data, 0, DataType.FOUR_BYTE_INT_UNSIGNED));
+        assertEquals(0xFFFE0001, RegisterCodec.decodeNumber(data, 0, DataType.FOUR_BYTE_INT_SIGNED));
+        assertEquals(0xFFFE000100020003L, RegisterCodec.decodeNumber(data, 0, DataType.EIGHT_BYTE_INT_SIGNED));
+        assertEquals(new BigInteger("FFFE000100020003", 16),
+                RegisterCodec.decodeNumber(data, 0, DataType.EIGHT_BYTE_INT_UNSIGNED));
+        assertEquals(BigInteger.valueOf(10002), RegisterCodec.decodeNumber(data, 2, DataType.FOUR_BYTE_MOD_10K));
+        assertEquals(Float.intBitsToFloat(0xFFFE0001), RegisterCodec.decodeNumber(data, 0, DataType.FOUR_BYTE_FLOAT));
+        assertEquals(Double.longBitsToDouble(0xFFFE000100020003L),
+                RegisterCodec.decodeNumber(data, 0, DataType.EIGHT_BYTE_FLOAT));
+
+        ByteBuffer bcd = bytes(0x12, 0x34, 0x56, 0x78);
+        assertEquals((short) 1234, RegisterCodec.decodeNumber(bcd, 0, DataType.TWO_BYTE_BCD));
+        assertEquals(12345678, RegisterCodec.decodeNumber(bcd, 0, DataType.FOUR_BYTE_BCD));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wideTypeCannotDecodeToInt() {
+        RegisterCodec.decodeInts(bytes(0, 0, 0, 0), DataType.FOUR_BYTE_INT_UNSIGNED, new int[1], 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringTypeIsUnsupported() {
+        RegisterCodec.byteLength(DataType.VARCHAR);
+    }
+
+    private static ByteBuffer bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
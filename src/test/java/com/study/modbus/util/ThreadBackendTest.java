@@ -0,0 +1,82 @@
+package com.study.modbus.util;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 平台线程与虚拟线程的切换,不支持虚拟线程的 JDK 上只验证平台线程
+ */
+public class ThreadBackendTest {
+
+    @After
+    public void tearDown() {
+        ThreadBackend.useVirtualThreads(false);
+    }
+
+    @Test
+    public void platformThreadIsNamedAndNotStarted() throws InterruptedException {
+        boolean[] ran = new boolean[1];
+        Thread thread = ThreadBackend.newThread("modbus-poll-test", () -> ran[0] = true);
+        assertEquals("modbus-poll-test", thread.getName());
+        assertEquals(Thread.State.NEW, thread.getState());
+        thread.start();
+        thread.join(5000L);
+        assertTrue(ran[0]);
+    }
+
+    @Test
+    public void platformCommandExecutorIsSharedDaemonPool() throws Exception {
+        ExecutorService executor = ThreadBackend.commandExecutor();
+        assertSame(executor, ThreadBackend.commandExecutor());
+        Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+        assertTrue(thread.getName().startsWith("modbus-command-"));
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    public void enablingUnsupportedVirtualThreadsFails() {
+        Assume.assumeFalse(ThreadBackend.isVirtualSupported());
+        try {
+            ThreadBackend.useVirtualThreads(true);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            //保持平台线程
+            assertFalse(ThreadBackend.isVirtual());
+        }
+        ThreadBackend.useVirtualThreads(false);
+        assertFalse(ThreadBackend.isVirtual());
+    }
+
+    @Test
+    public void virtualThreadsWhenSupported() throws Exception {
+        Assume.assumeTrue(ThreadBackend.isVirtualSupported());
+        ExecutorService platform = ThreadBackend.commandExecutor();
+        ThreadBackend.useVirtualThreads(true);
+        assertTrue(ThreadBackend.isVirtual());
+
+        Thread thread = ThreadBackend.newThread("modbus-poll-test", () -> {
+        });
+        assertEquals("modbus-poll-test", thread.getName());
+        assertTrue(thread.isDaemon());
+
+        ExecutorService executor = ThreadBackend.commandExecutor();
+        assertNotSame(platform, executor);
+        String name = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+        assertTrue(name.startsWith("modbus-command-"));
+
+        //关闭后回到平台线程池
+        ThreadBackend.useVirtualThreads(false);
+        assertSame(platform, ThreadBackend.commandExecutor());
+    }
+}